@@ -0,0 +1,450 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Client-side concurrency limiter with additive increase and multiplicative decrease (AIMD).
+ *
+ * Every call holds a permit while it runs. The limit grows by about one permit per round of
+ * calls while latency stays close to its baseline, the lowest latency of the last minute. It
+ * shrinks a little when latency climbs, and is cut by the backoff ratio on RESOURCE_EXHAUSTED
+ * or DEADLINE_EXCEEDED. Calls failing with
+ * those codes or UNAVAILABLE are retried with full-jitter exponential backoff, so a burst of
+ * throttling slows publishing down instead of failing the route.
+ */
+public class AdaptiveLimiter {
+
+  /**
+   * One attempt of an asynchronous call.
+   *
+   * @param <T> The result type.
+   */
+  @FunctionalInterface
+  public interface AsyncAttempt<T> {
+    /**
+     * Starts one attempt.
+     *
+     * @param attempt The attempt number, starting at 1.
+     * @return The future result of the attempt.
+     */
+    ApiFuture<T> start( int attempt );
+  }
+
+  // Latency above this multiple of the baseline counts as congestion
+  private static final double LATENCY_TOLERANCE = 2.0;
+  // The baseline is the lowest latency of the last BASELINE_WINDOWS windows of BASELINE_WINDOW_NANOS
+  private static final long BASELINE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos( 10 );
+  private static final int BASELINE_WINDOWS = 6;
+  private static final double LATENCY_DECREASE_RATIO = 0.95;
+  private static final long MIN_DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos( 50 );
+  private static final long BASE_RETRY_MILLIS = 100;
+  private static final long MAX_RETRY_MILLIS = 5_000;
+  private static final long PERMIT_POLL_MILLIS = 10;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final int maxAttempts;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition permitReleased = lock.newCondition();
+  private double limit;
+  private int inFlight;
+  private long baselineNanos;
+  private final long[] windowMinNanos = new long[ BASELINE_WINDOWS ];
+  private int window;
+  private long windowStartNanos = System.nanoTime();
+  private long lastDecreaseNanos;
+
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+  private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+    Thread thread = new Thread( runnable, "adaptive-limiter-retry" );
+    thread.setDaemon( true );
+    return thread;
+  } );
+
+  /**
+   * Creates a limiter.
+   *
+   * @param initialLimit The number of concurrent calls allowed at first.
+   * @param minLimit The lowest the limit can go.
+   * @param maxLimit The highest the limit can go.
+   * @param backoffRatio The factor applied to the limit on throttling, between 0 and 1.
+   * @param maxAttempts The number of attempts per call, including the first one.
+   */
+  public AdaptiveLimiter( int initialLimit, int minLimit, int maxLimit, double backoffRatio, int maxAttempts )
+  {
+    if( minLimit < 1 || maxLimit < minLimit )
+      throw new IllegalArgumentException( "Limits must satisfy 1 <= minLimit <= maxLimit" );
+    if( backoffRatio <= 0 || backoffRatio >= 1 )
+      throw new IllegalArgumentException( "Backoff ratio must be between 0 and 1" );
+
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.maxAttempts = Math.max( 1, maxAttempts );
+    this.limit = Math.max( minLimit, Math.min( initialLimit, maxLimit ) );
+  }
+
+  /**
+   * Runs a blocking call under the limiter, retrying it on throttling and transient errors.
+   *
+   * @param call The call.
+   * @param <T> The result type.
+   * @return The result of the call.
+   * @throws ApiException If the call failed with a non-retryable code or ran out of attempts.
+   * @throws CancellationException If interrupted while waiting for a permit or a retry.
+   */
+  public <T> T call( Supplier<T> call )
+  {
+    for (int attempt = 1; ; attempt++ ) {
+      acquireUninterruptibly();
+      long startNanos = System.nanoTime();
+      try
+      {
+        T result = call.get();
+        release( System.nanoTime() - startNanos, null );
+        return result;
+      }
+      catch( RuntimeException ex )
+      {
+        release( System.nanoTime() - startNanos, ex );
+        if( !isRetryable( ex ) || attempt >= maxAttempts )
+          throw ex;
+      }
+
+      retries.increment();
+      try
+      {
+        Thread.sleep( retryDelayMillis( attempt ) );
+      }
+      catch( InterruptedException ex )
+      {
+        Thread.currentThread().interrupt();
+        throw new CancellationException( "Interrupted while waiting to retry" );
+      }
+    }
+  }
+
+  /**
+   * Runs an asynchronous call under the limiter, retrying it on throttling and transient errors.
+   * The caller blocks only while waiting for the first permit; retries are scheduled in the background.
+   *
+   * @param call Starts one attempt of the call.
+   * @param <T> The result type.
+   * @return The future result of the last attempt.
+   * @throws InterruptedException If interrupted while waiting for a permit.
+   */
+  public <T> ApiFuture<T> callAsync( AsyncAttempt<T> call ) throws InterruptedException
+  {
+    SettableApiFuture<T> result = SettableApiFuture.create();
+    acquire();
+    startAttempt( call, 1, result );
+    return result;
+  }
+
+  /**
+   * Gets the current concurrency limit.
+   *
+   * @return The limit.
+   */
+  public int getLimit()
+  {
+    lock.lock();
+    try
+    {
+      return (int) limit;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of calls holding a permit.
+   *
+   * @return The in-flight count.
+   */
+  public int getInFlight()
+  {
+    lock.lock();
+    try
+    {
+      return inFlight;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of retried attempts.
+   *
+   * @return The retry count.
+   */
+  public long getRetryCount()
+  {
+    return retries.sum();
+  }
+
+  /**
+   * Gets the number of attempts that failed with RESOURCE_EXHAUSTED or DEADLINE_EXCEEDED.
+   *
+   * @return The throttled count.
+   */
+  public long getThrottledCount()
+  {
+    return throttled.sum();
+  }
+
+  /**
+   * Exports the limit, in-flight count, retries and throttled attempts as RpcMetrics gauges.
+   *
+   * @param name The limiter name used as a metric prefix, such as fleet_engine_writes.
+   */
+  public void registerGauges( String name )
+  {
+    RpcMetrics.registerGauge( name + "_limit", "Concurrency limit of the adaptive limiter.", this::getLimit );
+    RpcMetrics.registerGauge( name + "_in_flight", "Calls holding a permit of the adaptive limiter.", this::getInFlight );
+    RpcMetrics.registerGauge( name + "_retries", "Attempts retried by the adaptive limiter.", () -> getRetryCount() );
+    RpcMetrics.registerGauge( name + "_throttled", "Attempts throttled or timed out under the adaptive limiter.", () -> getThrottledCount() );
+  }
+
+  /**
+   * Stops the retry thread. Calls already running finish normally, retries that are already
+   * scheduled still run once, and an asynchronous call that needs a further retry fails with
+   * its last error.
+   */
+  public void close()
+  {
+    retryScheduler.shutdown();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "AdaptiveLimiter{limit=%d, inFlight=%d, retries=%d, throttled=%d}",
+        getLimit(), getInFlight(), getRetryCount(), getThrottledCount() );
+  }
+
+  private <T> void startAttempt( AsyncAttempt<T> call, int attempt, SettableApiFuture<T> result )
+  {
+    long startNanos = System.nanoTime();
+    ApiFuture<T> future;
+    try
+    {
+      future = call.start( attempt );
+    }
+    catch( RuntimeException ex )
+    {
+      release( System.nanoTime() - startNanos, ex );
+      result.setException( ex );
+      return;
+    }
+
+    ApiFutures.addCallback( future, new ApiFutureCallback<T>() {
+      @Override
+      public void onSuccess( T value ) {
+        release( System.nanoTime() - startNanos, null );
+        result.set( value );
+      }
+
+      @Override
+      public void onFailure( Throwable t ) {
+        release( System.nanoTime() - startNanos, t );
+        if( !isRetryable( t ) || attempt >= maxAttempts || result.isCancelled() )
+        {
+          result.setException( t );
+          return;
+        }
+
+        retries.increment();
+        schedule( () -> retryWhenPermitted( call, attempt + 1, result, t ), retryDelayMillis( attempt ), result, t );
+      }
+    }, MoreExecutors.directExecutor() );
+  }
+
+  private <T> void retryWhenPermitted( AsyncAttempt<T> call, int attempt, SettableApiFuture<T> result, Throwable lastFailure )
+  {
+    // Never block the scheduler thread; poll again shortly if every permit is taken
+    if( tryAcquire() )
+      startAttempt( call, attempt, result );
+    else
+      schedule( () -> retryWhenPermitted( call, attempt, result, lastFailure ), PERMIT_POLL_MILLIS, result, lastFailure );
+  }
+
+  private <T> void schedule( Runnable task, long delayMillis, SettableApiFuture<T> result, Throwable failure )
+  {
+    try
+    {
+      retryScheduler.schedule( task, delayMillis, TimeUnit.MILLISECONDS );
+    }
+    catch( RejectedExecutionException ex )
+    {
+      // The limiter was closed
+      result.setException( failure );
+    }
+  }
+
+  private void acquire() throws InterruptedException
+  {
+    lock.lock();
+    try
+    {
+      while( inFlight >= (int) limit )
+        permitReleased.await();
+      inFlight++;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void acquireUninterruptibly()
+  {
+    try
+    {
+      acquire();
+    }
+    catch( InterruptedException ex )
+    {
+      Thread.currentThread().interrupt();
+      throw new CancellationException( "Interrupted while waiting for a permit" );
+    }
+  }
+
+  private boolean tryAcquire()
+  {
+    lock.lock();
+    try
+    {
+      if( inFlight >= (int) limit )
+        return false;
+      inFlight++;
+      return true;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void release( long latencyNanos, Throwable failure )
+  {
+    boolean congested = isThrottling( failure );
+    if( congested )
+      throttled.increment();
+
+    lock.lock();
+    try
+    {
+      inFlight--;
+      long now = System.nanoTime();
+      if( congested )
+      {
+        // Many calls fail together when the quota runs out; cut the limit once per burst
+        if( now - lastDecreaseNanos >= Math.max( MIN_DECREASE_INTERVAL_NANOS, baselineNanos ) )
+        {
+          limit = Math.max( minLimit, limit * backoffRatio );
+          lastDecreaseNanos = now;
+        }
+      }
+      else if( failure == null )
+      {
+        updateBaseline( Math.max( 1, latencyNanos ), now );
+        if( latencyNanos <= baselineNanos * LATENCY_TOLERANCE )
+          limit = Math.min( maxLimit, limit + 1.0 / limit );
+        else
+          limit = Math.max( minLimit, limit * LATENCY_DECREASE_RATIO );
+      }
+      permitReleased.signalAll();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  // Unlike a running average, the minimum of recent windows does not creep up with the
+  // queueing delay of a sustained overload. Called with the lock held.
+  private void updateBaseline( long latencyNanos, long now )
+  {
+    long elapsedWindows = ( now - windowStartNanos ) / BASELINE_WINDOW_NANOS;
+    for (long i = 0; i < Math.min( elapsedWindows, BASELINE_WINDOWS ); i++ ) {
+      window = ( window + 1 ) % BASELINE_WINDOWS;
+      windowMinNanos[ window ] = 0;
+    }
+    windowStartNanos += elapsedWindows * BASELINE_WINDOW_NANOS;
+
+    if( windowMinNanos[ window ] == 0 || latencyNanos < windowMinNanos[ window ] )
+      windowMinNanos[ window ] = latencyNanos;
+
+    baselineNanos = 0;
+    for( long minNanos : windowMinNanos ) {
+      if( minNanos != 0 && ( baselineNanos == 0 || minNanos < baselineNanos ) )
+        baselineNanos = minNanos;
+    }
+  }
+
+  private static long retryDelayMillis( int attempt )
+  {
+    long ceiling = Math.min( MAX_RETRY_MILLIS, BASE_RETRY_MILLIS << Math.min( attempt - 1, 20 ) );
+    return ThreadLocalRandom.current().nextLong( ceiling + 1 );
+  }
+
+  private static StatusCode.Code statusCode( Throwable t )
+  {
+    while( t instanceof ExecutionException && t.getCause() != null )
+      t = t.getCause();
+    if( t instanceof ApiException )
+      return ( (ApiException) t ).getStatusCode().getCode();
+    return null;
+  }
+
+  private static boolean isThrottling( Throwable t )
+  {
+    StatusCode.Code code = t == null ? null : statusCode( t );
+    return code == StatusCode.Code.RESOURCE_EXHAUSTED || code == StatusCode.Code.DEADLINE_EXCEEDED;
+  }
+
+  private static boolean isRetryable( Throwable t )
+  {
+    return isThrottling( t ) || statusCode( t ) == StatusCode.Code.UNAVAILABLE;
+  }
+}
@@ -23,6 +23,8 @@ import org.apache.commons.text.WordUtils;
 
 // Java imports
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -34,13 +36,14 @@ import com.google.protobuf.FieldMask;
 import com.google.protobuf.TextFormat;
 import com.google.type.LatLng;
 import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.api.gax.rpc.NotFoundException;
+import com.sun.net.httpserver.HttpServer;
 
 // Route Optimization Imports
 import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
 import com.google.maps.routeoptimization.v1.OptimizeToursRequest.SearchMode;
 import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
 import com.google.maps.routeoptimization.v1.Shipment;
-import com.google.maps.routeoptimization.v1.ShipmentModel;
 import com.google.maps.routeoptimization.v1.ShipmentRoute;
 import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
 import com.google.maps.routeoptimization.v1.Vehicle;
@@ -81,11 +84,60 @@ public class App {
   private static final Task.Type LMFS_PICKUP_TASK_TYPE = Task.Type.SCHEDULED_STOP; // use this for pickups, as there is pricing attached to pickup types! Note: check latest terms!
   private static final Task.Type LMFS_DELIVERY_TASK_TYPE = Task.Type.DELIVERY;
 
-  public static OptimizeToursRequest fleetRoutingRequest;
-  public static OptimizeToursResponse planResponse;
+  // Default clients, shared by every planning session of the engine
+  // Null while PRE_MINT_TOKENS supplies the tokens
   public static AuthTokenMinter minter;
   public static int TIMEOUT_SECONDS = 100;
   public static DeliveryServiceClient client;
+  private static PreMintingTokenProvider tokenProvider;
+  // Planning sessions run concurrently on PLANNING_SESSION_WORKERS threads of the engine
+  private static PlanningEngine engine;
+  public static int PLANNING_SESSION_WORKERS = 8;
+  // Journal of completed publish steps, so an interrupted publish resumes where it stopped. Leave empty to disable.
+  public static String PUBLISH_JOURNAL_FILE = "";
+  private static PublishJournal publishJournal;
+  // Delivery vehicles known to exist in Fleet Engine are listed again after VEHICLE_REGISTRY_TTL_SECONDS
+  public static long VEHICLE_REGISTRY_TTL_SECONDS = 300;
+  // Maximum number of concurrent createTask calls per vehicle route. Set to 1 to create tasks one by one.
+  // The adaptive write limiter below decides how many of them actually run at once.
+  public static int TASK_CREATION_MAX_IN_FLIGHT = 64;
+  // Number of vehicle routes published to Fleet Engine in parallel.
+  public static int VEHICLE_PUBLISH_WORKERS = 8;
+  // Bounds of the adaptive limit on concurrent Fleet Engine writes across all vehicles.
+  // The limit starts at the lower bound and grows while latency stays healthy.
+  public static int FLEET_ENGINE_WRITES_MIN_IN_FLIGHT = 4;
+  public static int FLEET_ENGINE_WRITES_MAX_IN_FLIGHT = 256;
+  // Directory of the optimization response cache. Leave empty to always call the API.
+  public static String RESPONSE_CACHE_DIRECTORY = "";
+  public static long RESPONSE_CACHE_MAX_BYTES = 512L * 1024 * 1024;
+  // File of the travel matrix cache, learned from earlier responses. Leave empty to let the API compute travel costs.
+  // A request gets matrices only if the cache knows MATRIX_CACHE_MIN_COVERAGE of its location pairs.
+  public static String MATRIX_CACHE_FILE = "";
+  public static double MATRIX_CACHE_MIN_COVERAGE = 0.9;
+  public static int MATRIX_CACHE_MAX_LOCATIONS = 1000;
+  // Sign delivery server tokens in the background ahead of expiry instead of in the request path.
+  public static boolean PRE_MINT_TOKENS = true;
+  public static long TOKEN_REFRESH_AHEAD_MILLIS = 5 * 60 * 1000;
+  // Consecutive tasks planned within this distance of each other share one vehicle stop.
+  // 0 merges only identical locations; a negative value gives every task its own stop.
+  public static double STOP_MERGE_TOLERANCE_METERS = 5.0;
+  // Vehicle location pings are coalesced per vehicle and sent every LOCATION_FLUSH_MILLIS by LOCATION_SENDERS threads.
+  public static long LOCATION_FLUSH_MILLIS = 1000;
+  public static int LOCATION_SENDERS = 8;
+  // A vehicle that sent no ping for this long is forgotten by the location ingestor.
+  public static long LOCATION_VEHICLE_TTL_MILLIS = 10 * 60 * 1000;
+  // Check requests locally before optimizing them, and leave out the shipments that cannot be served.
+  public static boolean VALIDATE_MODELS = true;
+  public static boolean PRUNE_INFEASIBLE_SHIPMENTS = true;
+  // Models with at least this many shipments are split into DECOMPOSITION_REGIONS regions,
+  // solved DECOMPOSITION_PARALLELISM at a time. Set DECOMPOSITION_REGIONS to 1 to always send one request.
+  public static int DECOMPOSITION_REGIONS = 16;
+  public static int DECOMPOSITION_MIN_SHIPMENTS = 5000;
+  public static int DECOMPOSITION_PARALLELISM = 8;
+  // Port of the Prometheus /metrics endpoint, served while the app runs. 0 disables it.
+  public static int METRICS_PORT = 0;
+  // File the RPC metrics are written to when the app ends, in Prometheus text format. Leave empty to skip.
+  public static String METRICS_FILE = "";
 
   /**
    * Main method.
@@ -93,10 +145,23 @@ public class App {
    * @param args Command line arguments.
    */
   public static void main(String[] args) {
-    // LMFS OAuth
-    minter = AuthHelper.getAuthToken( DELIVERY_SERVER_SERVICE_ACCOUNT, FLEET_ENGINE_AUDIENCE );
-    // LMFS Service client
-    client = LmfsHelper.getDeliveryServiceClient( FLEET_ENGINE_ADDRESS, minter );
+    initializeClients();
+    // Run with -XX:CRaCCheckpointTo on a CRaC JDK to save the warmed-up process here
+    CheckpointSupport.checkpointIfRequested();
+
+    HttpServer metricsServer = null;
+    if( METRICS_PORT > 0 )
+    {
+      try
+      {
+        metricsServer = RpcMetrics.startHttpServer( METRICS_PORT );
+        System.out.println( "Serving RPC metrics on http://localhost:" + METRICS_PORT + "/metrics" );
+      }
+      catch( IOException ex )
+      {
+        System.out.println( "\nCannot start metrics endpoint, continuing without it: " + ex );
+      }
+    }
 
     System.out.println( "\n*** Use Case 1 - STARTED! ***\n");
     UC1_InitialPlanning( "UC1_InitialPlanning.textproto" );
@@ -109,32 +174,196 @@ public class App {
     System.out.println( "\n*** Use Case 3 - STARTED! ***\n");
     UC3_NewStop("UC3_NewStop.textproto");
     System.out.println( "\n*** Use Case 3 - DONE! ***\n");
+
+    reportMetrics();
+    if( metricsServer != null )
+      metricsServer.stop( 0 );
+  }
+
+  /**
+   * Creates the Fleet Engine and Route Optimization clients and the optional response cache
+   * from the configuration above.
+   */
+  public static void initializeClients()
+  {
+    // LMFS OAuth: the pre-minting provider signs its own tokens, so the minter is only
+    // built when it is off or could not be created
+    tokenProvider = PRE_MINT_TOKENS
+        ? AuthHelper.createPreMintingTokenProvider( DELIVERY_SERVER_SERVICE_ACCOUNT, FLEET_ENGINE_AUDIENCE, TOKEN_REFRESH_AHEAD_MILLIS )
+        : null;
+    // LMFS Service client
+    if( tokenProvider != null )
+    {
+      minter = null;
+      client = LmfsHelper.getDeliveryServiceClient( FLEET_ENGINE_ADDRESS, tokenProvider );
+    }
+    else
+    {
+      minter = AuthHelper.getAuthToken( DELIVERY_SERVER_SERVICE_ACCOUNT, FLEET_ENGINE_AUDIENCE );
+      client = LmfsHelper.getDeliveryServiceClient( FLEET_ENGINE_ADDRESS, minter );
+    }
+    // Route Optimization client, shared by every use case
+    RouteOptimizationHelper.warmUp();
+    if( !RESPONSE_CACHE_DIRECTORY.isEmpty() )
+    {
+      try
+      {
+        RouteOptimizationHelper.setResponseCache( new ResponseCache( Paths.get( RESPONSE_CACHE_DIRECTORY ), RESPONSE_CACHE_MAX_BYTES ) );
+      }
+      catch( IOException ex )
+      {
+        System.out.println( "\nCannot open response cache, continuing without it: " + ex );
+      }
+    }
+    if( !MATRIX_CACHE_FILE.isEmpty() )
+    {
+      try
+      {
+        RouteOptimizationHelper.setMatrixCache( new MatrixCache( Paths.get( MATRIX_CACHE_FILE ), MATRIX_CACHE_MIN_COVERAGE, MATRIX_CACHE_MAX_LOCATIONS ) );
+      }
+      catch( IOException ex )
+      {
+        System.out.println( "\nCannot open matrix cache, continuing without it: " + ex );
+      }
+    }
+  }
+
+  /**
+   * Closes what initializeClients opened: the clients, the token refresh thread, the matrix cache
+   * and the publish journal. Network channels and open files cannot be carried across a
+   * checkpoint, so this runs before one, and initializeClients runs again after restore.
+   */
+  public static synchronized void closeClients()
+  {
+    if( engine != null )
+    {
+      engine.close();
+      engine = null;
+    }
+    LmfsHelper.closeDeliveryServiceClients();
+    RouteOptimizationHelper.closeRouteOptimizationClient();
+    if( tokenProvider != null )
+    {
+      tokenProvider.close();
+      tokenProvider = null;
+    }
+    client = null;
+
+    try
+    {
+      if( RouteOptimizationHelper.getMatrixCache() != null )
+      {
+        RouteOptimizationHelper.getMatrixCache().close();
+        RouteOptimizationHelper.setMatrixCache( null );
+      }
+      if( publishJournal != null )
+      {
+        publishJournal.close();
+        publishJournal = null;
+      }
+    }
+    catch( IOException ex )
+    {
+      System.out.println( "\nCannot close caches: " + ex );
+    }
+  }
+
+  /**
+   * Prints the cache statistics and RPC metrics, and writes METRICS_FILE if set.
+   * The matrix cache is also written to disk.
+   */
+  public static void reportMetrics()
+  {
+    if( RouteOptimizationHelper.getResponseCache() != null )
+      System.out.println( RouteOptimizationHelper.getResponseCache() );
+    if( RouteOptimizationHelper.getMatrixCache() != null )
+    {
+      RouteOptimizationHelper.getMatrixCache().flush();
+      System.out.println( RouteOptimizationHelper.getMatrixCache() );
+    }
+
+    RpcMetrics.printReport();
+    System.out.println( LmfsHelper.getWriteLimiter() );
+    if( !METRICS_FILE.isEmpty() )
+    {
+      try
+      {
+        RpcMetrics.writeToFile( Paths.get( METRICS_FILE ) );
+      }
+      catch( IOException ex )
+      {
+        System.out.println( "\nCannot write metrics file: " + ex );
+      }
+    }
   }
 
   /**
    * Use Case 1: Initial Planning.
    *
    * @param modelPath Path to the model file.
+   * @return The planning session holding the published plan, or null if planning failed.
    */
-  public static void UC1_InitialPlanning( String modelPath )
+  public static PlanningSession UC1_InitialPlanning( String modelPath )
   {
     try
     {
       // Route Optimization
       // For easy testing in development environment, this example uses a text format protobuf message
-      String projectParent = "projects/" + PROVIDER_ID;
-      fleetRoutingRequest = RouteOptimizationHelper.buildFleetRoutingRequest(projectParent, modelPath);
-      planResponse = RouteOptimizationHelper.callCloudFleetRouting(fleetRoutingRequest);
-      //System.out.println( planResponse.toString() ) ;
-      createRoutes();
+      PlanningSession session = getEngine().newSession( modelPath );
+      session.planModel( modelPath );
+      //System.out.println( session.getResponse().toString() ) ;
+      session.publish();
+      return session;
     }
     catch( Exception ex )
     {
       System.out.println("\nEXCEPTION:");
       System.out.println(ex);
+      return null;
     }
   }
 
+  /**
+   * Validates a request locally with ModelValidator and prints the problems found.
+   * With PRUNE_INFEASIBLE_SHIPMENTS, the shipments that cannot be served are removed,
+   * so the returned request must be the one the plan is published for.
+   *
+   * @param request The optimize tours request.
+   * @return The request to optimize.
+   */
+  public static OptimizeToursRequest preflight( OptimizeToursRequest request )
+  {
+    if( !VALIDATE_MODELS )
+      return request;
+
+    ModelValidator.Report report = ModelValidator.validate( request );
+    System.out.println( "Pre-flight check: " + report );
+    for( ModelValidator.Problem problem : report.getProblems() )
+      System.out.println( "  " + problem );
+
+    if( !PRUNE_INFEASIBLE_SHIPMENTS || report.isClean() )
+      return request;
+
+    OptimizeToursRequest pruned = ModelValidator.prune( request, report );
+    System.out.printf( "Removed %d infeasible shipment(s) before optimization\n",
+        request.getModel().getShipmentsCount() - pruned.getModel().getShipmentsCount() );
+    return pruned;
+  }
+
+  /**
+   * Optimizes a request, splitting it into regions if it has at least DECOMPOSITION_MIN_SHIPMENTS shipments.
+   *
+   * @param request The optimize tours request.
+   * @return The optimize tours response.
+   * @throws Exception If there is an error calling the API.
+   */
+  public static OptimizeToursResponse optimize( OptimizeToursRequest request ) throws Exception
+  {
+    if( DECOMPOSITION_REGIONS > 1 && request.getModel().getShipmentsCount() >= DECOMPOSITION_MIN_SHIPMENTS )
+      return RouteOptimizationHelper.callCloudFleetRoutingDecomposed( request, DECOMPOSITION_REGIONS, DECOMPOSITION_PARALLELISM );
+    return RouteOptimizationHelper.callCloudFleetRouting( request );
+  }
+
   /**
    * Use Case 2: Re-optimization.
    *
@@ -145,62 +374,20 @@ public class App {
     try
     {
       // First run initial setup using UC1 code with UC2 data
-      UC1_InitialPlanning( modelPath );
-
-      //System.out.println( planResponse.toString() ) ;
-
-      ShipmentModel shipmentModel = fleetRoutingRequest.getModel();
-
-      String projectParent = "projects/" + PROVIDER_ID;
-      //ShipmentModel.Builder modelBuilder = ShipmentModel.newBuilder().mergeFrom(shipmentModel);
-
-      /*
-      // Let's update the delivery vehicles locations for this use case to make sense.
-      // This loop just updates all vehicles to a new start location chosen by you
-      List<Vehicle> vehicles = shipmentModel.getVehiclesList();
-
-      for (int i=0; i< vehicles.size(); i++) {
-
-        String id = vehicles.get(i).getLabel();
-        DeliveryVehicle dv = LmfsHelper.getDeliveryVehicle(client, PROVIDER_ID, id);
-        if( dv != null )
-        {
-          LatLng latLng = LatLng.newBuilder().setLatitude(60.169455).setLongitude(24.940909).build();
-          dv = LmfsHelper.updateDeliveryVehicleLocation( client, PROVIDER_ID, id, latLng );
-          // Merge existing vehicle with new location data using protobuf builders
-          Vehicle v = Vehicle.newBuilder().mergeFrom(vehicles.get(i)).setStartLocation( latLng ).build();
-          // set Route Optimization model to updated vehicle with new start location
-          modelBuilder.setVehicles( i, v );
-        }
-      }
-
-      shipmentModel = modelBuilder.build();
-      //System.out.println("\nshipmentModel: \n" + shipmentModel.toString() );
-      */
-      // get routes from initial plan that we just ran as first step of UC2
-      List<ShipmentRoute> routes = planResponse.getRoutesList();
-
-      // Now the initial setup for use case is done in Fleet Engine and Route Optimization shipmentModel
-      // Build new request to Re-optimize with Route Optimization
-      OptimizeToursRequest.Builder requestBuilder =
-          OptimizeToursRequest.newBuilder()
-              .setModel( shipmentModel )
-              .setTimeout(Duration.newBuilder().setSeconds(TIMEOUT_SECONDS).build())
-              .setParent(projectParent)
-              .setSearchMode( SearchMode.CONSUME_ALL_AVAILABLE_TIME)
-              .addAllInjectedFirstSolutionRoutes(routes);
-
-      fleetRoutingRequest = requestBuilder.build();
+      PlanningSession session = UC1_InitialPlanning( modelPath );
+      if( session == null )
+        return;
 
+      // Re-optimize starting from the routes of the initial plan
       System.out.println("\n Re-optimize request\n");
-
-      planResponse = RouteOptimizationHelper.callCloudFleetRouting(fleetRoutingRequest);
+      session.reoptimize();
       /*
       System.out.println("\n Re-optimize response\n");
-      System.out.println(planResponse.toString() );
+      System.out.println( session.getResponse().toString() );
       */
 
-      createRoutes();
+      // Only push the vehicles whose routes changed
+      session.sync();
     }
     catch( Exception ex )
     {
@@ -218,33 +405,19 @@ public class App {
   {
     try
     {
-      UC1_InitialPlanning( modelPath );
-
-      //System.out.println( planResponse.toString() ) ;
-      ShipmentModel shipmentModel = fleetRoutingRequest.getModel();
+      PlanningSession session = UC1_InitialPlanning( modelPath );
+      if( session == null )
+        return;
 
-      String projectParent = "projects/" + PROVIDER_ID;
-      ShipmentModel.Builder modelBuilder = ShipmentModel.newBuilder().mergeFrom(shipmentModel);
         //60.19181950808375, 25.025756338117166
       LatLng pickupPoint = LatLng.newBuilder().setLatitude(60.191819).setLongitude(25.025756).build();
       // 60.17787246025874, 24.812258567690137
       LatLng deliveryPoint = LatLng.newBuilder().setLatitude(60.177872).setLongitude(24.812258).build();
-      modelBuilder.addShipments( RouteOptimizationHelper.createNewShipment( pickupPoint, deliveryPoint, 123, 123 ) );
-      shipmentModel = modelBuilder.build();
 
-      //System.out.println( shipmentModel.toString() ) ;
-
-      OptimizeToursRequest.Builder requestBuilder =
-          OptimizeToursRequest.newBuilder()
-              .setModel( shipmentModel )
-              .setTimeout(Duration.newBuilder().setSeconds(TIMEOUT_SECONDS).build())
-              .setParent(projectParent);
-
-      fleetRoutingRequest = requestBuilder.build();
       System.out.println("\n Creating new plan with added shipment \n");
-      planResponse = RouteOptimizationHelper.callCloudFleetRouting(fleetRoutingRequest);
-      System.out.println("\n Creating routes in Fleet Engine \n");
-      createRoutes();
+      session.insertShipment( RouteOptimizationHelper.createNewShipment( pickupPoint, deliveryPoint, 123, 123 ) );
+      System.out.println("\n Updating routes in Fleet Engine \n");
+      session.sync();
     }
     catch( Exception ex )
     {
@@ -254,38 +427,70 @@ public class App {
   }
 
   /**
-   * Creates routes in Fleet Engine based on the optimized plan.
+   * Derives a stable task ID from the plan, the vehicle and the stop.
+   *
+   * @param planId The plan ID.
+   * @param vehicleLabel The vehicle label.
+   * @param stopKey The key of the stop: "start", "end" or a visit key.
+   * @return The task ID, a name-based UUID.
    */
-  public static void createRoutes( )
+  public static String taskId( String planId, String vehicleLabel, String stopKey )
   {
-    try
-    {
-      List<ShipmentRoute> routes = planResponse.getRoutesList();
-
-      ShipmentModel shipmentModel = fleetRoutingRequest.getModel();
-      List<Vehicle> vehicles = shipmentModel.getVehiclesList();
-
-      for (int i = 0; i < routes.size(); i++ ) {
+    return UUID.nameUUIDFromBytes( ( planId + "/" + vehicleLabel + "/" + stopKey ).getBytes( StandardCharsets.UTF_8 ) ).toString();
+  }
 
-        if( routes.get(i).getVehicleLabel().equals( vehicles.get(i).getLabel() ) )
-        {
-          int numberOfVisits = routes.get(i).getVisitsCount();
-          if( numberOfVisits > 0 )
-          {
-            DeliveryVehicle dv = createDeliveryVehicle( PROVIDER_ID, minter, vehicles.get(i).getLabel(), vehicles.get(i).getStartLocation() );
-            createLmfsRoute( shipmentModel, dv, PROVIDER_ID, minter, vehicles.get(i), routes.get(i) );
-          }
-          else
-          {
-            System.out.println( "\nThere are no visits for vehicle:'" + vehicles.get(i).getLabel() + "' \n");
-          }
-        }
+  /**
+   * Gets the publish journal, opening PUBLISH_JOURNAL_FILE on first use.
+   *
+   * @return The publish journal, or null if it is disabled or cannot be opened.
+   */
+  public static synchronized PublishJournal getPublishJournal()
+  {
+    if( publishJournal == null && !PUBLISH_JOURNAL_FILE.isEmpty() )
+    {
+      try
+      {
+        publishJournal = new PublishJournal( Paths.get( PUBLISH_JOURNAL_FILE ) );
+        System.out.println( "Opened " + publishJournal );
+      }
+      catch( IOException ex )
+      {
+        System.out.println( "\nCannot open publish journal, publishing without it: " + ex );
+        PUBLISH_JOURNAL_FILE = "";
       }
     }
-    catch ( Exception ex )
+    return publishJournal;
+  }
+
+  /**
+   * Creates a location ingestor for the current client, with its gauges in the RPC metrics.
+   * Feed it the telematics pings with offer() and close it when the feed ends.
+   *
+   * @param name The name of the feed, used in the gauge names of the ingestor.
+   * @return The location ingestor.
+   */
+  public static LocationIngestor createLocationIngestor( String name )
+  {
+    LocationIngestor ingestor = new LocationIngestor( name, client, PROVIDER_ID, LOCATION_FLUSH_MILLIS, LOCATION_SENDERS, LOCATION_VEHICLE_TTL_MILLIS );
+    ingestor.registerGauges();
+    return ingestor;
+  }
+
+  /**
+   * Gets the planning engine of the current client, creating it on first use or when the client changed.
+   *
+   * @return The planning engine.
+   */
+  public static synchronized PlanningEngine getEngine()
+  {
+    if( engine == null || engine.getClient() != client )
     {
-      System.out.println( "Error creating routes: " + ex );
+      if( engine != null )
+        engine.close();
+      engine = new PlanningEngine( PROVIDER_ID, client, getPublishJournal(), PLANNING_SESSION_WORKERS,
+          VEHICLE_PUBLISH_WORKERS, VEHICLE_REGISTRY_TTL_SECONDS * 1000 );
     }
+    return engine;
   }
 
   /**
@@ -300,95 +505,98 @@ public class App {
   }
 
   /**
-   * Creates a route in Fleet Engine for a given vehicle.
+   * Builds the task requests of a vehicle route.
    *
-   * @param model The shipment model.
-   * @param responseDeliveryVehicle The delivery vehicle.
+   * Task IDs are derived from the plan ID, the vehicle label and the stop, so building the
+   * requests again for the same plan gives the same IDs, and a retried publish finds the
+   * tasks it already created instead of duplicating them.
+   *
+   * @param modelIndex The index of the shipment model.
    * @param provider_id The provider ID.
-   * @param minter The auth token minter.
+   * @param planId The plan ID.
    * @param vehicle The vehicle.
    * @param route The shipment route.
+   * @return The task requests in stop order: start task, one task per visit, end task.
    */
-  public static void createLmfsRoute( ShipmentModel model, DeliveryVehicle responseDeliveryVehicle, String provider_id, AuthTokenMinter minter, Vehicle vehicle, ShipmentRoute route )
+  public static List<CreateTaskRequest> buildRouteTaskRequests( ShipmentModelIndex modelIndex, String provider_id, String planId, Vehicle vehicle, ShipmentRoute route )
   {
-    try
-    {
-      ArrayList<String> taskIds = new ArrayList<String>();
-
-      String taskId = UUID.randomUUID().toString();
-      taskIds.add( taskId );
-      CreateTaskRequest createTaskRequest = buildTask( provider_id, taskId, vehicle.getStartLocation(), 0, Task.Type.SCHEDULED_STOP, null );
-      Task startTask = client.createTask(createTaskRequest);
-      //System.out.println("\nTASK: \n" + startTask.toString() );
-
-      List<Visit> visits = route.getVisitsList();
-      ArrayList<Task> tasks = new ArrayList<Task>();
-      tasks.add( startTask );
-      for (int i = 0; i < visits.size(); i++ ) {
-        //System.out.println("\n Visit: " + visits.get(i).toString() );
-        Task.Type type = Task.Type.SCHEDULED_STOP;
-
-        UUID trackingId = UUID.randomUUID(); // THIS VALUE SHOULD COME FROM YOUR LOGISTICS SYSTEM / SHIPMENT TRACKING SERVICE
-        if( !visits.get(i).getIsPickup() )
-          type = LMFS_DELIVERY_TASK_TYPE;
-
-        taskId = UUID.randomUUID().toString();
-        taskIds.add( taskId );
-        LatLng location = RouteOptimizationHelper.getVisitLocation( model, visits.get(i).getVisitLabel() );
-        createTaskRequest = buildTask( provider_id, taskId, location, visits.get(i).getDetour().getSeconds(), type, trackingId );
-        Task visitTask = client.createTask(createTaskRequest);
-        //System.out.println("\nTASK: \n" + visitTask.toString() );
-        tasks.add( visitTask );
-      }
+    // Build every request up front so they can be sent concurrently.
+    ArrayList<CreateTaskRequest> createTaskRequests = new ArrayList<CreateTaskRequest>();
+
+    String taskId = taskId( planId, vehicle.getLabel(), "start" );
+    createTaskRequests.add( buildTask( provider_id, taskId, vehicle.getStartLocation(), 0, Task.Type.SCHEDULED_STOP, null ) );
+
+    List<Visit> visits = route.getVisitsList();
+    for (int i = 0; i < visits.size(); i++ ) {
+      //System.out.println("\n Visit: " + visits.get(i).toString() );
+      Task.Type type = Task.Type.SCHEDULED_STOP;
+
+      String visitKey = PublishedRoute.visitKey( visits.get(i) );
+      // THIS VALUE SHOULD COME FROM YOUR LOGISTICS SYSTEM / SHIPMENT TRACKING SERVICE
+      UUID trackingId = UUID.nameUUIDFromBytes( ( planId + "/tracking/" + visitKey ).getBytes( StandardCharsets.UTF_8 ) );
+      if( !visits.get(i).getIsPickup() )
+        type = LMFS_DELIVERY_TASK_TYPE;
+
+      taskId = taskId( planId, vehicle.getLabel(), visitKey );
+      LatLng location = modelIndex.getVisitLocation( visits.get(i) );
+      createTaskRequests.add( buildTask( provider_id, taskId, location, visits.get(i).getDetour().getSeconds(), type, trackingId ) );
+    }
 
-      taskId = UUID.randomUUID().toString();
-      taskIds.add( taskId );
-      createTaskRequest = buildTask( provider_id, taskId, vehicle.getEndLocation(), 0, Task.Type.SCHEDULED_STOP, null );
-      Task endTask = client.createTask(createTaskRequest);
-      //System.out.println("\nTASK: \n" + endTask.toString() );
-      tasks.add( endTask );
+    taskId = taskId( planId, vehicle.getLabel(), "end" );
+    createTaskRequests.add( buildTask( provider_id, taskId, vehicle.getEndLocation(), 0, Task.Type.SCHEDULED_STOP, null ) );
 
-      // Update remaining journey segments
-      updateSegments( tasks, model, client, responseDeliveryVehicle );
+    return createTaskRequests;
+  }
 
-      System.out.println("\nVehicle assigned:\n" + responseDeliveryVehicle.getName() );
+  /**
+   * Gets the stop fingerprints of a vehicle route.
+   *
+   * @param route The shipment route.
+   * @param createTaskRequests The task requests of the route, as built by buildRouteTaskRequests.
+   * @return The stop fingerprints, in stop order.
+   */
+  public static List<String> routeStopFingerprints( ShipmentRoute route, List<CreateTaskRequest> createTaskRequests )
+  {
+    ArrayList<String> fingerprints = new ArrayList<String>( createTaskRequests.size() );
+    fingerprints.add( PublishedRoute.fingerprint( "start", createTaskRequests.get(0).getTask() ) );
+    for (int i = 0; i < route.getVisitsCount(); i++ )
+      fingerprints.add( PublishedRoute.fingerprint( PublishedRoute.stopKey( route.getVisits(i) ), createTaskRequests.get( i + 1 ).getTask() ) );
+    fingerprints.add( PublishedRoute.fingerprint( "end", createTaskRequests.get( createTaskRequests.size() - 1 ).getTask() ) );
+    return fingerprints;
+  }
 
-    }
-    catch( Exception ex )
-    {
-      System.out.println("\nEXCEPTION:");
-      System.out.println(ex);
-    }
+  /**
+   * Builds a delivery vehicle holding only the name, to update a vehicle known to exist.
+   *
+   * @param provider_id The provider ID.
+   * @param vehicleId The vehicle ID.
+   * @return The delivery vehicle.
+   */
+  static DeliveryVehicle deliveryVehicleReference( String provider_id, String vehicleId )
+  {
+    return DeliveryVehicle.newBuilder()
+        .setName( String.format( "providers/%s/deliveryVehicles/%s", provider_id, vehicleId ) )
+        .build();
   }
 
   /**
    * Updates the journey segments for a vehicle.
    *
    * @param tasks The list of tasks.
-   * @param model The shipment model.
    * @param client The delivery service client.
    * @param responseDeliveryVehicle The delivery vehicle.
+   * @return The updated delivery vehicle, or null if the update failed.
+   * @throws NotFoundException If the vehicle does not exist in Fleet Engine.
    */
-  public static void updateSegments(ArrayList<Task> tasks, ShipmentModel model, DeliveryServiceClient client, DeliveryVehicle responseDeliveryVehicle)
+  public static DeliveryVehicle updateSegments(List<Task> tasks, DeliveryServiceClient client, DeliveryVehicle responseDeliveryVehicle)
   {
     DeliveryVehicle updatedResponseDeliveryVehicle = null;
     try
     {
-      ArrayList<VehicleJourneySegment> vehicleJourneySegments = new ArrayList<>();
-
-      for (int j = 0; j < tasks.size() ; j++ ) {
-        LocationInfo locationInfo = tasks.get(j).getPlannedLocation(); // LocationInfo.newBuilder().setPoint( RouteOptimizationHelper.getLocationInfo( model, , isDelivery ) ).build();
-
-        vehicleJourneySegments.add(
-          createVehicleJourneySegment(
-            tasks.get(j).getName(),
-            locationInfo,
-            tasks.get(j).getTaskDuration().getSeconds()
-          )
-        );
-      }
+      List<VehicleJourneySegment> vehicleJourneySegments = createVehicleJourneySegments( tasks, STOP_MERGE_TOLERANCE_METERS );
 
-      DeliveryVehicle.Builder vehicleBuilder = responseDeliveryVehicle.toBuilder();
+      // The update replaces the whole list, so start from an empty one
+      DeliveryVehicle.Builder vehicleBuilder = responseDeliveryVehicle.toBuilder().clearRemainingVehicleJourneySegments();
       vehicleBuilder.addAllRemainingVehicleJourneySegments( vehicleJourneySegments);
 
       UpdateDeliveryVehicleRequest updateRequest =
@@ -397,12 +605,26 @@ public class App {
         .setUpdateMask(FieldMask.newBuilder().addPaths("remaining_vehicle_journey_segments"))
         .build();
         //System.out.printf( "\nUPDATE REQUEST\n" + updateRequest.toString() );
-      updatedResponseDeliveryVehicle = client.updateDeliveryVehicle(updateRequest);
+      updatedResponseDeliveryVehicle = LmfsHelper.getWriteLimiter().call( () -> {
+        try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.UPDATE_DELIVERY_VEHICLE ) )
+        {
+          DeliveryVehicle updated = client.updateDeliveryVehicle(updateRequest);
+          timer.success();
+          return updated;
+        }
+      } );
+    }
+    catch( NotFoundException ex )
+    {
+      // The caller decides whether to create the vehicle again
+      throw ex;
     }
     catch( Exception ex )
     {
       System.out.printf( "\nAdding journey segments failed: \n" + ex );
     }
+
+    return updatedResponseDeliveryVehicle;
   }
 
   /**
@@ -457,6 +679,19 @@ public class App {
    * @throws IOException If there is a problem with I/O.
    */
   public static DeliveryVehicle createDeliveryVehicle( String provider_id, AuthTokenMinter minter, String vehicleId, LatLng lastLocation ) throws SignerInitializationException, IOException {
+    return createDeliveryVehicle( client, provider_id, vehicleId, lastLocation );
+  }
+
+  /**
+   * Creates a delivery vehicle with a given client.
+   *
+   * @param client The delivery service client.
+   * @param provider_id The provider ID.
+   * @param vehicleId The vehicle ID.
+   * @param lastLocation The last location.
+   * @return The delivery vehicle.
+   */
+  public static DeliveryVehicle createDeliveryVehicle( DeliveryServiceClient client, String provider_id, String vehicleId, LatLng lastLocation ) {
 
     // Construct the delivery vehicle object
     DeliveryVehicle deliveryVehicle =
@@ -480,7 +715,14 @@ public class App {
             .build();
 
     try {
-      deliveryVehicle = client.createDeliveryVehicle(createDeliveryVehicleRequest);
+      deliveryVehicle = LmfsHelper.getWriteLimiter().call( () -> {
+        try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.CREATE_DELIVERY_VEHICLE ) )
+        {
+          DeliveryVehicle created = client.createDeliveryVehicle(createDeliveryVehicleRequest);
+          timer.success();
+          return created;
+        }
+      } );
       System.out.printf("\nDelivery Vehicle with name '%s' created\n", deliveryVehicle.getName() + "\n" );
     }
     catch( AlreadyExistsException ex )
@@ -491,6 +733,49 @@ public class App {
     return deliveryVehicle;
   }
 
+  /**
+   * Creates the journey segments of a list of tasks. Consecutive tasks planned at the same place,
+   * such as several deliveries to one apartment block, become a single stop with several tasks.
+   *
+   * @param tasks The tasks, in visit order.
+   * @param toleranceMeters The largest distance from the first task of a stop for a task to join it.
+   *     0 merges identical locations only, and a negative value creates one stop per task.
+   * @return The vehicle journey segments, in visit order.
+   */
+  public static List<VehicleJourneySegment> createVehicleJourneySegments( List<Task> tasks, double toleranceMeters )
+  {
+    ArrayList<VehicleJourneySegment> vehicleJourneySegments = new ArrayList<>();
+    VehicleStop.Builder stopBuilder = null;
+    LatLng stopPoint = null;
+
+    for( Task task : tasks ) {
+      LatLng point = task.getPlannedLocation().getPoint();
+      boolean sameStop = stopBuilder != null && toleranceMeters >= 0
+          && ( point.equals( stopPoint ) || GeoUtils.haversineMeters( stopPoint, point ) <= toleranceMeters );
+
+      if( !sameStop )
+      {
+        if( stopBuilder != null )
+          vehicleJourneySegments.add( VehicleJourneySegment.newBuilder().setStop( stopBuilder ).build() );
+        stopBuilder = VehicleStop.newBuilder()
+            .setPlannedLocation( task.getPlannedLocation() )
+            .setState( VehicleStop.State.NEW );
+        stopPoint = point;
+      }
+
+      stopBuilder.addTasks(
+          VehicleStop.TaskInfo.newBuilder()
+              .setTaskId( stripFullPathFromId( task.getName() ) )
+              .setTaskDuration( Duration.newBuilder().setSeconds( task.getTaskDuration().getSeconds() ).build() )
+              .build() );
+    }
+
+    if( stopBuilder != null )
+      vehicleJourneySegments.add( VehicleJourneySegment.newBuilder().setStop( stopBuilder ).build() );
+
+    return vehicleJourneySegments;
+  }
+
   /**
    * Creates a vehicle journey segment.
    *
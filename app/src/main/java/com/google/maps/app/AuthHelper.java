@@ -55,4 +55,36 @@ public class AuthHelper
       return null;
     }
   }
+
+  /**
+   * Creates a token provider that signs delivery server tokens in the background before they expire,
+   * so that the IAM signing call of ImpersonatedSigner stays out of the Fleet Engine request path.
+   *
+   * @param serverTokenAccount The server token account.
+   * @param fleetEngineAudience The Fleet Engine audience.
+   * @param refreshAheadMillis How long before expiry the next token is signed.
+   * @return The token provider, or null if the signer cannot be created.
+   */
+  public static PreMintingTokenProvider createPreMintingTokenProvider( String serverTokenAccount, String fleetEngineAudience, long refreshAheadMillis )
+  {
+    try
+    {
+      ImpersonatedSigner signer = ImpersonatedSigner.create(serverTokenAccount);
+      FleetEngineTokenFactory tokenFactory =
+          new FleetEngineTokenFactory(
+              FleetEngineTokenFactorySettings.builder()
+                  .setAudience(fleetEngineAudience)
+                  .build());
+
+      PreMintingTokenProvider tokenProvider =
+          new PreMintingTokenProvider( () -> signer.sign( tokenFactory.createDeliveryServerToken() ), refreshAheadMillis );
+      tokenProvider.registerGauges();
+      return tokenProvider;
+    }
+    catch( SignerInitializationException ex )
+    {
+      System.out.println( "\nSignerInitializationException! Problem creating a token provider: " + ex.toString() );
+      return null;
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,329 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
+
+/**
+ * Solves many models concurrently and publishes each plan as soon as it is ready.
+ *
+ * Usage: BatchRunner (directory | manifest) [--parallelism N] [--output directory] [--no-publish]
+ *
+ * A directory is scanned for model files (see ModelLoader.isModelFile). A manifest is a text file
+ * with one model path per line, relative to the manifest; blank lines and lines starting with #
+ * are ignored. At most N models are solved at the same time. Finished solves are published one
+ * at a time in completion order, so publishing overlaps with the solves still running, and the
+ * batch takes about as long as its slowest model instead of the sum of all of them.
+ */
+public class BatchRunner {
+
+  public static int DEFAULT_PARALLELISM = 8;
+
+  /**
+   * The outcome of one model.
+   */
+  public static final class Result {
+    private final String modelPath;
+    private final OptimizeToursRequest request;
+    private final OptimizeToursResponse response;
+    private final Exception error;
+    private final long solveMillis;
+
+    private Result( String modelPath, OptimizeToursRequest request, OptimizeToursResponse response, Exception error, long solveMillis )
+    {
+      this.modelPath = modelPath;
+      this.request = request;
+      this.response = response;
+      this.error = error;
+      this.solveMillis = solveMillis;
+    }
+
+    /**
+     * Gets the model file.
+     *
+     * @return The model path.
+     */
+    public String getModelPath()
+    {
+      return modelPath;
+    }
+
+    /**
+     * Gets the request built from the model.
+     *
+     * @return The request, or null if the model could not be loaded.
+     */
+    public OptimizeToursRequest getRequest()
+    {
+      return request;
+    }
+
+    /**
+     * Gets the optimized plan.
+     *
+     * @return The response, or null if the solve failed.
+     */
+    public OptimizeToursResponse getResponse()
+    {
+      return response;
+    }
+
+    /**
+     * Gets the error of a failed solve.
+     *
+     * @return The error, or null if the solve succeeded.
+     */
+    public Exception getError()
+    {
+      return error;
+    }
+
+    /**
+     * Gets the time spent loading and solving the model.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getSolveMillis()
+    {
+      return solveMillis;
+    }
+  }
+
+  /**
+   * Receives each result as soon as its solve ends, on the thread that called run.
+   */
+  @FunctionalInterface
+  public interface ResultConsumer {
+    /**
+     * Handles one result.
+     *
+     * @param result The result of one model.
+     * @throws Exception If handling fails; the batch goes on with the next result.
+     */
+    void accept( Result result ) throws Exception;
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args Command line arguments.
+   */
+  public static void main( String[] args )
+  {
+    if( args.length < 1 )
+    {
+      System.out.println( "Usage: BatchRunner (directory | manifest) [--parallelism N] [--output directory] [--no-publish]" );
+      System.exit( 2 );
+    }
+
+    int parallelism = DEFAULT_PARALLELISM;
+    Path outputDirectory = null;
+    boolean publish = true;
+    for (int i = 1; i < args.length; i++ ) {
+      if( args[i].equals( "--parallelism" ) && i + 1 < args.length )
+        parallelism = Integer.parseInt( args[++i] );
+      else if( args[i].equals( "--output" ) && i + 1 < args.length )
+        outputDirectory = Paths.get( args[++i] );
+      else if( args[i].equals( "--no-publish" ) )
+        publish = false;
+      else
+        System.out.println( "Ignoring unknown argument: " + args[i] );
+    }
+
+    List<String> modelPaths;
+    try
+    {
+      modelPaths = listModels( Paths.get( args[0] ) );
+    }
+    catch( IOException ex )
+    {
+      System.out.println( "\nERROR! Cannot list models in " + args[0] + ": \n" + ex );
+      System.exit( 1 );
+      return;
+    }
+
+    App.initializeClients();
+    Path output = outputDirectory;
+    boolean publishPlans = publish;
+    long startMillis = System.currentTimeMillis();
+    List<Result> results = run( modelPaths, parallelism, result -> {
+      if( result.getError() != null )
+      {
+        System.out.println( "\nERROR! Solving " + result.getModelPath() + " failed: \n" + result.getError() );
+        return;
+      }
+      System.out.printf( "\nSolved %s in %d ms\n", result.getModelPath(), result.getSolveMillis() );
+      if( output != null )
+        writeResponse( output, result );
+      if( publishPlans )
+      {
+        // Every model is its own plan, published from its own session
+        PlanningSession session = App.getEngine().newSession( result.getModelPath() );
+        session.setPlan( result.getRequest(), result.getResponse() );
+        try
+        {
+          session.publish();
+        }
+        catch( Exception ex )
+        {
+          System.out.println( "\nERROR! Publishing " + result.getModelPath() + " failed: \n" + ex );
+        }
+      }
+    } );
+
+    long solveMillisSum = 0;
+    long slowestMillis = 0;
+    int failures = 0;
+    for( Result result : results ) {
+      solveMillisSum += result.getSolveMillis();
+      slowestMillis = Math.max( slowestMillis, result.getSolveMillis() );
+      if( result.getError() != null )
+        failures++;
+    }
+    System.out.printf( "\nBatch of %d models done in %d ms (slowest solve %d ms, sum of solves %d ms), %d failed\n",
+        results.size(), System.currentTimeMillis() - startMillis, slowestMillis, solveMillisSum, failures );
+    App.reportMetrics();
+
+    if( failures > 0 )
+      System.exit( 1 );
+  }
+
+  /**
+   * Solves models with at most parallelism solves running at once, and hands each result to
+   * the consumer in completion order while the other solves go on.
+   *
+   * @param modelPaths The model files.
+   * @param parallelism The maximum number of concurrent solves.
+   * @param consumer Receives each result as soon as it is ready.
+   * @return The results, in completion order.
+   */
+  public static List<Result> run( List<String> modelPaths, int parallelism, ResultConsumer consumer )
+  {
+    ArrayList<Result> results = new ArrayList<>();
+    if( modelPaths.isEmpty() )
+      return results;
+
+    ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, Math.min( parallelism, modelPaths.size() ) ) );
+    try
+    {
+      CompletionService<Result> completionService = new ExecutorCompletionService<>( executor );
+      for( String modelPath : modelPaths )
+        completionService.submit( () -> solve( modelPath ) );
+
+      for (int i = 0; i < modelPaths.size(); i++ ) {
+        Result result = completionService.take().get();
+        results.add( result );
+        try
+        {
+          consumer.accept( result );
+        }
+        catch( Exception ex )
+        {
+          System.out.println( "\nERROR! Handling the plan of " + result.getModelPath() + " failed: \n" + ex );
+        }
+      }
+    }
+    catch( InterruptedException ex )
+    {
+      Thread.currentThread().interrupt();
+      System.out.println( "Interrupted while running batch: " + ex );
+    }
+    catch( ExecutionException ex )
+    {
+      // solve catches everything, so this is not expected
+      System.out.println( "Error running batch: " + ex.getCause() );
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+
+    return results;
+  }
+
+  /**
+   * Lists the models of a directory or manifest.
+   *
+   * @param source A directory of model files, or a manifest file.
+   * @return The model paths, sorted for a directory and in manifest order otherwise.
+   * @throws IOException If the directory or manifest cannot be read.
+   */
+  public static List<String> listModels( Path source ) throws IOException
+  {
+    ArrayList<String> modelPaths = new ArrayList<>();
+    if( Files.isDirectory( source ) )
+    {
+      try( DirectoryStream<Path> stream = Files.newDirectoryStream( source ) )
+      {
+        for( Path entry : stream )
+          if( Files.isRegularFile( entry ) && ModelLoader.isModelFile( entry.getFileName().toString() ) )
+            modelPaths.add( entry.toString() );
+      }
+      Collections.sort( modelPaths );
+      return modelPaths;
+    }
+
+    Path baseDirectory = source.toAbsolutePath().getParent();
+    for( String line : Files.readAllLines( source, StandardCharsets.UTF_8 ) ) {
+      String entry = line.trim();
+      if( entry.isEmpty() || entry.startsWith( "#" ) )
+        continue;
+      modelPaths.add( baseDirectory.resolve( entry ).toString() );
+    }
+    return modelPaths;
+  }
+
+  private static Result solve( String modelPath )
+  {
+    long startMillis = System.currentTimeMillis();
+    OptimizeToursRequest request = null;
+    try
+    {
+      request = App.preflight( RouteOptimizationHelper.buildFleetRoutingRequest( "projects/" + App.PROVIDER_ID, modelPath ) );
+      OptimizeToursResponse response = App.optimize( request );
+      return new Result( modelPath, request, response, null, System.currentTimeMillis() - startMillis );
+    }
+    catch( Exception ex )
+    {
+      return new Result( modelPath, request, null, ex, System.currentTimeMillis() - startMillis );
+    }
+  }
+
+  private static void writeResponse( Path outputDirectory, Result result ) throws IOException
+  {
+    String name = Paths.get( result.getModelPath() ).getFileName().toString();
+    int extension = name.indexOf( '.' );
+    if( extension > 0 )
+      name = name.substring( 0, extension );
+    Files.createDirectories( outputDirectory );
+    Files.write( outputDirectory.resolve( name + ".response.pb" ), result.getResponse().toByteArray() );
+  }
+}
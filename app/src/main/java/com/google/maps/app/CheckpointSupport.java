@@ -0,0 +1,106 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.lang.management.ManagementFactory;
+
+import org.crac.CheckpointException;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.crac.RestoreException;
+
+/**
+ * Checkpoint/restore support for JDKs with CRaC (Coordinated Restore at Checkpoint).
+ *
+ * A checkpoint taken after App.initializeClients holds the loaded and compiled classes of the
+ * protobuf, gRPC and auth libraries, so a restored process skips most of the startup work.
+ * Network channels, token refresh threads and open files cannot be carried into a restored
+ * process, so the clients are closed before the checkpoint and created again after restore,
+ * with fresh credentials. On JDKs without CRaC nothing happens.
+ *
+ * Usage:
+ *   java -XX:CRaCCheckpointTo=checkpoint -cp ... com.google.maps.app.App   (warms up, saves the process and exits)
+ *   java -XX:CRaCRestoreFrom=checkpoint                                     (restores and runs the use cases)
+ */
+public class CheckpointSupport implements Resource {
+
+  // CRaC holds resources by weak reference
+  private static final CheckpointSupport INSTANCE = new CheckpointSupport();
+  private static boolean registered;
+
+  private CheckpointSupport()
+  {
+  }
+
+  /**
+   * Registers the client lifecycle with the global CRaC context. Calling it again has no effect.
+   */
+  public static synchronized void register()
+  {
+    if( !registered )
+    {
+      Core.getGlobalContext().register( INSTANCE );
+      registered = true;
+    }
+  }
+
+  /**
+   * Checks whether the JVM was started to take a checkpoint, with -XX:CRaCCheckpointTo.
+   *
+   * @return True if a checkpoint was requested.
+   */
+  public static boolean isCheckpointRequested()
+  {
+    for( String argument : ManagementFactory.getRuntimeMXBean().getInputArguments() )
+      if( argument.startsWith( "-XX:CRaCCheckpointTo" ) )
+        return true;
+    return false;
+  }
+
+  /**
+   * Registers the client lifecycle and, if the JVM was started with -XX:CRaCCheckpointTo,
+   * takes the checkpoint. The checkpointing process exits; a restored process returns from
+   * this method with new clients. Call it once the clients are initialized.
+   */
+  public static void checkpointIfRequested()
+  {
+    register();
+    if( !isCheckpointRequested() )
+      return;
+
+    try
+    {
+      System.out.println( "Taking checkpoint after " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms of startup" );
+      Core.checkpointRestore();
+      System.out.println( "Restored from checkpoint" );
+    }
+    catch( CheckpointException | RestoreException | UnsupportedOperationException ex )
+    {
+      System.out.println( "\nCannot checkpoint, continuing without it: " + ex );
+    }
+  }
+
+  @Override
+  public void beforeCheckpoint( Context<? extends Resource> context )
+  {
+    App.closeClients();
+  }
+
+  @Override
+  public void afterRestore( Context<? extends Resource> context )
+  {
+    App.initializeClients();
+  }
+}
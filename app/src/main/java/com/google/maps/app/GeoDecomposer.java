@@ -0,0 +1,681 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import com.google.type.LatLng;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentModel.PrecedenceRule;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+import com.google.maps.routeoptimization.v1.SkippedShipment;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+/**
+ * Splits a large optimization request into regional sub-requests and merges their solutions.
+ *
+ * Shipments are clustered with k-means on the location of their first delivery (or pickup),
+ * and every region gets a share of the vehicles proportional to its shipments, nearest
+ * vehicles first. Sub-requests keep the shipment and vehicle order of the full model, and
+ * merged responses use the indices of the full model again, so the result can be published
+ * like the response to the full request.
+ *
+ * Precedence rules between shipments of different regions are dropped, and the merged
+ * total cost is the sum of the regional costs.
+ */
+public class GeoDecomposer {
+
+  private static final int MAX_ITERATIONS = 25;
+  private static final long SEED = 42;
+
+  /**
+   * The shipments and vehicles of one region, as indices into the full model.
+   */
+  public static final class Region {
+    private final int id;
+    private final double[] centroid;
+    private final int[] shipmentIndices;
+    private final int[] vehicleIndices;
+
+    private Region( int id, double[] centroid, int[] shipmentIndices, int[] vehicleIndices )
+    {
+      this.id = id;
+      this.centroid = centroid;
+      this.shipmentIndices = shipmentIndices;
+      this.vehicleIndices = vehicleIndices;
+    }
+
+    /**
+     * Gets the region number.
+     *
+     * @return The region number.
+     */
+    public int getId()
+    {
+      return id;
+    }
+
+    /**
+     * Gets the shipments of the region, in sub-request order.
+     *
+     * @return The shipment indices in the full model.
+     */
+    public int[] getShipmentIndices()
+    {
+      return shipmentIndices.clone();
+    }
+
+    /**
+     * Gets the vehicles of the region, in sub-request order.
+     *
+     * @return The vehicle indices in the full model.
+     */
+    public int[] getVehicleIndices()
+    {
+      return vehicleIndices.clone();
+    }
+
+    /**
+     * Gets a copy of the region with more shipments appended, keeping the indices of the existing ones.
+     *
+     * @param extraShipments The shipment indices in the full model to add.
+     * @return The extended region.
+     */
+    public Region withExtraShipments( List<Integer> extraShipments )
+    {
+      int[] shipments = Arrays.copyOf( shipmentIndices, shipmentIndices.length + extraShipments.size() );
+      for (int i = 0; i < extraShipments.size(); i++ )
+        shipments[ shipmentIndices.length + i ] = extraShipments.get(i);
+      return new Region( id, centroid, shipments, vehicleIndices );
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format( "region-%d{shipments=%d, vehicles=%d}", id, shipmentIndices.length, vehicleIndices.length );
+    }
+  }
+
+  private final OptimizeToursRequest request;
+  private final List<Region> regions;
+
+  private GeoDecomposer( OptimizeToursRequest request, List<Region> regions )
+  {
+    this.request = request;
+    this.regions = regions;
+  }
+
+  /**
+   * Clusters the shipments and vehicles of a request into regions.
+   * Regions without shipments are left out and their vehicles join the nearest other region,
+   * so every vehicle belongs to exactly one region. There are never more regions than vehicles.
+   *
+   * @param request The full optimize tours request.
+   * @param regionCount The number of regions to aim for.
+   * @return The decomposer.
+   */
+  public static GeoDecomposer of( OptimizeToursRequest request, int regionCount )
+  {
+    ShipmentModel model = request.getModel();
+    int k = Math.max( 1, Math.min( regionCount, Math.min( model.getVehiclesCount(), model.getShipmentsCount() ) ) );
+
+    double[][] shipmentPoints = new double[ model.getShipmentsCount() ][];
+    for (int i = 0; i < shipmentPoints.length; i++ )
+      shipmentPoints[i] = project( shipmentLocation( model.getShipments(i) ) );
+
+    double[][] centroids = kMeans( shipmentPoints, k );
+    int[] shipmentRegion = new int[ shipmentPoints.length ];
+    int[] shipmentCounts = new int[k];
+    int largest = 0;
+    for (int i = 0; i < shipmentPoints.length; i++ ) {
+      if( shipmentPoints[i] != null )
+      {
+        shipmentRegion[i] = nearest( shipmentPoints[i], centroids, -1 );
+        shipmentCounts[ shipmentRegion[i] ]++;
+        if( shipmentCounts[ shipmentRegion[i] ] > shipmentCounts[ largest ] )
+          largest = shipmentRegion[i];
+      }
+    }
+    // Shipments without a location go to the largest region
+    for (int i = 0; i < shipmentPoints.length; i++ ) {
+      if( shipmentPoints[i] == null )
+      {
+        shipmentRegion[i] = largest;
+        shipmentCounts[ largest ]++;
+      }
+    }
+
+    int[] vehicleRegion = assignVehicles( model, centroids, shipmentCounts );
+
+    // A shipment restricted to some vehicles goes where one of them is
+    for (int i = 0; i < shipmentRegion.length; i++ ) {
+      int region = allowedRegion( model.getShipments(i), vehicleRegion, shipmentRegion[i], -1, null );
+      if( region != shipmentRegion[i] )
+      {
+        shipmentCounts[ shipmentRegion[i] ]--;
+        shipmentCounts[ region ]++;
+        shipmentRegion[i] = region;
+      }
+    }
+    // That can empty a region; its vehicles would otherwise be left out of every sub-model
+    moveIdleVehicles( model, vehicleRegion, centroids, shipmentCounts );
+
+    List<Region> regions = new ArrayList<>();
+    for (int c = 0; c < k; c++ ) {
+      if( shipmentCounts[c] == 0 )
+        continue;
+      regions.add( new Region( regions.size(), centroids[c], indicesOf( shipmentRegion, c ), indicesOf( vehicleRegion, c ) ) );
+    }
+
+    return new GeoDecomposer( request, Collections.unmodifiableList( regions ) );
+  }
+
+  /**
+   * Gets the regions.
+   *
+   * @return The regions, indexed by region number.
+   */
+  public List<Region> getRegions()
+  {
+    return regions;
+  }
+
+  /**
+   * Maps the injected first solution routes of the full request into a region.
+   * Routes of vehicles outside the region are left out, as are visits of shipments outside it.
+   * Each route keeps its vehicle and the order of its visits only.
+   *
+   * @param region The region.
+   * @return The injected routes of the region, in sub-request indices.
+   */
+  public List<ShipmentRoute> injectedRoutes( Region region )
+  {
+    Map<Integer, Integer> localVehicles = localIndices( region.vehicleIndices );
+    Map<Integer, Integer> localShipments = localIndices( region.shipmentIndices );
+
+    List<ShipmentRoute> routes = new ArrayList<>();
+    for( ShipmentRoute route : request.getInjectedFirstSolutionRoutesList() ) {
+      Integer vehicleIndex = localVehicles.get( route.getVehicleIndex() );
+      if( vehicleIndex == null )
+        continue;
+      // Transitions and metrics no longer match once visits are removed, so only the visit order is kept
+      ShipmentRoute.Builder routeBuilder = ShipmentRoute.newBuilder()
+          .setVehicleIndex( vehicleIndex )
+          .setVehicleLabel( route.getVehicleLabel() );
+      for( Visit visit : route.getVisitsList() ) {
+        Integer shipmentIndex = localShipments.get( visit.getShipmentIndex() );
+        if( shipmentIndex != null )
+          routeBuilder.addVisits( visit.toBuilder().setShipmentIndex( shipmentIndex ) );
+      }
+      if( routeBuilder.getVisitsCount() > 0 )
+        routes.add( routeBuilder.build() );
+    }
+    return routes;
+  }
+
+  /**
+   * Builds the sub-request of a region. Request settings such as the timeout and search mode
+   * are copied from the full request; its injected routes are replaced by the given ones.
+   *
+   * @param region The region.
+   * @param injectedRoutes Routes of an earlier solution of this region to start from, in sub-request indices.
+   * @return The sub-request.
+   */
+  public OptimizeToursRequest buildSubRequest( Region region, List<ShipmentRoute> injectedRoutes )
+  {
+    ShipmentModel model = request.getModel();
+    Map<Integer, Integer> localVehicles = localIndices( region.vehicleIndices );
+    Map<Integer, Integer> localShipments = localIndices( region.shipmentIndices );
+
+    ShipmentModel.Builder subModel = model.toBuilder()
+        .clearShipments()
+        .clearVehicles()
+        .clearPrecedenceRules();
+    for( int vehicleIndex : region.vehicleIndices )
+      subModel.addVehicles( model.getVehicles( vehicleIndex ) );
+    for( int shipmentIndex : region.shipmentIndices )
+      subModel.addShipments( remapVehicles( model.getShipments( shipmentIndex ), localVehicles, model.getVehiclesCount() ) );
+
+    for( PrecedenceRule rule : model.getPrecedenceRulesList() ) {
+      Integer first = localShipments.get( rule.getFirstIndex() );
+      Integer second = localShipments.get( rule.getSecondIndex() );
+      if( first != null && second != null )
+        subModel.addPrecedenceRules( rule.toBuilder().setFirstIndex( first ).setSecondIndex( second ) );
+    }
+
+    return request.toBuilder()
+        .setModel( subModel )
+        .setLabel( request.getLabel() + "/region-" + region.id )
+        .clearInjectedFirstSolutionRoutes()
+        .clearInjectedSolutionConstraint()
+        .clearRefreshDetailsRoutes()
+        .addAllInjectedFirstSolutionRoutes( injectedRoutes )
+        .build();
+  }
+
+  /**
+   * Picks a new region for every skipped shipment: the nearest region other than the one that skipped it.
+   *
+   * @param regions The regions the responses were computed for.
+   * @param responses The response of each region.
+   * @return The shipment indices in the full model to move, by target region number.
+   */
+  public Map<Integer, List<Integer>> rebalanceTargets( List<Region> regions, List<OptimizeToursResponse> responses )
+  {
+    double[][] centroids = new double[ regions.size() ][];
+    for (int r = 0; r < regions.size(); r++ )
+      centroids[r] = regions.get(r).centroid;
+
+    Map<Integer, List<Integer>> targets = new LinkedHashMap<>();
+    if( regions.size() < 2 )
+      return targets;
+
+    int[] vehicleRegions = new int[ request.getModel().getVehiclesCount() ];
+    for( Region region : regions )
+      for( int vehicleIndex : region.vehicleIndices )
+        vehicleRegions[ vehicleIndex ] = region.id;
+
+    for (int r = 0; r < regions.size(); r++ ) {
+      Region region = regions.get(r);
+      for( SkippedShipment skipped : responses.get(r).getSkippedShipmentsList() ) {
+        int shipmentIndex = region.shipmentIndices[ skipped.getIndex() ];
+        Shipment shipment = request.getModel().getShipments( shipmentIndex );
+        double[] point = project( shipmentLocation( shipment ) );
+        int target = point == null ? ( r + 1 ) % regions.size() : nearest( point, centroids, r );
+        target = allowedRegion( shipment, vehicleRegions, target, r, centroids );
+        if( target >= 0 )
+          targets.computeIfAbsent( target, t -> new ArrayList<>() ).add( shipmentIndex );
+      }
+    }
+
+    return targets;
+  }
+
+  /**
+   * Merges regional responses into a response for the full request.
+   * Routes are listed in vehicle order with full-model indices, and a shipment counts as skipped
+   * only if no region served it.
+   *
+   * @param regions The regions the responses were computed for.
+   * @param responses The response of each region.
+   * @return The merged response.
+   */
+  public OptimizeToursResponse merge( List<Region> regions, List<OptimizeToursResponse> responses )
+  {
+    ShipmentModel model = request.getModel();
+    ShipmentRoute[] routes = new ShipmentRoute[ model.getVehiclesCount() ];
+    Set<Integer> served = new HashSet<>();
+    Map<Integer, SkippedShipment> skipped = new LinkedHashMap<>();
+    OptimizeToursResponse.Metrics.Builder metrics = OptimizeToursResponse.Metrics.newBuilder();
+    double totalCost = 0;
+    int usedVehicles = 0;
+
+    for (int r = 0; r < regions.size(); r++ ) {
+      Region region = regions.get(r);
+      OptimizeToursResponse response = responses.get(r);
+
+      for( ShipmentRoute route : response.getRoutesList() ) {
+        int vehicleIndex = region.vehicleIndices[ route.getVehicleIndex() ];
+        ShipmentRoute.Builder routeBuilder = route.toBuilder().setVehicleIndex( vehicleIndex );
+        for (int i = 0; i < routeBuilder.getVisitsCount(); i++ ) {
+          Visit visit = routeBuilder.getVisits(i);
+          int shipmentIndex = region.shipmentIndices[ visit.getShipmentIndex() ];
+          routeBuilder.setVisits( i, visit.toBuilder().setShipmentIndex( shipmentIndex ) );
+          served.add( shipmentIndex );
+        }
+        routes[ vehicleIndex ] = routeBuilder.build();
+      }
+
+      for( SkippedShipment skippedShipment : response.getSkippedShipmentsList() ) {
+        SkippedShipment.Builder skippedBuilder = skippedShipment.toBuilder()
+            .setIndex( region.shipmentIndices[ skippedShipment.getIndex() ] );
+        for (int i = 0; i < skippedBuilder.getReasonsCount(); i++ ) {
+          SkippedShipment.Reason reason = skippedBuilder.getReasons(i);
+          if( reason.hasExampleVehicleIndex() )
+            skippedBuilder.setReasons( i, reason.toBuilder().setExampleVehicleIndex( region.vehicleIndices[ reason.getExampleVehicleIndex() ] ) );
+        }
+        skipped.putIfAbsent( skippedBuilder.getIndex(), skippedBuilder.build() );
+      }
+
+      usedVehicles += response.getMetrics().getUsedVehicleCount();
+      totalCost += response.getMetrics().getTotalCost();
+    }
+
+    OptimizeToursResponse.Builder merged = OptimizeToursResponse.newBuilder().setRequestLabel( request.getLabel() );
+    for (int v = 0; v < routes.length; v++ ) {
+      if( routes[v] == null )
+        routes[v] = ShipmentRoute.newBuilder().setVehicleIndex( v ).setVehicleLabel( model.getVehicles(v).getLabel() ).build();
+      merged.addRoutes( routes[v] );
+    }
+
+    int skippedMandatory = 0;
+    for( SkippedShipment skippedShipment : skipped.values() ) {
+      if( served.contains( skippedShipment.getIndex() ) )
+        continue;
+      merged.addSkippedShipments( skippedShipment );
+      if( !model.getShipments( skippedShipment.getIndex() ).hasPenaltyCost() )
+        skippedMandatory++;
+    }
+
+    metrics.setUsedVehicleCount( usedVehicles )
+        .setSkippedMandatoryShipmentCount( skippedMandatory )
+        .setTotalCost( totalCost );
+    return merged.setMetrics( metrics ).build();
+  }
+
+  /**
+   * Gets the location used to cluster a shipment: its first delivery, or its first pickup.
+   *
+   * @param shipment The shipment.
+   * @return The location, or null if the shipment has no arrival location.
+   */
+  static LatLng shipmentLocation( Shipment shipment )
+  {
+    if( shipment.getDeliveriesCount() > 0 && shipment.getDeliveries(0).hasArrivalLocation() )
+      return shipment.getDeliveries(0).getArrivalLocation();
+    if( shipment.getPickupsCount() > 0 && shipment.getPickups(0).hasArrivalLocation() )
+      return shipment.getPickups(0).getArrivalLocation();
+    return null;
+  }
+
+  private static LatLng vehicleLocation( Vehicle vehicle )
+  {
+    if( vehicle.hasStartLocation() )
+      return vehicle.getStartLocation();
+    if( vehicle.hasEndLocation() )
+      return vehicle.getEndLocation();
+    return null;
+  }
+
+  // Equirectangular projection: good enough to compare distances within a metro area
+  private static double[] project( LatLng location )
+  {
+    if( location == null )
+      return null;
+    double x = location.getLongitude() * Math.cos( Math.toRadians( location.getLatitude() ) );
+    return new double[] { x, location.getLatitude() };
+  }
+
+  private static double distance2( double[] a, double[] b )
+  {
+    double dx = a[0] - b[0];
+    double dy = a[1] - b[1];
+    return dx * dx + dy * dy;
+  }
+
+  private static int nearest( double[] point, double[][] centroids, int excluded )
+  {
+    int best = -1;
+    double bestDistance = Double.MAX_VALUE;
+    for (int c = 0; c < centroids.length; c++ ) {
+      if( c == excluded )
+        continue;
+      double d = distance2( point, centroids[c] );
+      if( d < bestDistance )
+      {
+        bestDistance = d;
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  private static double[][] kMeans( double[][] points, int k )
+  {
+    List<double[]> located = new ArrayList<>();
+    for( double[] point : points )
+      if( point != null )
+        located.add( point );
+
+    double[][] centroids = new double[k][];
+    if( located.isEmpty() )
+    {
+      for (int c = 0; c < k; c++ )
+        centroids[c] = new double[] { 0, 0 };
+      return centroids;
+    }
+
+    // k-means++ seeding with a fixed seed, so the same model always gives the same regions
+    Random random = new Random( SEED );
+    double[] minDistance = new double[ located.size() ];
+    Arrays.fill( minDistance, Double.MAX_VALUE );
+    centroids[0] = located.get( random.nextInt( located.size() ) ).clone();
+    for (int c = 1; c < k; c++ ) {
+      double sum = 0;
+      for (int i = 0; i < located.size(); i++ ) {
+        minDistance[i] = Math.min( minDistance[i], distance2( located.get(i), centroids[c - 1] ) );
+        sum += minDistance[i];
+      }
+      int chosen = 0;
+      if( sum > 0 )
+      {
+        double threshold = random.nextDouble() * sum;
+        for( double cumulative = minDistance[0]; cumulative < threshold && chosen < located.size() - 1; )
+          cumulative += minDistance[ ++chosen ];
+      }
+      else
+      {
+        chosen = random.nextInt( located.size() );
+      }
+      centroids[c] = located.get( chosen ).clone();
+    }
+
+    int[] assignment = new int[ located.size() ];
+    Arrays.fill( assignment, -1 );
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++ ) {
+      boolean changed = false;
+      for (int i = 0; i < located.size(); i++ ) {
+        int c = nearest( located.get(i), centroids, -1 );
+        if( c != assignment[i] )
+        {
+          assignment[i] = c;
+          changed = true;
+        }
+      }
+      if( !changed )
+        break;
+
+      double[][] sums = new double[k][2];
+      int[] counts = new int[k];
+      for (int i = 0; i < located.size(); i++ ) {
+        sums[ assignment[i] ][0] += located.get(i)[0];
+        sums[ assignment[i] ][1] += located.get(i)[1];
+        counts[ assignment[i] ]++;
+      }
+      // A region that lost all its points keeps its centroid
+      for (int c = 0; c < k; c++ )
+        if( counts[c] > 0 )
+          centroids[c] = new double[] { sums[c][0] / counts[c], sums[c][1] / counts[c] };
+    }
+
+    return centroids;
+  }
+
+  private static int[] assignVehicles( ShipmentModel model, double[][] centroids, int[] shipmentCounts )
+  {
+    int vehicleCount = model.getVehiclesCount();
+    int totalShipments = Math.max( 1, Arrays.stream( shipmentCounts ).sum() );
+    int[] quota = new int[ centroids.length ];
+    for (int c = 0; c < centroids.length; c++ )
+      quota[c] = shipmentCounts[c] == 0 ? 0 : Math.max( 1, (int) Math.round( (double) vehicleCount * shipmentCounts[c] / totalShipments ) );
+
+    // Every (vehicle, region) pair, nearest first; vehicles without a location come last
+    List<long[]> pairs = new ArrayList<>( vehicleCount * centroids.length );
+    double[] distances = new double[ vehicleCount * centroids.length ];
+    for (int v = 0; v < vehicleCount; v++ ) {
+      double[] point = project( vehicleLocation( model.getVehicles(v) ) );
+      for (int c = 0; c < centroids.length; c++ ) {
+        distances[ v * centroids.length + c ] = point == null ? Double.MAX_VALUE : distance2( point, centroids[c] );
+        pairs.add( new long[] { v, c } );
+      }
+    }
+    pairs.sort( ( a, b ) -> Double.compare( distances[ (int) ( a[0] * centroids.length + a[1] ) ], distances[ (int) ( b[0] * centroids.length + b[1] ) ] ) );
+
+    int[] vehicleRegion = new int[ vehicleCount ];
+    Arrays.fill( vehicleRegion, -1 );
+    int[] assigned = new int[ centroids.length ];
+    // First give every region with shipments its nearest vehicle, then fill the quotas
+    for( int pass = 0; pass < 2; pass++ ) {
+      for( long[] pair : pairs ) {
+        int v = (int) pair[0];
+        int c = (int) pair[1];
+        int cap = pass == 0 ? Math.min( 1, quota[c] ) : quota[c];
+        if( vehicleRegion[v] == -1 && assigned[c] < cap )
+        {
+          vehicleRegion[v] = c;
+          assigned[c]++;
+        }
+      }
+    }
+
+    // Rounding can leave vehicles over; they join the nearest region with shipments
+    for (int v = 0; v < vehicleCount; v++ ) {
+      if( vehicleRegion[v] != -1 )
+        continue;
+      double best = Double.MAX_VALUE;
+      for (int c = 0; c < centroids.length; c++ ) {
+        double d = distances[ v * centroids.length + c ];
+        if( shipmentCounts[c] > 0 && ( vehicleRegion[v] == -1 || d < best ) )
+        {
+          best = d;
+          vehicleRegion[v] = c;
+        }
+      }
+    }
+
+    return vehicleRegion;
+  }
+
+  /**
+   * Moves the vehicles of regions without shipments to the nearest region with shipments.
+   * Vehicles without a location join the region with the most shipments.
+   */
+  private static void moveIdleVehicles( ShipmentModel model, int[] vehicleRegion, double[][] centroids, int[] shipmentCounts )
+  {
+    int largest = 0;
+    for (int c = 1; c < shipmentCounts.length; c++ )
+      if( shipmentCounts[c] > shipmentCounts[ largest ] )
+        largest = c;
+    if( shipmentCounts[ largest ] == 0 )
+      return;
+
+    for (int v = 0; v < vehicleRegion.length; v++ ) {
+      if( shipmentCounts[ vehicleRegion[v] ] > 0 )
+        continue;
+      double[] point = project( vehicleLocation( model.getVehicles(v) ) );
+      int best = largest;
+      double bestDistance = Double.MAX_VALUE;
+      for (int c = 0; point != null && c < centroids.length; c++ ) {
+        double d = distance2( point, centroids[c] );
+        if( shipmentCounts[c] > 0 && d < bestDistance )
+        {
+          best = c;
+          bestDistance = d;
+        }
+      }
+      vehicleRegion[v] = best;
+    }
+  }
+
+  /**
+   * Keeps a candidate region if the shipment may use one of its vehicles, otherwise picks the
+   * region of an allowed vehicle: the nearest one when centroids are given, else the first one.
+   *
+   * @return The region, or -1 if only the excluded region has allowed vehicles.
+   */
+  private static int allowedRegion( Shipment shipment, int[] vehicleRegion, int candidate, int excluded, double[][] centroids )
+  {
+    if( shipment.getAllowedVehicleIndicesCount() == 0 )
+      return candidate;
+
+    int best = -1;
+    double bestDistance = Double.MAX_VALUE;
+    double[] point = centroids == null ? null : project( shipmentLocation( shipment ) );
+    for( int vehicleIndex : shipment.getAllowedVehicleIndicesList() ) {
+      int region = vehicleRegion[ vehicleIndex ];
+      if( region == candidate && region != excluded )
+        return candidate;
+      if( region == excluded )
+        continue;
+      double d = point == null ? 0 : distance2( point, centroids[ region ] );
+      if( best == -1 || d < bestDistance )
+      {
+        best = region;
+        bestDistance = d;
+      }
+    }
+    return best;
+  }
+
+  private static int[] indicesOf( int[] regionOf, int region )
+  {
+    return IntStream.range( 0, regionOf.length ).filter( i -> regionOf[i] == region ).toArray();
+  }
+
+  private static Map<Integer, Integer> localIndices( int[] globalIndices )
+  {
+    Map<Integer, Integer> local = new HashMap<>();
+    for (int i = 0; i < globalIndices.length; i++ )
+      local.put( globalIndices[i], i );
+    return local;
+  }
+
+  private static Shipment remapVehicles( Shipment shipment, Map<Integer, Integer> localVehicles, int vehicleCount )
+  {
+    if( shipment.getAllowedVehicleIndicesCount() == 0 && shipment.getCostsPerVehicleCount() == 0 )
+      return shipment;
+
+    Shipment.Builder builder = shipment.toBuilder().clearAllowedVehicleIndices();
+    for( int vehicleIndex : shipment.getAllowedVehicleIndicesList() ) {
+      Integer local = localVehicles.get( vehicleIndex );
+      if( local != null )
+        builder.addAllowedVehicleIndices( local );
+    }
+
+    builder.clearCostsPerVehicle().clearCostsPerVehicleIndices();
+    if( shipment.getCostsPerVehicleIndicesCount() == 0 )
+    {
+      // Costs are given for every vehicle of the full model, in order
+      for (int v = 0; v < Math.min( vehicleCount, shipment.getCostsPerVehicleCount() ); v++ )
+        if( localVehicles.containsKey( v ) )
+          builder.addCostsPerVehicleIndices( localVehicles.get( v ) ).addCostsPerVehicle( shipment.getCostsPerVehicle( v ) );
+    }
+    else
+    {
+      for (int i = 0; i < shipment.getCostsPerVehicleIndicesCount(); i++ ) {
+        Integer local = localVehicles.get( shipment.getCostsPerVehicleIndices(i) );
+        if( local != null )
+          builder.addCostsPerVehicleIndices( local ).addCostsPerVehicle( shipment.getCostsPerVehicle(i) );
+      }
+    }
+
+    return builder.build();
+  }
+}
@@ -0,0 +1,46 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import com.google.type.LatLng;
+
+/**
+ * Geographic helper functions.
+ */
+public class GeoUtils {
+
+  public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+  /**
+   * Gets the great-circle distance between two points with the haversine formula.
+   * No road path between the points is shorter, so it gives a lower bound on travel distance.
+   *
+   * @param from The first point.
+   * @param to The second point.
+   * @return The distance in meters.
+   */
+  public static double haversineMeters( LatLng from, LatLng to )
+  {
+    double lat1 = Math.toRadians( from.getLatitude() );
+    double lat2 = Math.toRadians( to.getLatitude() );
+    double dLat = lat2 - lat1;
+    double dLng = Math.toRadians( to.getLongitude() - from.getLongitude() );
+
+    double sinLat = Math.sin( dLat / 2 );
+    double sinLng = Math.sin( dLng / 2 );
+    double h = sinLat * sinLat + Math.cos( lat1 ) * Math.cos( lat2 ) * sinLng * sinLng;
+    return 2 * EARTH_RADIUS_METERS * Math.asin( Math.min( 1.0, Math.sqrt( h ) ) );
+  }
+}
@@ -0,0 +1,144 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ *
+ * Values are recorded in microseconds. Each power of two is split into 16 linear
+ * sub-buckets, so percentiles are accurate to about 6% from one microsecond up to
+ * several days, in a fixed array of counters.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final long MAX_VALUE = ( 1L << 40 ) - 1;
+  private static final int BUCKET_COUNT = bucketIndex( MAX_VALUE ) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray( BUCKET_COUNT );
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param micros The latency in microseconds. Negative values are recorded as zero.
+   */
+  public void record( long micros )
+  {
+    long value = Math.max( 0, Math.min( micros, MAX_VALUE ) );
+    counts.incrementAndGet( bucketIndex( value ) );
+    totalCount.increment();
+    totalMicros.add( value );
+    maxMicros.accumulateAndGet( value, Math::max );
+  }
+
+  /**
+   * Gets the number of recorded values.
+   *
+   * @return The count.
+   */
+  public long getCount()
+  {
+    return totalCount.sum();
+  }
+
+  /**
+   * Gets the sum of the recorded values.
+   *
+   * @return The sum in microseconds.
+   */
+  public long getSumMicros()
+  {
+    return totalMicros.sum();
+  }
+
+  /**
+   * Gets the largest recorded value.
+   *
+   * @return The maximum in microseconds, or 0 if nothing was recorded.
+   */
+  public long getMaxMicros()
+  {
+    return maxMicros.get();
+  }
+
+  /**
+   * Gets the value below which a percentage of the recorded values fall.
+   * The result is the upper bound of the bucket holding the percentile, capped at the maximum.
+   *
+   * @param percentile The percentile, between 0 and 100.
+   * @return The value in microseconds, or 0 if nothing was recorded.
+   */
+  public long getValueAtPercentile( double percentile )
+  {
+    long[] snapshot = new long[ BUCKET_COUNT ];
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++ ) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if( total == 0 )
+      return 0;
+
+    long target = Math.max( 1, (long) Math.ceil( Math.min( 100.0, Math.max( 0.0, percentile ) ) / 100.0 * total ) );
+    long cumulative = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++ ) {
+      cumulative += snapshot[i];
+      if( cumulative >= target )
+        return Math.min( bucketUpperBound( i ), getMaxMicros() );
+    }
+
+    return getMaxMicros();
+  }
+
+  /**
+   * Clears every recorded value.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < BUCKET_COUNT; i++ )
+      counts.set( i, 0 );
+    totalCount.reset();
+    totalMicros.reset();
+    maxMicros.set( 0 );
+  }
+
+  private static int bucketIndex( long value )
+  {
+    if( value < SUB_BUCKETS )
+      return (int) value;
+
+    // The top SUB_BUCKET_BITS + 1 bits of the value select the bucket
+    int shift = 63 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKETS + (int) ( value >>> shift );
+  }
+
+  private static long bucketUpperBound( int index )
+  {
+    if( index < SUB_BUCKETS )
+      return index;
+
+    int shift = index / SUB_BUCKETS - 1;
+    long subBucket = index - (long) shift * SUB_BUCKETS;
+    return ( ( subBucket + 1 ) << shift ) - 1;
+  }
+}
@@ -16,13 +16,31 @@ package com.google.maps.app;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.api.gax.rpc.FailedPreconditionException;
+import com.google.api.gax.rpc.NotFoundException;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import com.google.protobuf.FieldMask;
 import com.google.protobuf.Timestamp;
 import com.google.type.LatLng;
 
+import google.maps.fleetengine.delivery.v1.CreateTaskRequest;
 import google.maps.fleetengine.delivery.v1.DeliveryServiceClient;
-import google.maps.fleetengine.delivery.v1.DeliveryServiceClient.ListDeliveryVehiclesPagedResponse;
 import google.maps.fleetengine.delivery.v1.DeliveryServiceSettings;
 import google.maps.fleetengine.delivery.v1.DeliveryVehicle;
 import google.maps.fleetengine.delivery.v1.DeliveryVehicleLocation;
@@ -31,9 +49,11 @@ import google.maps.fleetengine.delivery.v1.GetDeliveryVehicleRequest;
 import google.maps.fleetengine.delivery.v1.GetTaskRequest;
 import google.maps.fleetengine.delivery.v1.Task;
 import google.maps.fleetengine.delivery.v1.UpdateDeliveryVehicleRequest;
+import google.maps.fleetengine.delivery.v1.UpdateTaskRequest;
 
 import com.google.fleetengine.auth.AuthTokenMinter;
 import com.google.fleetengine.auth.client.FleetEngineClientSettingsModifier;
+import com.google.fleetengine.auth.client.FleetEngineTokenProvider;
 
 /**
  * Helper class for interacting with the LMFS Fleet Engine.
@@ -41,19 +61,128 @@ import com.google.fleetengine.auth.client.FleetEngineClientSettingsModifier;
 public class LmfsHelper
 {
 
+  // Clients shared per (address, token provider); closed when the JVM exits.
+  private static final Map<List<Object>, DeliveryServiceClient> sharedClients = new ConcurrentHashMap<>();
+
+  // Limits and retries every write to Fleet Engine, shared by all clients and threads.
+  // Created on first use from the bounds configured in App.
+  private static volatile AdaptiveLimiter writeLimiter;
+
+  static
+  {
+    Runtime.getRuntime().addShutdownHook( new Thread( LmfsHelper::closeDeliveryServiceClients ) );
+  }
+
+  /**
+   * Gets the limiter applied to writes to Fleet Engine, creating it on first use
+   * with the FLEET_ENGINE_WRITES_* bounds of App.
+   *
+   * @return The write limiter.
+   */
+  public static AdaptiveLimiter getWriteLimiter()
+  {
+    AdaptiveLimiter limiter = writeLimiter;
+    if( limiter != null )
+      return limiter;
+
+    synchronized( LmfsHelper.class )
+    {
+      if( writeLimiter == null )
+      {
+        writeLimiter = new AdaptiveLimiter( App.FLEET_ENGINE_WRITES_MIN_IN_FLIGHT, App.FLEET_ENGINE_WRITES_MIN_IN_FLIGHT,
+            App.FLEET_ENGINE_WRITES_MAX_IN_FLIGHT, 0.7, 5 );
+        writeLimiter.registerGauges( "fleet_engine_writes" );
+      }
+      return writeLimiter;
+    }
+  }
+
+  /**
+   * Replaces the limiter applied to writes to Fleet Engine and closes the previous one.
+   *
+   * @param limiter The write limiter.
+   */
+  public static void setWriteLimiter( AdaptiveLimiter limiter )
+  {
+    AdaptiveLimiter previous;
+    synchronized( LmfsHelper.class )
+    {
+      previous = writeLimiter;
+      writeLimiter = limiter;
+      limiter.registerGauges( "fleet_engine_writes" );
+    }
+    if( previous != null && previous != limiter )
+      previous.close();
+  }
+
   /**
    * Gets the delivery service client.
+   * Clients are shared: asking twice for the same address and minter returns the
+   * same client, so the gRPC channel and its connection are set up only once.
    *
    * @param address The address of the Fleet Engine.
    * @param minter The auth token minter.
    * @return The delivery service client.
    */
   public static DeliveryServiceClient getDeliveryServiceClient( String address, AuthTokenMinter minter )
+  {
+    return getDeliveryServiceClient( address, (FleetEngineTokenProvider) minter );
+  }
+
+  /**
+   * Gets the delivery service client authenticated by a token provider, such as a PreMintingTokenProvider.
+   * Clients are shared like the ones created from a minter.
+   *
+   * @param address The address of the Fleet Engine.
+   * @param tokenProvider The provider of signed server tokens.
+   * @return The delivery service client.
+   */
+  public static DeliveryServiceClient getDeliveryServiceClient( String address, FleetEngineTokenProvider tokenProvider )
+  {
+    List<Object> key = Arrays.asList( address, tokenProvider );
+    DeliveryServiceClient client = sharedClients.get( key );
+    if( client != null && !client.isShutdown() )
+      return client;
+
+    synchronized( sharedClients )
+    {
+      client = sharedClients.get( key );
+      if( client == null || client.isShutdown() )
+      {
+        client = createDeliveryServiceClient( address, tokenProvider );
+        if( client != null )
+          sharedClients.put( key, client );
+      }
+    }
+
+    return client;
+  }
+
+  /**
+   * Creates a new, unshared delivery service client.
+   *
+   * @param address The address of the Fleet Engine.
+   * @param minter The auth token minter.
+   * @return The delivery service client.
+   */
+  public static DeliveryServiceClient createDeliveryServiceClient( String address, AuthTokenMinter minter )
+  {
+    return createDeliveryServiceClient( address, (FleetEngineTokenProvider) minter );
+  }
+
+  /**
+   * Creates a new, unshared delivery service client authenticated by a token provider.
+   *
+   * @param address The address of the Fleet Engine.
+   * @param tokenProvider The provider of signed server tokens.
+   * @return The delivery service client.
+   */
+  public static DeliveryServiceClient createDeliveryServiceClient( String address, FleetEngineTokenProvider tokenProvider )
   {
     try
     {
       DeliveryServiceSettings settings =
-          new FleetEngineClientSettingsModifier<DeliveryServiceSettings, DeliveryServiceSettings.Builder>(minter)
+          new FleetEngineClientSettingsModifier<DeliveryServiceSettings, DeliveryServiceSettings.Builder>(tokenProvider)
               .updateBuilder(DeliveryServiceSettings.newBuilder())
               .setEndpoint( address )
               .build();
@@ -66,6 +195,56 @@ public class LmfsHelper
     }
   }
 
+  /**
+   * Creates a new, unshared client for a local plaintext endpoint without credentials,
+   * such as a stand-in server.
+   *
+   * @param address The address of the endpoint, in host:port form.
+   * @return The delivery service client.
+   */
+  public static DeliveryServiceClient createLocalDeliveryServiceClient( String address )
+  {
+    try
+    {
+      DeliveryServiceSettings settings =
+          DeliveryServiceSettings.newBuilder()
+              .setEndpoint( address )
+              .setCredentialsProvider( NoCredentialsProvider.create() )
+              .setTransportChannelProvider( DeliveryServiceSettings.defaultGrpcTransportProviderBuilder()
+                  .setChannelConfigurator( builder -> builder.usePlaintext() )
+                  .build() )
+              .build();
+      return DeliveryServiceClient.create(settings);
+    }
+    catch( IOException ex )
+    {
+      System.out.println( "\nERROR! Cannot create DeliveryServiceClient: \n" + ex );
+      return null;
+    }
+  }
+
+  /**
+   * Closes every shared delivery service client.
+   */
+  public static void closeDeliveryServiceClients()
+  {
+    synchronized( sharedClients )
+    {
+      for( DeliveryServiceClient client : sharedClients.values() ) {
+        client.shutdown();
+        try
+        {
+          client.awaitTermination( 5, TimeUnit.SECONDS );
+        }
+        catch( InterruptedException ex )
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+      sharedClients.clear();
+    }
+  }
+
   /**
    * Gets a delivery vehicle by ID.
    *
@@ -83,8 +262,11 @@ public class LmfsHelper
         .setName(String.format( "providers/%s/deliveryVehicles/%s", provider_id, vehicleId) )
         .build();
 
-      vehicle = client.getDeliveryVehicle(getRequest);
-
+      try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.GET_DELIVERY_VEHICLE ) )
+      {
+        vehicle = client.getDeliveryVehicle(getRequest);
+        timer.success();
+      }
     }
     catch( com.google.api.gax.rpc.NotFoundException ex )
     {
@@ -105,8 +287,37 @@ public class LmfsHelper
    */
   public static DeliveryVehicle updateDeliveryVehicleLocation(DeliveryServiceClient client, String provider_id, String vehicleId, LatLng newLocation )
   {
-    long millis = System.currentTimeMillis();
+    return updateDeliveryVehicleLocation( client, provider_id, vehicleId, newLocation, System.currentTimeMillis() );
+  }
+
+  /**
+   * Updates the location of a delivery vehicle, measured at a given time.
+   *
+   * @param client The delivery service client.
+   * @param provider_id The provider ID.
+   * @param vehicleId The vehicle ID.
+   * @param newLocation The new location.
+   * @param millis The time the location was measured, in milliseconds since the epoch.
+   * @return The updated delivery vehicle.
+   */
+  public static DeliveryVehicle updateDeliveryVehicleLocation(DeliveryServiceClient client, String provider_id, String vehicleId, LatLng newLocation, long millis )
+  {
+    return updateDeliveryVehicleLocation( client, provider_id, vehicleId, newLocation, millis, getWriteLimiter() );
+  }
 
+  /**
+   * Updates the location of a delivery vehicle, measured at a given time, under the given limiter.
+   *
+   * @param client The delivery service client.
+   * @param provider_id The provider ID.
+   * @param vehicleId The vehicle ID.
+   * @param newLocation The new location.
+   * @param millis The time the location was measured, in milliseconds since the epoch.
+   * @param limiter The limiter the update runs under.
+   * @return The updated delivery vehicle.
+   */
+  public static DeliveryVehicle updateDeliveryVehicleLocation(DeliveryServiceClient client, String provider_id, String vehicleId, LatLng newLocation, long millis, AdaptiveLimiter limiter )
+  {
     Timestamp timestamp = Timestamp.newBuilder().setSeconds(millis / 1000)
     .setNanos((int) ((millis % 1000) * 1000000)).build();
 
@@ -129,11 +340,138 @@ public class LmfsHelper
       .setUpdateMask(FieldMask.newBuilder().addPaths("last_location"))
       .build();
 
-    DeliveryVehicle updatedVehicle = client.updateDeliveryVehicle(updateRequest);
+    DeliveryVehicle updatedVehicle = limiter.call( () -> {
+      try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.UPDATE_DELIVERY_VEHICLE ) )
+      {
+        DeliveryVehicle vehicle = client.updateDeliveryVehicle(updateRequest);
+        timer.success();
+        return vehicle;
+      }
+    } );
     //System.out.println( "\nUpdatedVehicle location: " + updatedVehicle.getLastLocation().toString() );
     return updatedVehicle;
   }
 
+  /**
+   * Creates tasks concurrently through the async createTask callable.
+   * At most maxInFlight requests of this route are outstanding at any time, and all
+   * routes together are held to the write limiter, which also retries throttled calls.
+   * No new request is sent once one of them has failed for good.
+   * A task that already exists is fetched and returned as if it had been created.
+   *
+   * @param client The delivery service client.
+   * @param requests The task requests, in visit order.
+   * @param maxInFlight The maximum number of concurrent createTask calls.
+   * @return The created tasks, in the same order as the requests.
+   * @throws InterruptedException If interrupted while waiting for a free slot or a result.
+   * @throws ExecutionException If any of the createTask calls failed.
+   */
+  public static List<Task> createTasks( DeliveryServiceClient client, List<CreateTaskRequest> requests, int maxInFlight ) throws InterruptedException, ExecutionException
+  {
+    UnaryCallable<CreateTaskRequest, Task> createTaskCallable = client.createTaskCallable();
+    UnaryCallable<GetTaskRequest, Task> getTaskCallable = client.getTaskCallable();
+    AdaptiveLimiter limiter = getWriteLimiter();
+    Semaphore inFlight = new Semaphore( Math.max( 1, maxInFlight ) );
+    AtomicBoolean failed = new AtomicBoolean( false );
+    List<ApiFuture<Task>> futures = new ArrayList<>( requests.size() );
+
+    for (int i = 0; i < requests.size() && !failed.get(); i++ ) {
+      inFlight.acquire();
+      CreateTaskRequest request = requests.get(i);
+      ApiFuture<Task> future = limiter.callAsync( attempt -> {
+        RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.CREATE_TASK );
+        ApiFuture<Task> created = createTaskCallable.futureCall( request );
+        ApiFutures.addCallback( created, new ApiFutureCallback<Task>() {
+          @Override
+          public void onSuccess( Task task ) {
+            timer.success();
+          }
+
+          @Override
+          public void onFailure( Throwable t ) {
+            timer.failure();
+          }
+        }, MoreExecutors.directExecutor() );
+        // Task IDs are deterministic, so an existing task was created by an earlier attempt or an
+        // interrupted publish of the same plan: fetch it instead of failing
+        return ApiFutures.catchingAsync( created, AlreadyExistsException.class,
+            ex -> getTaskCallable.futureCall( GetTaskRequest.newBuilder()
+                .setName( request.getParent() + "/tasks/" + request.getTaskId() )
+                .build() ),
+            MoreExecutors.directExecutor() );
+      } );
+      ApiFutures.addCallback( future, new ApiFutureCallback<Task>() {
+        @Override
+        public void onSuccess( Task task ) {
+          inFlight.release();
+        }
+
+        @Override
+        public void onFailure( Throwable t ) {
+          failed.set( true );
+          inFlight.release();
+        }
+      }, MoreExecutors.directExecutor() );
+      futures.add( future );
+    }
+
+    // allAsList keeps the input order and fails as soon as any call fails
+    return ApiFutures.allAsList( futures ).get();
+  }
+
+  /**
+   * Closes tasks that no route uses anymore, so they do not stay OPEN in Fleet Engine.
+   * The tasks must already be gone from the journey segments of their vehicle.
+   * Tasks that no longer exist or were already closed, for example by the driver, are skipped.
+   *
+   * @param client The delivery service client.
+   * @param tasks The tasks to close.
+   * @return The number of tasks closed by this call.
+   */
+  public static int closeTasks( DeliveryServiceClient client, List<Task> tasks )
+  {
+    int closed = 0;
+    for( Task task : tasks ) {
+      UpdateTaskRequest updateRequest = UpdateTaskRequest.newBuilder()
+          .setTask( Task.newBuilder().setName( task.getName() ).setState( Task.State.CLOSED ) )
+          .setUpdateMask( FieldMask.newBuilder().addPaths( "state" ) )
+          .build();
+      try
+      {
+        getWriteLimiter().call( () -> {
+          try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.UPDATE_TASK ) )
+          {
+            Task updated = client.updateTask( updateRequest );
+            timer.success();
+            return updated;
+          }
+        } );
+        closed++;
+      }
+      catch( NotFoundException ex )
+      {
+        System.out.println( "Task to close does not exist: " + task.getName() );
+      }
+      catch( FailedPreconditionException ex )
+      {
+        // A closed task cannot be updated; anything else is a real failure
+        if( getTaskState( client, task.getName() ) != Task.State.CLOSED )
+          throw ex;
+      }
+    }
+    return closed;
+  }
+
+  private static Task.State getTaskState( DeliveryServiceClient client, String taskName )
+  {
+    try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.GET_TASK ) )
+    {
+      Task task = client.getTask( GetTaskRequest.newBuilder().setName( taskName ).build() );
+      timer.success();
+      return task.getState();
+    }
+  }
+
   // THIS IS NOT NEEDED, JUST FOR DEBUGGING
   /**
    * Checks the tasks.
@@ -149,7 +487,12 @@ public class LmfsHelper
           .setName( tasks.get(j).getName() )
           .build();
 
-        Task task = client.getTask( getTaskRequest );
+        Task task;
+        try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.GET_TASK ) )
+        {
+          task = client.getTask( getTaskRequest );
+          timer.success();
+        }
         System.out.println("\nTASK found: \n" + task.getName() );
     }
   }
@@ -0,0 +1,416 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.type.LatLng;
+
+import google.maps.fleetengine.delivery.v1.DeliveryServiceClient;
+
+/**
+ * Forwards vehicle location pings to Fleet Engine, sending at most one update per vehicle
+ * per flush interval.
+ *
+ * Each vehicle has one latest-wins slot: a ping replaces the one waiting for the vehicle,
+ * and pings older than the waiting or last sent one are dropped. Every flush hands the
+ * waiting pings to a fixed pool of sender threads, one update per vehicle at a time, so a
+ * burst of pings costs a single write. The freshness lag, from the ping sample time to the
+ * acknowledged update, is recorded in a histogram.
+ *
+ * Updates run under a limiter of their own rather than the shared write limiter: they are
+ * never retried in place, since a failed ping waits for the next flush and is replaced by any
+ * newer one, so sender threads never sleep in a retry backoff. Throttling still shrinks the
+ * number of updates in flight.
+ *
+ * The last sent sample time of a vehicle is kept to drop stale pings, and forgotten once the
+ * vehicle has sent nothing for the vehicle time to live, so vehicles that leave the feed do not
+ * accumulate.
+ *
+ * Usage:
+ *   LocationIngestor ingestor = new LocationIngestor( "depot1", client, providerId, 1000, 8, 600_000 );
+ *   ingestor.offer( vehicleId, location, sampleTimeMillis );  // from the telematics feed
+ *   ingestor.close();  // sends the last pings
+ */
+public class LocationIngestor implements AutoCloseable {
+
+  private static final long CLOSE_TIMEOUT_SECONDS = 10;
+  private static final long CLOSE_POLL_MILLIS = 10;
+  private static final String[] GAUGES = { "pending_vehicles", "tracked_vehicles", "pings_received", "pings_coalesced", "pings_dropped_stale",
+      "updates_sent", "updates_failed", "freshness_p50_seconds", "freshness_p99_seconds", "updates_limit", "updates_throttled" };
+
+  private static final class Ping {
+    final LatLng location;
+    final long sampleTimeMillis;
+
+    Ping( LatLng location, long sampleTimeMillis )
+    {
+      this.location = location;
+      this.sampleTimeMillis = sampleTimeMillis;
+    }
+  }
+
+  private final String name;
+  private final String metricPrefix;
+  private final DeliveryServiceClient client;
+  private final String providerId;
+  private final ConcurrentHashMap<String, Ping> pending = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Long> lastSentSampleMillis = new ConcurrentHashMap<>();
+  private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService senders;
+  private final AdaptiveLimiter limiter;
+  private final long vehicleTtlMillis;
+  private final long pruneIntervalMillis;
+  private volatile long lastPruneMillis = System.currentTimeMillis();
+
+  private final LongAdder received = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder droppedStale = new LongAdder();
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LatencyHistogram freshness = new LatencyHistogram();
+
+  /**
+   * Creates the ingestor and starts flushing.
+   *
+   * @param name The name of the ingestor, used in its gauge names, such as the feed or depot.
+   * @param client The delivery service client.
+   * @param providerId The provider ID.
+   * @param flushIntervalMillis The time between flushes.
+   * @param senderCount The number of threads sending updates.
+   * @param vehicleTtlMillis How long a vehicle without pings is remembered.
+   */
+  public LocationIngestor( String name, DeliveryServiceClient client, String providerId, long flushIntervalMillis, int senderCount, long vehicleTtlMillis )
+  {
+    this.name = name;
+    this.metricPrefix = "fleet_location_" + name.replaceAll( "[^A-Za-z0-9_]", "_" ) + "_";
+    this.client = client;
+    this.providerId = providerId;
+    this.vehicleTtlMillis = vehicleTtlMillis;
+    // Scanning every vehicle each flush would cost more than the memory it frees
+    this.pruneIntervalMillis = Math.max( flushIntervalMillis, vehicleTtlMillis / 10 );
+
+    // A single attempt per update: the next flush is the retry
+    this.limiter = new AdaptiveLimiter( Math.max( 1, senderCount ), 1, Math.max( 1, senderCount ), 0.7, 1 );
+
+    AtomicInteger senderNumber = new AtomicInteger();
+    this.senders = Executors.newFixedThreadPool( Math.max( 1, senderCount ), runnable -> {
+      Thread thread = new Thread( runnable, "location-sender-" + senderNumber.incrementAndGet() );
+      thread.setDaemon( true );
+      return thread;
+    } );
+    this.scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+      Thread thread = new Thread( runnable, "location-flush" );
+      thread.setDaemon( true );
+      return thread;
+    } );
+    scheduler.scheduleWithFixedDelay( this::scheduledFlush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS );
+  }
+
+  /**
+   * Offers a location ping. Never blocks and never calls Fleet Engine.
+   *
+   * @param vehicleId The vehicle ID.
+   * @param location The location.
+   * @param sampleTimeMillis The time the location was measured, in milliseconds since the epoch.
+   * @return False if the ping was dropped because a newer one is waiting or was sent.
+   */
+  public boolean offer( String vehicleId, LatLng location, long sampleTimeMillis )
+  {
+    received.increment();
+    Long lastSent = lastSentSampleMillis.get( vehicleId );
+    if( lastSent != null && sampleTimeMillis <= lastSent )
+    {
+      droppedStale.increment();
+      return false;
+    }
+
+    Ping ping = new Ping( location, sampleTimeMillis );
+    while( true ) {
+      Ping current = pending.putIfAbsent( vehicleId, ping );
+      if( current == null )
+        return true;
+      if( current.sampleTimeMillis > sampleTimeMillis )
+      {
+        droppedStale.increment();
+        return false;
+      }
+      if( pending.replace( vehicleId, current, ping ) )
+      {
+        coalesced.increment();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Hands the waiting pings to the senders. Vehicles whose previous update is still
+   * in flight keep their ping for the next flush.
+   *
+   * @return The number of updates started.
+   */
+  public int flush()
+  {
+    int started = 0;
+    for( String vehicleId : pending.keySet() ) {
+      if( !inFlight.add( vehicleId ) )
+        continue;
+
+      Ping ping = pending.remove( vehicleId );
+      if( ping == null )
+      {
+        inFlight.remove( vehicleId );
+        continue;
+      }
+
+      try
+      {
+        senders.execute( () -> send( vehicleId, ping ) );
+        started++;
+      }
+      catch( RejectedExecutionException ex )
+      {
+        // Closed while flushing
+        pending.putIfAbsent( vehicleId, ping );
+        inFlight.remove( vehicleId );
+      }
+    }
+    return started;
+  }
+
+  /**
+   * Forgets the vehicles whose last sent ping is older than the vehicle time to live.
+   *
+   * @return The number of vehicles forgotten.
+   */
+  public int prune()
+  {
+    long cutoffMillis = System.currentTimeMillis() - vehicleTtlMillis;
+    int before = lastSentSampleMillis.size();
+    // Removes an entry only if it still holds the old value, so a concurrent send is kept
+    lastSentSampleMillis.values().removeIf( sampleMillis -> sampleMillis < cutoffMillis );
+    lastPruneMillis = System.currentTimeMillis();
+    return Math.max( 0, before - lastSentSampleMillis.size() );
+  }
+
+  /**
+   * Gets the number of vehicles whose last sent ping is remembered.
+   *
+   * @return The number of vehicles.
+   */
+  public int getTrackedCount()
+  {
+    return lastSentSampleMillis.size();
+  }
+
+  /**
+   * Gets the number of vehicles with a ping waiting to be sent.
+   *
+   * @return The number of vehicles.
+   */
+  public int getPendingCount()
+  {
+    return pending.size();
+  }
+
+  /**
+   * Gets the number of pings offered.
+   *
+   * @return The count.
+   */
+  public long getReceivedCount()
+  {
+    return received.sum();
+  }
+
+  /**
+   * Gets the number of pings that replaced a waiting ping of the same vehicle.
+   *
+   * @return The count.
+   */
+  public long getCoalescedCount()
+  {
+    return coalesced.sum();
+  }
+
+  /**
+   * Gets the number of pings dropped because a newer one was waiting or already sent.
+   *
+   * @return The count.
+   */
+  public long getDroppedStaleCount()
+  {
+    return droppedStale.sum();
+  }
+
+  /**
+   * Gets the number of updates acknowledged by Fleet Engine.
+   *
+   * @return The count.
+   */
+  public long getSentCount()
+  {
+    return sent.sum();
+  }
+
+  /**
+   * Gets the number of updates that failed. A failed ping is sent again unless a newer one arrived.
+   *
+   * @return The count.
+   */
+  public long getFailedCount()
+  {
+    return failed.sum();
+  }
+
+  /**
+   * Gets the freshness lag, from the sample time of a ping to its acknowledged update.
+   *
+   * @return The histogram, in microseconds.
+   */
+  public LatencyHistogram getFreshness()
+  {
+    return freshness;
+  }
+
+  /**
+   * Gets the name of the ingestor.
+   *
+   * @return The name.
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Exports the counters and the freshness lag as gauges in the RPC metrics, named
+   * fleet_location_{name}_* so that several ingestors can run side by side.
+   */
+  public void registerGauges()
+  {
+    RpcMetrics.registerGauge( metricPrefix + "pending_vehicles", "Vehicles with a location waiting to be sent.", this::getPendingCount );
+    RpcMetrics.registerGauge( metricPrefix + "tracked_vehicles", "Vehicles whose last sent location is remembered.", this::getTrackedCount );
+    RpcMetrics.registerGauge( metricPrefix + "pings_received", "Location pings offered.", this::getReceivedCount );
+    RpcMetrics.registerGauge( metricPrefix + "pings_coalesced", "Location pings that replaced a waiting ping.", this::getCoalescedCount );
+    RpcMetrics.registerGauge( metricPrefix + "pings_dropped_stale", "Location pings older than a waiting or sent one.", this::getDroppedStaleCount );
+    RpcMetrics.registerGauge( metricPrefix + "updates_sent", "Location updates acknowledged by Fleet Engine.", this::getSentCount );
+    RpcMetrics.registerGauge( metricPrefix + "updates_failed", "Location updates that failed.", this::getFailedCount );
+    RpcMetrics.registerGauge( metricPrefix + "freshness_p50_seconds", "Median time from location sample to acknowledged update.",
+        () -> freshness.getValueAtPercentile( 50 ) / 1e6 );
+    RpcMetrics.registerGauge( metricPrefix + "freshness_p99_seconds", "99th percentile time from location sample to acknowledged update.",
+        () -> freshness.getValueAtPercentile( 99 ) / 1e6 );
+    RpcMetrics.registerGauge( metricPrefix + "updates_limit", "Concurrency limit of the location updates.", limiter::getLimit );
+    RpcMetrics.registerGauge( metricPrefix + "updates_throttled", "Location updates throttled or timed out.", () -> limiter.getThrottledCount() );
+  }
+
+  /**
+   * Stops flushing, sends the waiting pings and removes the gauges. A vehicle whose update is
+   * in flight keeps its newer ping, so close waits for the updates in flight and flushes again,
+   * until no ping is waiting or a round sends nothing, for at most CLOSE_TIMEOUT_SECONDS.
+   */
+  @Override
+  public void close()
+  {
+    scheduler.shutdownNow();
+    long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos( CLOSE_TIMEOUT_SECONDS );
+    try
+    {
+      boolean done = false;
+      while( !done && System.nanoTime() < deadlineNanos ) {
+        long sentBefore = sent.sum();
+        flush();
+        while( !inFlight.isEmpty() && System.nanoTime() < deadlineNanos )
+          Thread.sleep( CLOSE_POLL_MILLIS );
+        // A failed send puts its ping back before leaving inFlight, so pending is complete here
+        done = pending.isEmpty() || sent.sum() == sentBefore;
+      }
+    }
+    catch( InterruptedException ex )
+    {
+      Thread.currentThread().interrupt();
+    }
+
+    senders.shutdown();
+    try
+    {
+      if( !senders.awaitTermination( Math.max( 0, deadlineNanos - System.nanoTime() ), TimeUnit.NANOSECONDS ) )
+        System.out.println( "\nWARNING! Location updates still in flight after " + CLOSE_TIMEOUT_SECONDS + " s" );
+    }
+    catch( InterruptedException ex )
+    {
+      Thread.currentThread().interrupt();
+    }
+    if( !pending.isEmpty() )
+      System.out.println( "\nWARNING! " + pending.size() + " vehicle location(s) not sent before closing" );
+
+    limiter.close();
+    for( String gauge : GAUGES )
+      RpcMetrics.unregisterGauge( metricPrefix + gauge );
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "LocationIngestor{name=%s, received=%d, coalesced=%d, droppedStale=%d, sent=%d, failed=%d, pending=%d, freshnessP50Ms=%d, freshnessP99Ms=%d}",
+        name, getReceivedCount(), getCoalescedCount(), getDroppedStaleCount(), getSentCount(), getFailedCount(), getPendingCount(),
+        freshness.getValueAtPercentile( 50 ) / 1000, freshness.getValueAtPercentile( 99 ) / 1000 );
+  }
+
+  private void scheduledFlush()
+  {
+    try
+    {
+      flush();
+      if( System.currentTimeMillis() - lastPruneMillis >= pruneIntervalMillis )
+        prune();
+    }
+    catch( RuntimeException ex )
+    {
+      // An exception would cancel the schedule
+      System.out.println( "\nWARNING! Location flush failed: " + ex );
+    }
+  }
+
+  private void send( String vehicleId, Ping ping )
+  {
+    try
+    {
+      LmfsHelper.updateDeliveryVehicleLocation( client, providerId, vehicleId, ping.location, ping.sampleTimeMillis, limiter );
+      lastSentSampleMillis.merge( vehicleId, ping.sampleTimeMillis, Math::max );
+      sent.increment();
+      freshness.record( ( System.currentTimeMillis() - ping.sampleTimeMillis ) * 1000 );
+    }
+    catch( RuntimeException ex )
+    {
+      failed.increment();
+      // Retry on the next flush, unless a newer ping arrived in the meantime
+      pending.putIfAbsent( vehicleId, ping );
+      System.out.println( "Cannot update location of vehicle '" + vehicleId + "': " + ex );
+    }
+    finally
+    {
+      inFlight.remove( vehicleId );
+    }
+  }
+}
@@ -0,0 +1,614 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.protobuf.Duration;
+import com.google.type.LatLng;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.Shipment.VisitRequest;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentModel.DurationDistanceMatrix;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+/**
+ * Persistent cache of travel durations and distances between locations, used to fill the
+ * duration and distance matrices of requests for territories that were solved before.
+ *
+ * Locations are snapped to a grid of SNAP_CELLS_PER_DEGREE cells per degree (about 11 m),
+ * and the cell is the stable ID of the location. The travel values between two cells are
+ * learned from the transitions of optimization responses and stored in a memory-mapped
+ * open addressing hash table, so the cache is shared by every run without being loaded.
+ *
+ * A request is only filled when the cache knows at least minCoverage of its location pairs.
+ * The remaining pairs are estimated from the great-circle distance.
+ */
+public class MatrixCache implements AutoCloseable {
+
+  public static final int SNAP_CELLS_PER_DEGREE = 10_000;
+  // Tag of the matrix row and column of vehicles without a start or end location.
+  public static final String ANYWHERE_TAG = "loc:anywhere";
+
+  // Estimate of the road distance and speed for the pairs that were never travelled
+  private static final double DETOUR_FACTOR = 1.3;
+  private static final double ESTIMATED_METERS_PER_SECOND = 10.0;
+  // Learned values are averaged over at most this many samples, so they follow changes in the road network
+  private static final int MAX_SAMPLES = 16;
+
+  private static final int MAGIC = 0x4d545843;
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 32;
+  private static final int SLOT_BYTES = 32;
+  private static final int MIN_CAPACITY = 1 << 12;
+  private static final int MAX_CAPACITY = 1 << 25;
+  private static final double MAX_LOAD = 0.7;
+
+  // Slot layout: from ID, to ID, seconds, meters, samples (0 for an empty slot)
+  private static final int FROM_OFFSET = 0;
+  private static final int TO_OFFSET = 8;
+  private static final int SECONDS_OFFSET = 16;
+  private static final int METERS_OFFSET = 20;
+  private static final int SAMPLES_OFFSET = 24;
+
+  private final Path file;
+  private final double minCoverage;
+  private final int maxLocations;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final AtomicLong learnedTransitions = new AtomicLong();
+  private final AtomicLong filledRequests = new AtomicLong();
+  private final AtomicLong uncoveredRequests = new AtomicLong();
+  private final AtomicLong droppedPairs = new AtomicLong();
+
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int capacity;
+  private int size;
+
+  /**
+   * Opens a cache file, creating it if it does not exist.
+   *
+   * @param file The cache file.
+   * @param minCoverage The smallest share of known location pairs for a request to be filled, between 0 and 1.
+   * @param maxLocations The largest number of distinct locations of a filled request.
+   * @throws IOException If the file cannot be opened or is not a matrix cache.
+   */
+  public MatrixCache( Path file, double minCoverage, int maxLocations ) throws IOException
+  {
+    this.file = file;
+    this.minCoverage = minCoverage;
+    this.maxLocations = maxLocations;
+
+    if( file.getParent() != null )
+      Files.createDirectories( file.getParent() );
+    if( Files.exists( file ) && Files.size( file ) > 0 )
+      open();
+    else
+      create( MIN_CAPACITY );
+  }
+
+  /**
+   * Gets the stable ID of a location, the grid cell it snaps to.
+   *
+   * @param location The location.
+   * @return The location ID.
+   */
+  public static long locationId( LatLng location )
+  {
+    long latCell = Math.round( location.getLatitude() * SNAP_CELLS_PER_DEGREE );
+    long lngCell = Math.round( location.getLongitude() * SNAP_CELLS_PER_DEGREE );
+    return ( latCell << 32 ) | ( lngCell & 0xffffffffL );
+  }
+
+  /**
+   * Gets the matrix tag of a location ID.
+   *
+   * @param locationId The location ID.
+   * @return The tag, such as "loc:377749,-1224194".
+   */
+  public static String tag( long locationId )
+  {
+    return "loc:" + (int) ( locationId >> 32 ) + "," + (int) locationId;
+  }
+
+  /**
+   * Records the travel duration and distance from one location to another.
+   * The values are averaged with the ones recorded before.
+   *
+   * @param from The origin.
+   * @param to The destination.
+   * @param seconds The travel duration in seconds.
+   * @param meters The travel distance in meters.
+   */
+  public void put( LatLng from, LatLng to, long seconds, double meters )
+  {
+    lock.writeLock().lock();
+    try
+    {
+      record( locationId( from ), locationId( to ), seconds, meters );
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Learns the travel durations and distances of the transitions of a response.
+   * Responses to requests that already have matrices are ignored, since their
+   * transitions come from those matrices rather than from the road network.
+   *
+   * @param request The optimize tours request, with locations.
+   * @param response The optimize tours response.
+   * @return The number of transitions learned.
+   */
+  public int learn( OptimizeToursRequest request, OptimizeToursResponse response )
+  {
+    ShipmentModel model = request.getModel();
+    if( model.getDurationDistanceMatricesCount() > 0 || request.getUseGeodesicDistances() )
+      return 0;
+
+    int learned = 0;
+    lock.writeLock().lock();
+    try
+    {
+      for( ShipmentRoute route : response.getRoutesList() ) {
+        Vehicle vehicle = model.getVehicles( route.getVehicleIndex() );
+        if( !isDriving( vehicle ) || ( vehicle.hasTravelDurationMultiple() && vehicle.getTravelDurationMultiple() != 1.0 ) )
+          continue;
+
+        LatLng previous = vehicle.hasStartLocation() ? vehicle.getStartLocation() : null;
+        for (int i = 0; i < route.getVisitsCount() && i < route.getTransitionsCount(); i++ ) {
+          ShipmentRoute.Visit visit = route.getVisits(i);
+          Shipment shipment = model.getShipments( visit.getShipmentIndex() );
+          VisitRequest visitRequest = visit.getIsPickup()
+              ? shipment.getPickups( visit.getVisitRequestIndex() )
+              : shipment.getDeliveries( visit.getVisitRequestIndex() );
+
+          LatLng location = visitRequest.hasArrivalLocation() ? visitRequest.getArrivalLocation() : null;
+          if( previous != null && location != null && learnTransition( previous, location, route.getTransitions(i) ) )
+            learned++;
+          previous = visitRequest.hasDepartureLocation() ? visitRequest.getDepartureLocation() : location;
+        }
+
+        int last = route.getVisitsCount();
+        if( previous != null && vehicle.hasEndLocation() && last < route.getTransitionsCount()
+            && learnTransition( previous, vehicle.getEndLocation(), route.getTransitions( last ) ) )
+          learned++;
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+
+    learnedTransitions.addAndGet( learned );
+    return learned;
+  }
+
+  /**
+   * Fills the duration and distance matrices of a request from the cache.
+   * Every visit and vehicle gets the tag of its location, and the locations are cleared,
+   * since the API does not accept both. The request is returned unchanged if it uses
+   * waypoints, geodesic distances, non-driving vehicles or matrices already, has more than
+   * maxLocations locations, or if the cache knows less than minCoverage of its location pairs.
+   *
+   * @param request The optimize tours request.
+   * @return The request with matrices, or the same request.
+   */
+  public OptimizeToursRequest fill( OptimizeToursRequest request )
+  {
+    ShipmentModel model = request.getModel();
+    if( !canFill( request ) )
+      return request;
+
+    // Distinct locations in model order, with the first point seen in each cell for estimates
+    LinkedHashMap<Long, LatLng> locations = new LinkedHashMap<>();
+    for( Shipment shipment : model.getShipmentsList() ) {
+      for( VisitRequest visitRequest : shipment.getPickupsList() )
+        locations.putIfAbsent( locationId( visitRequest.getArrivalLocation() ), visitRequest.getArrivalLocation() );
+      for( VisitRequest visitRequest : shipment.getDeliveriesList() )
+        locations.putIfAbsent( locationId( visitRequest.getArrivalLocation() ), visitRequest.getArrivalLocation() );
+    }
+    boolean anywhere = false;
+    for( Vehicle vehicle : model.getVehiclesList() ) {
+      if( vehicle.hasStartLocation() )
+        locations.putIfAbsent( locationId( vehicle.getStartLocation() ), vehicle.getStartLocation() );
+      if( vehicle.hasEndLocation() )
+        locations.putIfAbsent( locationId( vehicle.getEndLocation() ), vehicle.getEndLocation() );
+      anywhere |= !vehicle.hasStartLocation() || !vehicle.hasEndLocation();
+    }
+
+    int count = locations.size();
+    if( count > maxLocations )
+    {
+      uncoveredRequests.incrementAndGet();
+      return request;
+    }
+
+    long[] ids = new long[ count ];
+    LatLng[] points = new LatLng[ count ];
+    int n = 0;
+    for( Map.Entry<Long, LatLng> entry : locations.entrySet() ) {
+      ids[n] = entry.getKey();
+      points[n] = entry.getValue();
+      n++;
+    }
+
+    // Look up every pair once; -1 marks the pairs to estimate
+    int[] seconds = new int[ count * count ];
+    int[] meters = new int[ count * count ];
+    long known = 0;
+    lock.readLock().lock();
+    try
+    {
+      for (int i = 0; i < count; i++ ) {
+        for (int j = 0; j < count; j++ ) {
+          int slot = i == j ? -1 : find( ids[i], ids[j] );
+          if( slot >= 0 )
+          {
+            seconds[ i * count + j ] = buffer.getInt( slotOffset( slot ) + SECONDS_OFFSET );
+            meters[ i * count + j ] = buffer.getInt( slotOffset( slot ) + METERS_OFFSET );
+            known++;
+          }
+          else
+          {
+            seconds[ i * count + j ] = i == j ? 0 : -1;
+          }
+        }
+      }
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+
+    long pairs = (long) count * ( count - 1 );
+    double coverage = pairs == 0 ? 1.0 : (double) known / pairs;
+    if( coverage < minCoverage )
+    {
+      uncoveredRequests.incrementAndGet();
+      System.out.printf( "Matrix cache knows %.1f%% of %d location pairs, letting the API compute travel costs\n", 100 * coverage, pairs );
+      return request;
+    }
+
+    ShipmentModel.Builder modelBuilder = model.toBuilder();
+    DurationDistanceMatrix.Builder matrix = DurationDistanceMatrix.newBuilder();
+    for (int i = 0; i < count; i++ ) {
+      DurationDistanceMatrix.Row.Builder row = DurationDistanceMatrix.Row.newBuilder();
+      for (int j = 0; j < count; j++ ) {
+        int k = i * count + j;
+        if( seconds[k] < 0 )
+        {
+          double estimatedMeters = DETOUR_FACTOR * GeoUtils.haversineMeters( points[i], points[j] );
+          meters[k] = (int) Math.round( estimatedMeters );
+          seconds[k] = (int) Math.round( estimatedMeters / ESTIMATED_METERS_PER_SECOND );
+        }
+        row.addDurations( Duration.newBuilder().setSeconds( seconds[k] ).build() );
+        row.addMeters( meters[k] );
+      }
+      if( anywhere )
+        row.addDurations( Duration.getDefaultInstance() ).addMeters( 0 );
+      matrix.addRows( row );
+      modelBuilder.addDurationDistanceMatrixSrcTags( tag( ids[i] ) ).addDurationDistanceMatrixDstTags( tag( ids[i] ) );
+    }
+
+    // Starting or ending anywhere costs nothing, like a vehicle without a start or end location
+    if( anywhere )
+    {
+      DurationDistanceMatrix.Row.Builder row = DurationDistanceMatrix.Row.newBuilder();
+      for (int j = 0; j <= count; j++ )
+        row.addDurations( Duration.getDefaultInstance() ).addMeters( 0 );
+      matrix.addRows( row );
+      modelBuilder.addDurationDistanceMatrixSrcTags( ANYWHERE_TAG ).addDurationDistanceMatrixDstTags( ANYWHERE_TAG );
+    }
+    modelBuilder.addDurationDistanceMatrices( matrix );
+
+    for( Shipment.Builder shipment : modelBuilder.getShipmentsBuilderList() ) {
+      for( VisitRequest.Builder visitRequest : shipment.getPickupsBuilderList() )
+        visitRequest.addTags( tag( locationId( visitRequest.getArrivalLocation() ) ) ).clearArrivalLocation();
+      for( VisitRequest.Builder visitRequest : shipment.getDeliveriesBuilderList() )
+        visitRequest.addTags( tag( locationId( visitRequest.getArrivalLocation() ) ) ).clearArrivalLocation();
+    }
+    for( Vehicle.Builder vehicle : modelBuilder.getVehiclesBuilderList() ) {
+      vehicle.addStartTags( vehicle.hasStartLocation() ? tag( locationId( vehicle.getStartLocation() ) ) : ANYWHERE_TAG ).clearStartLocation();
+      vehicle.addEndTags( vehicle.hasEndLocation() ? tag( locationId( vehicle.getEndLocation() ) ) : ANYWHERE_TAG ).clearEndLocation();
+    }
+
+    filledRequests.incrementAndGet();
+    System.out.printf( "Filled travel matrix of %d locations from the matrix cache (%.1f%% of pairs known)\n", count, 100 * coverage );
+    return request.toBuilder().setModel( modelBuilder ).build();
+  }
+
+  /**
+   * Writes the cached values to disk.
+   */
+  public void flush()
+  {
+    lock.writeLock().lock();
+    try
+    {
+      buffer.force();
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Writes the cached values to disk and closes the file.
+   *
+   * @throws IOException If the file cannot be closed.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    lock.writeLock().lock();
+    try
+    {
+      buffer.force();
+      channel.close();
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the number of location pairs in the cache.
+   *
+   * @return The number of pairs.
+   */
+  public int getPairCount()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return size;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "MatrixCache{file=%s, pairs=%d, learnedTransitions=%d, filledRequests=%d, uncoveredRequests=%d, droppedPairs=%d}",
+        file, getPairCount(), learnedTransitions.get(), filledRequests.get(), uncoveredRequests.get(), droppedPairs.get() );
+  }
+
+  private boolean canFill( OptimizeToursRequest request )
+  {
+    ShipmentModel model = request.getModel();
+    if( model.getDurationDistanceMatricesCount() > 0 || request.getUseGeodesicDistances() )
+      return false;
+
+    for( Vehicle vehicle : model.getVehiclesList() ) {
+      if( !isDriving( vehicle ) || vehicle.hasStartWaypoint() || vehicle.hasEndWaypoint() )
+        return false;
+    }
+    for( Shipment shipment : model.getShipmentsList() ) {
+      if( !canFill( shipment.getPickupsList() ) || !canFill( shipment.getDeliveriesList() ) )
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean canFill( List<VisitRequest> visitRequests )
+  {
+    for( VisitRequest visitRequest : visitRequests ) {
+      if( !visitRequest.hasArrivalLocation() || visitRequest.hasDepartureLocation()
+          || visitRequest.hasArrivalWaypoint() || visitRequest.hasDepartureWaypoint() )
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean isDriving( Vehicle vehicle )
+  {
+    return vehicle.getTravelMode() == Vehicle.TravelMode.DRIVING
+        || vehicle.getTravelMode() == Vehicle.TravelMode.TRAVEL_MODE_UNSPECIFIED;
+  }
+
+  private boolean learnTransition( LatLng from, LatLng to, ShipmentRoute.Transition transition )
+  {
+    long fromId = locationId( from );
+    long toId = locationId( to );
+    if( fromId == toId )
+      return false;
+    return record( fromId, toId, transition.getTravelDuration().getSeconds(), transition.getTravelDistanceMeters() );
+  }
+
+  // Called with the write lock held
+  private boolean record( long from, long to, long seconds, double meters )
+  {
+    int slot = find( from, to );
+    if( slot < 0 )
+    {
+      if( size + 1 > capacity * MAX_LOAD && !grow() )
+      {
+        droppedPairs.incrementAndGet();
+        return false;
+      }
+      slot = -( find( from, to ) + 1 );
+      int offset = slotOffset( slot );
+      buffer.putLong( offset + FROM_OFFSET, from );
+      buffer.putLong( offset + TO_OFFSET, to );
+      buffer.putInt( offset + SECONDS_OFFSET, (int) Math.min( seconds, Integer.MAX_VALUE ) );
+      buffer.putInt( offset + METERS_OFFSET, (int) Math.min( Math.round( meters ), Integer.MAX_VALUE ) );
+      buffer.putInt( offset + SAMPLES_OFFSET, 1 );
+      size++;
+      buffer.putInt( 16, size );
+      return true;
+    }
+
+    int offset = slotOffset( slot );
+    int samples = Math.min( buffer.getInt( offset + SAMPLES_OFFSET ) + 1, MAX_SAMPLES );
+    int oldSeconds = buffer.getInt( offset + SECONDS_OFFSET );
+    int oldMeters = buffer.getInt( offset + METERS_OFFSET );
+    buffer.putInt( offset + SECONDS_OFFSET, (int) Math.round( oldSeconds + (double) ( seconds - oldSeconds ) / samples ) );
+    buffer.putInt( offset + METERS_OFFSET, (int) Math.round( oldMeters + ( meters - oldMeters ) / samples ) );
+    buffer.putInt( offset + SAMPLES_OFFSET, samples );
+    return true;
+  }
+
+  /**
+   * Finds the slot of a pair with linear probing.
+   * Returns the slot index if the pair is cached, or -(index + 1) of the empty slot it would go in.
+   */
+  private int find( long from, long to )
+  {
+    return find( buffer, capacity, from, to );
+  }
+
+  private static int find( ByteBuffer buffer, int capacity, long from, long to )
+  {
+    int mask = capacity - 1;
+    int slot = hash( from, to ) & mask;
+    while( true ) {
+      int offset = slotOffset( slot );
+      if( buffer.getInt( offset + SAMPLES_OFFSET ) == 0 )
+        return -( slot + 1 );
+      if( buffer.getLong( offset + FROM_OFFSET ) == from && buffer.getLong( offset + TO_OFFSET ) == to )
+        return slot;
+      slot = ( slot + 1 ) & mask;
+    }
+  }
+
+  private static int hash( long from, long to )
+  {
+    long h = from * 0x9e3779b97f4a7c15L + to;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  private static int slotOffset( int slot )
+  {
+    return HEADER_BYTES + slot * SLOT_BYTES;
+  }
+
+  private void open() throws IOException
+  {
+    channel = FileChannel.open( file, StandardOpenOption.READ, StandardOpenOption.WRITE );
+    if( channel.size() < HEADER_BYTES )
+    {
+      channel.close();
+      throw new IOException( file + " is not a matrix cache" );
+    }
+
+    buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, channel.size() );
+    int storedCapacity = buffer.getInt( 12 );
+    if( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION || buffer.getInt( 8 ) != SNAP_CELLS_PER_DEGREE
+        || Integer.bitCount( storedCapacity ) != 1 || channel.size() != slotOffset( storedCapacity ) )
+    {
+      channel.close();
+      throw new IOException( file + " is not a matrix cache of version " + VERSION );
+    }
+    capacity = storedCapacity;
+    size = buffer.getInt( 16 );
+  }
+
+  private void create( int newCapacity ) throws IOException
+  {
+    channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+    buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, slotOffset( newCapacity ) );
+    writeHeader( buffer, newCapacity, 0 );
+    capacity = newCapacity;
+    size = 0;
+  }
+
+  private static void writeHeader( ByteBuffer buffer, int capacity, int size )
+  {
+    buffer.putInt( 0, MAGIC );
+    buffer.putInt( 4, VERSION );
+    buffer.putInt( 8, SNAP_CELLS_PER_DEGREE );
+    buffer.putInt( 12, capacity );
+    buffer.putInt( 16, size );
+  }
+
+  /**
+   * Doubles the table into a temporary file that then replaces the cache file.
+   * Called with the write lock held; returns false if the table cannot grow.
+   */
+  private boolean grow()
+  {
+    if( capacity >= MAX_CAPACITY )
+      return false;
+
+    int newCapacity = capacity * 2;
+    Path temporary = null;
+    try
+    {
+      temporary = Files.createTempFile( file.toAbsolutePath().getParent(), "matrix", ".tmp" );
+      try( FileChannel newChannel = FileChannel.open( temporary, StandardOpenOption.READ, StandardOpenOption.WRITE ) )
+      {
+        MappedByteBuffer newBuffer = newChannel.map( FileChannel.MapMode.READ_WRITE, 0, slotOffset( newCapacity ) );
+        writeHeader( newBuffer, newCapacity, size );
+        for (int slot = 0; slot < capacity; slot++ ) {
+          int offset = slotOffset( slot );
+          if( buffer.getInt( offset + SAMPLES_OFFSET ) == 0 )
+            continue;
+          int newSlot = -( find( newBuffer, newCapacity, buffer.getLong( offset + FROM_OFFSET ), buffer.getLong( offset + TO_OFFSET ) ) + 1 );
+          for (int b = 0; b < SLOT_BYTES; b++ )
+            newBuffer.put( slotOffset( newSlot ) + b, buffer.get( offset + b ) );
+        }
+        newBuffer.force();
+      }
+
+      channel.close();
+      Files.move( temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      open();
+      return true;
+    }
+    catch( IOException ex )
+    {
+      System.out.println( "\nWARNING! Cannot grow matrix cache " + file + ": " + ex );
+      try
+      {
+        if( temporary != null )
+          Files.deleteIfExists( temporary );
+        if( !channel.isOpen() )
+          open();
+      }
+      catch( IOException reopenEx )
+      {
+        System.out.println( "\nWARNING! Cannot reopen matrix cache " + file + ": " + reopenEx );
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.io.IOException;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+
+/**
+ * Converts text format models to binary models that ModelLoader reads much faster.
+ *
+ * Usage: ModelConverter model.textproto [more.textproto ...]
+ * Each input is written next to itself with a .pb extension.
+ */
+public class ModelConverter {
+
+  /**
+   * Main method.
+   *
+   * @param args The text format model files to convert.
+   */
+  public static void main( String[] args )
+  {
+    int failures = 0;
+    for( String modelPath : args ) {
+      String outputPath = binaryPath( modelPath );
+      try
+      {
+        long start = System.currentTimeMillis();
+        OptimizeToursRequest request = ModelLoader.loadModel( modelPath );
+        ModelLoader.writeBinaryModel( request, outputPath );
+        System.out.printf( "Converted %s -> %s (%d bytes, %d ms)\n",
+            modelPath, outputPath, request.getSerializedSize(), System.currentTimeMillis() - start );
+      }
+      catch( IOException ex )
+      {
+        System.out.println( "\nERROR! Cannot convert " + modelPath + ": \n" + ex );
+        failures++;
+      }
+    }
+
+    if( failures > 0 )
+      System.exit( 1 );
+  }
+
+  private static String binaryPath( String modelPath )
+  {
+    int extension = modelPath.lastIndexOf( '.' );
+    int separator = Math.max( modelPath.lastIndexOf( '/' ), modelPath.lastIndexOf( '\\' ) );
+    if( extension <= separator )
+      return modelPath + ".pb";
+    return modelPath.substring( 0, extension ) + ".pb";
+  }
+}
@@ -0,0 +1,173 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.TextFormat;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+
+/**
+ * Loads OptimizeToursRequest models in text or binary protobuf format.
+ *
+ * The format is chosen from the file extension:
+ *   .pb, .bin, .binpb         binary, read through a memory-mapped file
+ *   .pb.gz, .bin.gz, .binpb.gz gzip-compressed binary
+ *   .textproto.gz, .txt.gz     gzip-compressed text
+ *   anything else              text format
+ */
+public class ModelLoader {
+
+  private static final String GZIP_EXTENSION = ".gz";
+  private static final String[] BINARY_EXTENSIONS = { ".pb", ".bin", ".binpb" };
+
+  /**
+   * Merges a model file into a request builder.
+   * Fields set in the file override the ones already set on the builder.
+   *
+   * @param modelPath The path to the model file.
+   * @param requestBuilder The builder to merge the model into.
+   * @throws IOException If the file cannot be read or parsed.
+   */
+  public static void mergeModel( String modelPath, OptimizeToursRequest.Builder requestBuilder ) throws IOException
+  {
+    Path path = Paths.get( modelPath );
+    String name = path.getFileName().toString();
+    boolean compressed = name.endsWith( GZIP_EXTENSION );
+    if( compressed )
+      name = name.substring( 0, name.length() - GZIP_EXTENSION.length() );
+
+    if( isBinary( name ) )
+    {
+      if( compressed )
+        mergeCompressedBinary( path, requestBuilder );
+      else
+        mergeMappedBinary( path, requestBuilder );
+    }
+    else
+    {
+      mergeText( path, compressed, requestBuilder );
+    }
+  }
+
+  /**
+   * Loads a model file.
+   *
+   * @param modelPath The path to the model file.
+   * @return The request stored in the file.
+   * @throws IOException If the file cannot be read or parsed.
+   */
+  public static OptimizeToursRequest loadModel( String modelPath ) throws IOException
+  {
+    OptimizeToursRequest.Builder requestBuilder = OptimizeToursRequest.newBuilder();
+    mergeModel( modelPath, requestBuilder );
+    return requestBuilder.build();
+  }
+
+  /**
+   * Writes a request in binary format, gzip-compressed if the path ends with .gz.
+   *
+   * @param request The request to write.
+   * @param modelPath The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void writeBinaryModel( OptimizeToursRequest request, String modelPath ) throws IOException
+  {
+    Path path = Paths.get( modelPath );
+    try( OutputStream out = openOutput( path ) )
+    {
+      request.writeTo( out );
+    }
+  }
+
+  /**
+   * Checks whether a file name has one of the model extensions, text or binary, optionally gzip-compressed.
+   *
+   * @param fileName The file name.
+   * @return True for .textproto, .txtpb, .pb, .bin and .binpb files and their .gz variants.
+   */
+  public static boolean isModelFile( String fileName )
+  {
+    String name = fileName.endsWith( GZIP_EXTENSION ) ? fileName.substring( 0, fileName.length() - GZIP_EXTENSION.length() ) : fileName;
+    return isBinary( name ) || name.endsWith( ".textproto" ) || name.endsWith( ".txtpb" );
+  }
+
+  private static OutputStream openOutput( Path path ) throws IOException
+  {
+    OutputStream out = new BufferedOutputStream( Files.newOutputStream( path ) );
+    if( path.getFileName().toString().endsWith( GZIP_EXTENSION ) )
+      return new GZIPOutputStream( out );
+    return out;
+  }
+
+  private static boolean isBinary( String name )
+  {
+    for( String extension : BINARY_EXTENSIONS )
+      if( name.endsWith( extension ) )
+        return true;
+    return false;
+  }
+
+  private static void mergeText( Path path, boolean compressed, OptimizeToursRequest.Builder requestBuilder ) throws IOException
+  {
+    InputStream in = new BufferedInputStream( Files.newInputStream( path ) );
+    if( compressed )
+      in = new GZIPInputStream( in );
+
+    try( BufferedReader reader = new BufferedReader( new InputStreamReader( in, StandardCharsets.UTF_8 ) ) )
+    {
+      TextFormat.getParser().merge( reader, requestBuilder );
+    }
+  }
+
+  private static void mergeMappedBinary( Path path, OptimizeToursRequest.Builder requestBuilder ) throws IOException
+  {
+    try( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) )
+    {
+      // The mapping stays valid after the channel is closed; parsing copies what it needs.
+      MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+      CodedInputStream input = CodedInputStream.newInstance( buffer );
+      input.setSizeLimit( Integer.MAX_VALUE );
+      requestBuilder.mergeFrom( input );
+    }
+  }
+
+  private static void mergeCompressedBinary( Path path, OptimizeToursRequest.Builder requestBuilder ) throws IOException
+  {
+    try( InputStream in = new GZIPInputStream( new BufferedInputStream( Files.newInputStream( path ) ), 64 * 1024 ) )
+    {
+      CodedInputStream input = CodedInputStream.newInstance( in, 64 * 1024 );
+      input.setSizeLimit( Integer.MAX_VALUE );
+      requestBuilder.mergeFrom( input );
+    }
+  }
+}
@@ -0,0 +1,580 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.google.protobuf.Timestamp;
+import com.google.type.LatLng;
+
+import com.google.maps.routeoptimization.v1.InjectedSolutionConstraint;
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.Shipment.VisitRequest;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentModel.PrecedenceRule;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+import com.google.maps.routeoptimization.v1.SkippedShipment;
+import com.google.maps.routeoptimization.v1.TimeWindow;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+/**
+ * Checks a request locally before it is sent for optimization.
+ *
+ * Shipments are checked in parallel for missing visits and locations, inverted, unordered or
+ * out-of-horizon time windows, load demands no vehicle can carry, and visits no vehicle can reach
+ * in time. Reachability uses the haversine distance at MAX_SPEED_METERS_PER_SECOND, which no real
+ * route can beat, so a shipment reported unreachable can never be served. Problems with vehicles
+ * are reported but never pruned, since routes are matched to vehicles by index.
+ *
+ * Usage: ModelValidator model [more models ...]
+ */
+public class ModelValidator {
+
+  // Upper bound on vehicle speed used for the reachability check, about 130 km/h
+  public static double MAX_SPEED_METERS_PER_SECOND = 36.0;
+
+  // Default horizon of a model without global start and end times, see ShipmentModel
+  private static final long DEFAULT_GLOBAL_START_SECONDS = 0;
+  private static final long DEFAULT_GLOBAL_END_SECONDS = 365L * 24 * 3600;
+
+  /**
+   * Kinds of problems.
+   */
+  public enum Kind {
+    NO_VISITS,
+    MISSING_LOCATION,
+    INVALID_TIME_WINDOW,
+    OVER_CAPACITY,
+    UNREACHABLE,
+    INVALID_VEHICLE
+  }
+
+  /**
+   * A problem with one shipment or vehicle.
+   */
+  public static final class Problem {
+    private final Kind kind;
+    private final int index;
+    private final String label;
+    private final String message;
+
+    Problem( Kind kind, int index, String label, String message )
+    {
+      this.kind = kind;
+      this.index = index;
+      this.label = label;
+      this.message = message;
+    }
+
+    /**
+     * Gets the kind of problem.
+     *
+     * @return The kind.
+     */
+    public Kind getKind()
+    {
+      return kind;
+    }
+
+    /**
+     * Gets the index of the shipment, or of the vehicle for INVALID_VEHICLE.
+     *
+     * @return The index in the model.
+     */
+    public int getIndex()
+    {
+      return index;
+    }
+
+    /**
+     * Checks whether the problem is about a shipment, which pruning removes.
+     *
+     * @return True for shipment problems.
+     */
+    public boolean isShipmentProblem()
+    {
+      return kind != Kind.INVALID_VEHICLE;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format( "%s %s #%d%s: %s", kind, isShipmentProblem() ? "shipment" : "vehicle", index,
+          label.isEmpty() ? "" : " '" + label + "'", message );
+    }
+  }
+
+  /**
+   * The problems found in one request.
+   */
+  public static final class Report {
+    private final List<Problem> problems;
+    private final long elapsedMillis;
+
+    Report( List<Problem> problems, long elapsedMillis )
+    {
+      this.problems = Collections.unmodifiableList( problems );
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Gets the problems, shipments first, each in model order.
+     *
+     * @return The problems.
+     */
+    public List<Problem> getProblems()
+    {
+      return problems;
+    }
+
+    /**
+     * Checks whether no problem was found.
+     *
+     * @return True if the request looks feasible.
+     */
+    public boolean isClean()
+    {
+      return problems.isEmpty();
+    }
+
+    /**
+     * Gets the number of problems of each kind.
+     *
+     * @return The counts by kind.
+     */
+    public Map<Kind, Integer> countByKind()
+    {
+      EnumMap<Kind, Integer> counts = new EnumMap<>( Kind.class );
+      for( Problem problem : problems )
+        counts.merge( problem.kind, 1, Integer::sum );
+      return counts;
+    }
+
+    @Override
+    public String toString()
+    {
+      return isClean()
+          ? String.format( "No problems found (%d ms)", elapsedMillis )
+          : String.format( "%d problem(s) found (%d ms): %s", problems.size(), elapsedMillis, countByKind() );
+    }
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args The model files to check.
+   */
+  public static void main( String[] args )
+  {
+    int failures = 0;
+    for( String modelPath : args ) {
+      try
+      {
+        Report report = validate( ModelLoader.loadModel( modelPath ) );
+        System.out.println( modelPath + ": " + report );
+        for( Problem problem : report.getProblems() )
+          System.out.println( "  " + problem );
+        if( !report.isClean() )
+          failures++;
+      }
+      catch( IOException ex )
+      {
+        System.out.println( "\nERROR! Cannot load " + modelPath + ": \n" + ex );
+        failures++;
+      }
+    }
+
+    if( failures > 0 )
+      System.exit( 1 );
+  }
+
+  /**
+   * Checks a request.
+   *
+   * @param request The optimize tours request.
+   * @return The report.
+   */
+  public static Report validate( OptimizeToursRequest request )
+  {
+    long startMillis = System.currentTimeMillis();
+    ShipmentModel model = request.getModel();
+    Horizon horizon = new Horizon( model );
+
+    ArrayList<Problem> problems = new ArrayList<>();
+    List<VehicleBounds> vehicles = new ArrayList<>( model.getVehiclesCount() );
+    for (int v = 0; v < model.getVehiclesCount(); v++ ) {
+      Vehicle vehicle = model.getVehicles(v);
+      vehicles.add( new VehicleBounds( vehicle, horizon ) );
+      checkVehicle( v, vehicle, problems );
+    }
+
+    // With travel matrices, visits can be placed by their tags instead of a location
+    boolean hasMatrices = model.getDurationDistanceMatricesCount() > 0;
+
+    // Shipments are independent of each other; forEachOrdered keeps the report in model order
+    ArrayList<Problem> shipmentProblems = IntStream.range( 0, model.getShipmentsCount() )
+        .parallel()
+        .mapToObj( i -> checkShipment( i, model.getShipments(i), vehicles, horizon, hasMatrices ) )
+        .flatMap( List::stream )
+        .collect( Collectors.toCollection( ArrayList::new ) );
+    shipmentProblems.addAll( problems );
+
+    return new Report( shipmentProblems, System.currentTimeMillis() - startMillis );
+  }
+
+  /**
+   * Removes the shipments with problems from a request. Precedence rules and injected routes
+   * are renumbered, and dropped where they refer to a removed shipment.
+   *
+   * @param request The optimize tours request.
+   * @param report The report of the request.
+   * @return The request without the infeasible shipments, or the same request if none was removed.
+   */
+  public static OptimizeToursRequest prune( OptimizeToursRequest request, Report report )
+  {
+    ShipmentModel model = request.getModel();
+    boolean[] pruned = new boolean[ model.getShipmentsCount() ];
+    int prunedCount = 0;
+    for( Problem problem : report.getProblems() ) {
+      if( problem.isShipmentProblem() && !pruned[ problem.index ] )
+      {
+        pruned[ problem.index ] = true;
+        prunedCount++;
+      }
+    }
+    if( prunedCount == 0 )
+      return request;
+
+    int[] newIndex = new int[ pruned.length ];
+    ShipmentModel.Builder prunedModel = model.toBuilder().clearShipments().clearPrecedenceRules();
+    for (int i = 0, next = 0; i < pruned.length; i++ ) {
+      newIndex[i] = pruned[i] ? -1 : next++;
+      if( !pruned[i] )
+        prunedModel.addShipments( model.getShipments(i) );
+    }
+    for( PrecedenceRule rule : model.getPrecedenceRulesList() )
+      if( !pruned[ rule.getFirstIndex() ] && !pruned[ rule.getSecondIndex() ] )
+        prunedModel.addPrecedenceRules( rule.toBuilder()
+            .setFirstIndex( newIndex[ rule.getFirstIndex() ] )
+            .setSecondIndex( newIndex[ rule.getSecondIndex() ] ) );
+
+    OptimizeToursRequest.Builder builder = request.toBuilder()
+        .setModel( prunedModel )
+        .clearInjectedFirstSolutionRoutes()
+        .clearRefreshDetailsRoutes();
+    for( ShipmentRoute route : request.getInjectedFirstSolutionRoutesList() )
+      builder.addInjectedFirstSolutionRoutes( renumberVisits( route, newIndex ) );
+    for( ShipmentRoute route : request.getRefreshDetailsRoutesList() )
+      builder.addRefreshDetailsRoutes( renumberVisits( route, newIndex ) );
+    if( request.hasInjectedSolutionConstraint() )
+    {
+      InjectedSolutionConstraint constraint = request.getInjectedSolutionConstraint();
+      InjectedSolutionConstraint.Builder prunedConstraint = constraint.toBuilder().clearRoutes().clearSkippedShipments();
+      for( ShipmentRoute route : constraint.getRoutesList() )
+        prunedConstraint.addRoutes( renumberVisits( route, newIndex ) );
+      for( SkippedShipment skipped : constraint.getSkippedShipmentsList() )
+        if( newIndex[ skipped.getIndex() ] >= 0 )
+          prunedConstraint.addSkippedShipments( skipped.toBuilder().setIndex( newIndex[ skipped.getIndex() ] ) );
+      builder.setInjectedSolutionConstraint( prunedConstraint );
+    }
+
+    return builder.build();
+  }
+
+  private static ShipmentRoute renumberVisits( ShipmentRoute route, int[] newIndex )
+  {
+    // Transitions and metrics no longer match once visits are removed, so only the visit order is kept
+    ShipmentRoute.Builder builder = ShipmentRoute.newBuilder()
+        .setVehicleIndex( route.getVehicleIndex() )
+        .setVehicleLabel( route.getVehicleLabel() );
+    for( Visit visit : route.getVisitsList() )
+      if( newIndex[ visit.getShipmentIndex() ] >= 0 )
+        builder.addVisits( visit.toBuilder().setShipmentIndex( newIndex[ visit.getShipmentIndex() ] ) );
+    return builder.build();
+  }
+
+  private static void checkVehicle( int index, Vehicle vehicle, List<Problem> problems )
+  {
+    String startWindows = checkTimeWindows( vehicle.getStartTimeWindowsList(), null );
+    String endWindows = checkTimeWindows( vehicle.getEndTimeWindowsList(), null );
+    if( startWindows != null )
+      problems.add( new Problem( Kind.INVALID_VEHICLE, index, vehicle.getLabel(), "start " + startWindows ) );
+    if( endWindows != null )
+      problems.add( new Problem( Kind.INVALID_VEHICLE, index, vehicle.getLabel(), "end " + endWindows ) );
+  }
+
+  private static List<Problem> checkShipment( int index, Shipment shipment, List<VehicleBounds> vehicles, Horizon horizon, boolean hasMatrices )
+  {
+    List<Problem> problems = new ArrayList<>( 0 );
+    String label = shipment.getLabel();
+    if( shipment.getPickupsCount() == 0 && shipment.getDeliveriesCount() == 0 )
+    {
+      problems.add( new Problem( Kind.NO_VISITS, index, label, "no pickup or delivery visit request" ) );
+      return problems;
+    }
+
+    checkVisitRequests( index, label, "pickup", shipment.getPickupsList(), horizon, hasMatrices, problems );
+    checkVisitRequests( index, label, "delivery", shipment.getDeliveriesList(), horizon, hasMatrices, problems );
+    if( !problems.isEmpty() || vehicles.isEmpty() )
+      return problems;
+    // Travel times of tagged visits come from the matrices, so straight-line bounds do not apply
+    boolean tagged = hasMatrices && ( hasTags( shipment.getPickupsList() ) || hasTags( shipment.getDeliveriesList() ) );
+
+    boolean carried = false;
+    boolean reached = false;
+    if( shipment.getAllowedVehicleIndicesCount() > 0 )
+    {
+      for( int vehicleIndex : shipment.getAllowedVehicleIndicesList() ) {
+        if( vehicleIndex < 0 || vehicleIndex >= vehicles.size() )
+          continue;
+        VehicleBounds vehicle = vehicles.get( vehicleIndex );
+        if( !vehicle.canCarry( shipment ) )
+          continue;
+        carried = true;
+        if( vehicle.canReach( shipment, horizon ) )
+        {
+          reached = true;
+          break;
+        }
+      }
+    }
+    else
+    {
+      for( VehicleBounds vehicle : vehicles ) {
+        if( !vehicle.canCarry( shipment ) )
+          continue;
+        carried = true;
+        if( vehicle.canReach( shipment, horizon ) )
+        {
+          reached = true;
+          break;
+        }
+      }
+    }
+
+    if( !carried )
+      problems.add( new Problem( Kind.OVER_CAPACITY, index, label,
+          "load demands " + loadDemands( shipment ) + " exceed the load limits of every allowed vehicle" ) );
+    else if( !reached && !tagged )
+      problems.add( new Problem( Kind.UNREACHABLE, index, label,
+          String.format( "no allowed vehicle can serve it within the time windows, even at %.0f km/h", MAX_SPEED_METERS_PER_SECOND * 3.6 ) ) );
+
+    return problems;
+  }
+
+  private static void checkVisitRequests( int index, String label, String type, List<VisitRequest> visitRequests, Horizon horizon, boolean hasMatrices, List<Problem> problems )
+  {
+    for (int i = 0; i < visitRequests.size(); i++ ) {
+      VisitRequest visitRequest = visitRequests.get(i);
+      boolean placedByTags = hasMatrices && visitRequest.getTagsCount() > 0;
+      if( !placedByTags && visitLocation( visitRequest ) == null && !visitRequest.hasArrivalWaypoint() )
+        problems.add( new Problem( Kind.MISSING_LOCATION, index, label, type + " " + i + " has no arrival location" ) );
+
+      String timeWindows = checkTimeWindows( visitRequest.getTimeWindowsList(), horizon );
+      if( timeWindows != null )
+        problems.add( new Problem( Kind.INVALID_TIME_WINDOW, index, label, type + " " + i + " " + timeWindows ) );
+    }
+  }
+
+  /**
+   * Checks that time windows are well formed, sorted, and, if a horizon is given, inside it.
+   *
+   * @return A description of the first problem, or null if there is none.
+   */
+  private static String checkTimeWindows( List<TimeWindow> timeWindows, Horizon horizon )
+  {
+    double previousEnd = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < timeWindows.size(); i++ ) {
+      TimeWindow window = timeWindows.get(i);
+      double start = window.hasStartTime() ? seconds( window.getStartTime() ) : Double.NEGATIVE_INFINITY;
+      double end = window.hasEndTime() ? seconds( window.getEndTime() ) : Double.POSITIVE_INFINITY;
+      if( start > end )
+        return "time window " + i + " ends before it starts";
+      if( start < previousEnd )
+        return "time window " + i + " overlaps or precedes the previous one";
+      if( horizon != null && ( end < horizon.start || start > horizon.end ) )
+        return "time window " + i + " is outside the model's global start and end times";
+      previousEnd = end;
+    }
+    return null;
+  }
+
+  private static boolean hasTags( List<VisitRequest> visitRequests )
+  {
+    for( VisitRequest visitRequest : visitRequests )
+      if( visitRequest.getTagsCount() > 0 )
+        return true;
+    return false;
+  }
+
+  private static String loadDemands( Shipment shipment )
+  {
+    Map<String, Long> demands = new HashMap<>();
+    shipment.getLoadDemandsMap().forEach( ( type, load ) -> demands.put( type, load.getAmount() ) );
+    return demands.toString();
+  }
+
+  private static LatLng visitLocation( VisitRequest visitRequest )
+  {
+    if( visitRequest.hasArrivalLocation() )
+      return visitRequest.getArrivalLocation();
+    if( visitRequest.hasArrivalWaypoint() && visitRequest.getArrivalWaypoint().hasLocation() )
+      return visitRequest.getArrivalWaypoint().getLocation().getLatLng();
+    return null;
+  }
+
+  private static double seconds( Timestamp timestamp )
+  {
+    return timestamp.getSeconds() + timestamp.getNanos() / 1e9;
+  }
+
+  private static double durationSeconds( VisitRequest visitRequest )
+  {
+    return visitRequest.getDuration().getSeconds() + visitRequest.getDuration().getNanos() / 1e9;
+  }
+
+  /**
+   * The global start and end times of a model, in seconds.
+   */
+  private static final class Horizon {
+    final double start;
+    final double end;
+
+    Horizon( ShipmentModel model )
+    {
+      start = model.hasGlobalStartTime() ? seconds( model.getGlobalStartTime() ) : DEFAULT_GLOBAL_START_SECONDS;
+      end = model.hasGlobalEndTime() ? seconds( model.getGlobalEndTime() ) : DEFAULT_GLOBAL_END_SECONDS;
+    }
+
+    /**
+     * Gets the earliest time at or after t that falls in one of the windows.
+     *
+     * @return The time in seconds, or NaN if every window closes before t.
+     */
+    double earliestIn( List<TimeWindow> timeWindows, double t )
+    {
+      if( timeWindows.isEmpty() )
+        return t <= end ? Math.max( t, start ) : Double.NaN;
+
+      for( TimeWindow window : timeWindows ) {
+        double windowStart = window.hasStartTime() ? seconds( window.getStartTime() ) : start;
+        double windowEnd = window.hasEndTime() ? seconds( window.getEndTime() ) : end;
+        if( t <= windowEnd )
+          return Math.max( t, windowStart );
+      }
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * The locations, times and load limits of a vehicle, read once and shared by every shipment check.
+   */
+  private static final class VehicleBounds {
+    final LatLng startLocation;
+    final LatLng endLocation;
+    final double earliestStart;
+    final double latestEnd;
+    final double travelMultiple;
+    final Map<String, Long> maxLoads = new HashMap<>();
+
+    VehicleBounds( Vehicle vehicle, Horizon horizon )
+    {
+      startLocation = vehicle.hasStartLocation() ? vehicle.getStartLocation() : null;
+      endLocation = vehicle.hasEndLocation() ? vehicle.getEndLocation() : null;
+      travelMultiple = vehicle.hasTravelDurationMultiple() ? vehicle.getTravelDurationMultiple() : 1.0;
+
+      double start = Double.POSITIVE_INFINITY;
+      for( TimeWindow window : vehicle.getStartTimeWindowsList() )
+        start = Math.min( start, window.hasStartTime() ? seconds( window.getStartTime() ) : horizon.start );
+      earliestStart = Math.max( horizon.start, vehicle.getStartTimeWindowsCount() == 0 ? horizon.start : start );
+
+      double end = Double.NEGATIVE_INFINITY;
+      for( TimeWindow window : vehicle.getEndTimeWindowsList() )
+        end = Math.max( end, window.hasEndTime() ? seconds( window.getEndTime() ) : horizon.end );
+      latestEnd = Math.min( horizon.end, vehicle.getEndTimeWindowsCount() == 0 ? horizon.end : end );
+
+      vehicle.getLoadLimitsMap().forEach( ( type, limit ) -> {
+        if( limit.hasMaxLoad() )
+          maxLoads.put( type, limit.getMaxLoad() );
+      } );
+    }
+
+    boolean canCarry( Shipment shipment )
+    {
+      for( Map.Entry<String, Shipment.Load> demand : shipment.getLoadDemandsMap().entrySet() ) {
+        Long maxLoad = maxLoads.get( demand.getKey() );
+        if( maxLoad != null && demand.getValue().getAmount() > maxLoad )
+          return false;
+      }
+      return true;
+    }
+
+    /**
+     * Checks whether some pickup and delivery alternative fits between the vehicle start and end,
+     * travelling in straight lines at the maximum speed.
+     */
+    boolean canReach( Shipment shipment, Horizon horizon )
+    {
+      List<VisitRequest> pickups = shipment.getPickupsList();
+      if( pickups.isEmpty() )
+        return canDeliver( shipment, horizon, startLocation, earliestStart );
+
+      for( VisitRequest pickup : pickups ) {
+        LatLng pickupLocation = visitLocation( pickup );
+        double pickupStart = horizon.earliestIn( pickup.getTimeWindowsList(), earliestStart + travelSeconds( startLocation, pickupLocation ) );
+        if( Double.isNaN( pickupStart ) )
+          continue;
+        if( canDeliver( shipment, horizon, pickupLocation, pickupStart + durationSeconds( pickup ) ) )
+          return true;
+      }
+      return false;
+    }
+
+    private boolean canDeliver( Shipment shipment, Horizon horizon, LatLng from, double readyTime )
+    {
+      List<VisitRequest> deliveries = shipment.getDeliveriesList();
+      if( deliveries.isEmpty() )
+        return readyTime + travelSeconds( from, endLocation ) <= latestEnd;
+
+      for( VisitRequest delivery : deliveries ) {
+        LatLng deliveryLocation = visitLocation( delivery );
+        double deliveryStart = horizon.earliestIn( delivery.getTimeWindowsList(), readyTime + travelSeconds( from, deliveryLocation ) );
+        if( Double.isNaN( deliveryStart ) )
+          continue;
+        if( deliveryStart + durationSeconds( delivery ) + travelSeconds( deliveryLocation, endLocation ) <= latestEnd )
+          return true;
+      }
+      return false;
+    }
+
+    private double travelSeconds( LatLng from, LatLng to )
+    {
+      // A vehicle without a start or end location starts or ends at its first or last visit
+      if( from == null || to == null )
+        return 0;
+      return GeoUtils.haversineMeters( from, to ) / MAX_SPEED_METERS_PER_SECOND * travelMultiple;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import google.maps.fleetengine.delivery.v1.Task;
+
+/**
+ * Per-vehicle differences between the published plan and a new plan.
+ *
+ * Vehicles are sorted into four groups: unchanged vehicles need no Fleet Engine call,
+ * changed vehicles get new journey segments that reuse their unchanged tasks and close the
+ * others, new vehicles are published from scratch and removed vehicles have their journey
+ * segments cleared and their tasks closed.
+ */
+public class PlanDiff {
+
+  private final List<String> unchangedVehicles = new ArrayList<>();
+  private final List<String> changedVehicles = new ArrayList<>();
+  private final List<String> newVehicles = new ArrayList<>();
+  private final List<String> removedVehicles = new ArrayList<>();
+
+  private PlanDiff()
+  {
+  }
+
+  /**
+   * Compares the published plan with the stops of a new plan.
+   *
+   * @param published The plan currently published to Fleet Engine.
+   * @param newStopFingerprints The stop fingerprints of every vehicle with visits in the new plan.
+   * @return The differences between the two plans.
+   */
+  public static PlanDiff compute( PublishedPlan published, Map<String, List<String>> newStopFingerprints )
+  {
+    PlanDiff diff = new PlanDiff();
+    for( Map.Entry<String, List<String>> entry : newStopFingerprints.entrySet() ) {
+      PublishedRoute previous = published.get( entry.getKey() );
+      if( previous == null )
+        diff.newVehicles.add( entry.getKey() );
+      else if( previous.getStopFingerprints().equals( entry.getValue() ) )
+        diff.unchangedVehicles.add( entry.getKey() );
+      else
+        diff.changedVehicles.add( entry.getKey() );
+    }
+
+    for( String vehicleLabel : published.getVehicleLabels() )
+      if( !newStopFingerprints.containsKey( vehicleLabel ) )
+        diff.removedVehicles.add( vehicleLabel );
+
+    return diff;
+  }
+
+  /**
+   * Matches the stops of a new route with the tasks already published for the vehicle.
+   * Every published task is reused at most once.
+   *
+   * @param previous The published route of the vehicle, or null.
+   * @param stopFingerprints The stop fingerprints of the new route.
+   * @return One entry per stop: the task to reuse, or null if a task must be created.
+   */
+  public static List<Task> matchTasks( PublishedRoute previous, List<String> stopFingerprints )
+  {
+    Map<String, Deque<Task>> available = new HashMap<>();
+    if( previous != null )
+    {
+      for (int i = 0; i < previous.getTasks().size(); i++ )
+        available.computeIfAbsent( previous.getStopFingerprints().get(i), key -> new ArrayDeque<>() )
+            .add( previous.getTasks().get(i) );
+    }
+
+    List<Task> matched = new ArrayList<>( stopFingerprints.size() );
+    for( String fingerprint : stopFingerprints ) {
+      Deque<Task> candidates = available.get( fingerprint );
+      matched.add( candidates == null ? null : candidates.poll() );
+    }
+
+    return matched;
+  }
+
+  /**
+   * Finds the published tasks of a vehicle that a new route no longer uses.
+   * These belong to stops that were removed or replaced, and must be closed.
+   *
+   * @param previous The published route of the vehicle, or null.
+   * @param tasks The tasks of the new route.
+   * @return The published tasks that are not part of the new route, in stop order.
+   */
+  public static List<Task> unmatchedTasks( PublishedRoute previous, List<Task> tasks )
+  {
+    List<Task> unmatched = new ArrayList<>();
+    if( previous == null )
+      return unmatched;
+
+    Set<String> used = new HashSet<>();
+    for( Task task : tasks )
+      used.add( task.getName() );
+    for( Task task : previous.getTasks() )
+      if( !used.contains( task.getName() ) )
+        unmatched.add( task );
+
+    return unmatched;
+  }
+
+  /**
+   * Gets the vehicles whose stops did not change.
+   *
+   * @return The vehicle labels.
+   */
+  public List<String> getUnchangedVehicles()
+  {
+    return Collections.unmodifiableList( unchangedVehicles );
+  }
+
+  /**
+   * Gets the vehicles whose stops changed.
+   *
+   * @return The vehicle labels.
+   */
+  public List<String> getChangedVehicles()
+  {
+    return Collections.unmodifiableList( changedVehicles );
+  }
+
+  /**
+   * Gets the vehicles that had no published route.
+   *
+   * @return The vehicle labels.
+   */
+  public List<String> getNewVehicles()
+  {
+    return Collections.unmodifiableList( newVehicles );
+  }
+
+  /**
+   * Gets the vehicles that no longer have visits.
+   *
+   * @return The vehicle labels.
+   */
+  public List<String> getRemovedVehicles()
+  {
+    return Collections.unmodifiableList( removedVehicles );
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "%d unchanged, %d changed, %d new, %d removed vehicle routes",
+        unchangedVehicles.size(), changedVehicles.size(), newVehicles.size(), removedVehicles.size() );
+  }
+}
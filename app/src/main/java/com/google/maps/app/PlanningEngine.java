@@ -0,0 +1,178 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import google.maps.fleetengine.delivery.v1.DeliveryServiceClient;
+
+/**
+ * Shared resources of the planning sessions of a provider: the Fleet Engine client, the
+ * vehicle registry, the optional publish journal and the thread pools.
+ *
+ * Every session carries its own request, plan and published routes, so any number of
+ * sessions can plan and publish at the same time. Sessions run on a shared pool of
+ * sessionWorkers threads, and their per-vehicle publishing jobs share a pool of
+ * publishWorkers threads, which bounds the load on Fleet Engine however many sessions run.
+ *
+ * Usage:
+ *   PlanningEngine engine = new PlanningEngine( providerId, client, null, 8, 8, 300_000 );
+ *   PlanningSession session = engine.newSession( "depot-1" );
+ *   Future<List<String>> failed = engine.submit( () -> {
+ *     session.planModel( "depot-1.textproto" );
+ *     return session.publish();
+ *   } );
+ */
+public class PlanningEngine implements AutoCloseable {
+
+  private final String providerId;
+  private final DeliveryServiceClient client;
+  private final PublishJournal journal;
+  private final VehicleRegistry vehicleRegistry;
+  private final int publishWorkers;
+  private final ExecutorService sessionExecutor;
+  private final ExecutorService publishExecutor;
+  private final AtomicInteger sessionCount = new AtomicInteger();
+
+  /**
+   * Creates an engine.
+   *
+   * @param providerId The provider ID.
+   * @param client The delivery service client.
+   * @param journal The publish journal, or null to publish without one.
+   * @param sessionWorkers The number of session jobs run at the same time.
+   * @param publishWorkers The number of vehicle routes published at the same time, across all sessions.
+   * @param vehicleRegistryTtlMillis How long the list of existing delivery vehicles is trusted.
+   */
+  public PlanningEngine( String providerId, DeliveryServiceClient client, PublishJournal journal,
+      int sessionWorkers, int publishWorkers, long vehicleRegistryTtlMillis )
+  {
+    this.providerId = providerId;
+    this.client = client;
+    this.journal = journal;
+    this.vehicleRegistry = new VehicleRegistry( client, providerId, vehicleRegistryTtlMillis );
+    this.publishWorkers = Math.max( 1, publishWorkers );
+    this.sessionExecutor = newDaemonPool( Math.max( 1, sessionWorkers ), "planning-session-" );
+    this.publishExecutor = newDaemonPool( this.publishWorkers, "route-publisher-" );
+  }
+
+  /**
+   * Creates a session without a plan.
+   *
+   * @param name The name of the session, used in log lines.
+   * @return The session.
+   */
+  public PlanningSession newSession( String name )
+  {
+    sessionCount.incrementAndGet();
+    return new PlanningSession( this, name );
+  }
+
+  /**
+   * Runs a job, typically a sequence of session calls, on the shared session pool.
+   *
+   * @param job The job.
+   * @param <T> The type of the job result.
+   * @return The future result of the job.
+   */
+  public <T> Future<T> submit( Callable<T> job )
+  {
+    return sessionExecutor.submit( job );
+  }
+
+  /**
+   * Gets the provider ID.
+   *
+   * @return The provider ID.
+   */
+  public String getProviderId()
+  {
+    return providerId;
+  }
+
+  /**
+   * Gets the delivery service client.
+   *
+   * @return The client.
+   */
+  public DeliveryServiceClient getClient()
+  {
+    return client;
+  }
+
+  /**
+   * Gets the publish journal.
+   *
+   * @return The journal, or null if publishing is not journaled.
+   */
+  public PublishJournal getJournal()
+  {
+    return journal;
+  }
+
+  /**
+   * Gets the registry of the delivery vehicles that exist in Fleet Engine.
+   *
+   * @return The vehicle registry.
+   */
+  public VehicleRegistry getVehicleRegistry()
+  {
+    return vehicleRegistry;
+  }
+
+  /**
+   * Gets the number of vehicle routes published at the same time.
+   *
+   * @return The number of publish workers.
+   */
+  public int getPublishWorkers()
+  {
+    return publishWorkers;
+  }
+
+  /**
+   * Stops accepting jobs. Jobs already submitted run to completion.
+   */
+  @Override
+  public void close()
+  {
+    sessionExecutor.shutdown();
+    publishExecutor.shutdown();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "PlanningEngine{provider=%s, sessions=%d, publishWorkers=%d}", providerId, sessionCount.get(), publishWorkers );
+  }
+
+  ExecutorService getPublishExecutor()
+  {
+    return publishExecutor;
+  }
+
+  private static ExecutorService newDaemonPool( int threads, String namePrefix )
+  {
+    AtomicInteger threadNumber = new AtomicInteger();
+    return Executors.newFixedThreadPool( threads, runnable -> {
+      Thread thread = new Thread( runnable, namePrefix + threadNumber.incrementAndGet() );
+      thread.setDaemon( true );
+      return thread;
+    } );
+  }
+}
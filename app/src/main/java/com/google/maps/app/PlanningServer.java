@@ -0,0 +1,388 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.protobuf.Duration;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.TextFormat;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
+import com.google.maps.routeoptimization.v1.Shipment;
+
+/**
+ * Long-running planning server with a local HTTP API.
+ *
+ * Usage: PlanningServer [--port N] [--http-workers N] [--session-workers N]
+ *
+ * The clients, token minters, caches and the vehicle registry are created once at startup
+ * and stay warm between requests, so a small re-plan costs its RPCs only, not a JVM start.
+ * Requests are received by N HTTP threads and run on the sessions of App.getEngine(), at
+ * most App.PLANNING_SESSION_WORKERS at a time. The server listens on the loopback address only.
+ *
+ * Endpoints, with protobuf messages in text format, or binary with Content-Type application/x-protobuf:
+ *   POST   /sessions/{name}/plan[?model=path]   Plans the OptimizeToursRequest in the body, or the model file.
+ *   POST   /sessions/{name}/reoptimize          Re-optimizes the current plan from its routes.
+ *   POST   /sessions/{name}/shipments           Adds the Shipment in the body and plans again.
+ *   POST   /sessions/{name}/publish[?sync=true] Publishes the plan to Fleet Engine, or only what changed.
+ *   GET    /sessions/{name}                     Describes the session.
+ *   DELETE /sessions/{name}                     Forgets the session.
+ *   GET    /health                              Answers "ok" once the clients are ready.
+ *   GET    /metrics                             RPC metrics in the Prometheus text format.
+ * Plan calls answer with the OptimizeToursResponse in text format; publish answers with the
+ * labels of the vehicles that failed, one per line, and status 500 if there are any.
+ */
+public class PlanningServer {
+
+  public static int DEFAULT_PORT = 8080;
+  public static int DEFAULT_HTTP_WORKERS = 16;
+
+  private static final String PROTOBUF_CONTENT_TYPE = "application/x-protobuf";
+  private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+  private final PlanningEngine engine;
+  private final Map<String, PlanningSession> sessions = new ConcurrentHashMap<>();
+  private final ExecutorService httpExecutor;
+  private final HttpServer server;
+
+  /**
+   * Creates a server for the sessions of an engine. Call start() to accept requests.
+   *
+   * @param engine The planning engine.
+   * @param port The port to listen on, on the loopback address.
+   * @param httpWorkers The number of threads receiving requests.
+   * @throws IOException If the port cannot be bound.
+   */
+  public PlanningServer( PlanningEngine engine, int port, int httpWorkers ) throws IOException
+  {
+    this.engine = engine;
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.httpExecutor = Executors.newFixedThreadPool( Math.max( 1, httpWorkers ), runnable -> {
+      Thread thread = new Thread( runnable, "planning-http-" + threadNumber.incrementAndGet() );
+      thread.setDaemon( true );
+      return thread;
+    } );
+    this.server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+    server.setExecutor( httpExecutor );
+    server.createContext( "/health", exchange -> {
+      try
+      {
+        send( exchange, 200, "ok " + engine + " activeSessions=" + sessions.size() + "\n" );
+      }
+      finally
+      {
+        exchange.close();
+      }
+    } );
+    server.createContext( "/metrics", exchange -> {
+      try
+      {
+        byte[] body = RpcMetrics.toPrometheusText().getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().set( "Content-Type", "text/plain; version=0.0.4; charset=utf-8" );
+        exchange.sendResponseHeaders( 200, body.length );
+        try( OutputStream out = exchange.getResponseBody() )
+        {
+          out.write( body );
+        }
+      }
+      finally
+      {
+        exchange.close();
+      }
+    } );
+    server.createContext( "/sessions/", this::handleSession );
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args Command line arguments.
+   */
+  public static void main( String[] args )
+  {
+    int port = DEFAULT_PORT;
+    int httpWorkers = DEFAULT_HTTP_WORKERS;
+    for (int i = 0; i < args.length; i++ ) {
+      if( args[i].equals( "--port" ) && i + 1 < args.length )
+        port = Integer.parseInt( args[++i] );
+      else if( args[i].equals( "--http-workers" ) && i + 1 < args.length )
+        httpWorkers = Integer.parseInt( args[++i] );
+      else if( args[i].equals( "--session-workers" ) && i + 1 < args.length )
+        App.PLANNING_SESSION_WORKERS = Integer.parseInt( args[++i] );
+      else
+        System.out.println( "Ignoring unknown argument: " + args[i] );
+    }
+
+    long startMillis = System.currentTimeMillis();
+    App.initializeClients();
+    PlanningEngine engine = App.getEngine();
+    try
+    {
+      // Load the existing vehicles now rather than in the first publish
+      engine.getVehicleRegistry().refresh();
+    }
+    catch( RuntimeException ex )
+    {
+      System.out.println( "\nWARNING! Cannot list delivery vehicles, they are looked up on first publish: " + ex );
+    }
+
+    PlanningServer server;
+    try
+    {
+      server = new PlanningServer( engine, port, httpWorkers );
+    }
+    catch( IOException ex )
+    {
+      System.out.println( "\nERROR! Cannot start planning server on port " + port + ": \n" + ex );
+      System.exit( 1 );
+      return;
+    }
+
+    Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+      server.stop();
+      App.reportMetrics();
+    }, "planning-server-shutdown" ) );
+    server.start();
+    System.out.printf( "Planning server ready on http://localhost:%d/ in %d ms\n", port, System.currentTimeMillis() - startMillis );
+  }
+
+  /**
+   * Starts accepting requests.
+   */
+  public void start()
+  {
+    server.start();
+  }
+
+  /**
+   * Stops accepting requests, waits up to a second for the running ones and closes the engine.
+   */
+  public void stop()
+  {
+    server.stop( 1 );
+    engine.close();
+    httpExecutor.shutdown();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "PlanningServer{address=%s, sessions=%d}", server.getAddress(), sessions.size() );
+  }
+
+  private void handleSession( HttpExchange exchange ) throws IOException
+  {
+    try
+    {
+      String[] path = exchange.getRequestURI().getPath().substring( "/sessions/".length() ).split( "/" );
+      String name = path[0];
+      String action = path.length > 1 ? path[1] : "";
+      String method = exchange.getRequestMethod();
+      if( name.isEmpty() || path.length > 2 )
+      {
+        send( exchange, 404, "Unknown path\n" );
+        return;
+      }
+
+      if( action.isEmpty() && method.equals( "GET" ) )
+      {
+        PlanningSession session = sessions.get( name );
+        if( session == null )
+          send( exchange, 404, "Unknown session " + name + "\n" );
+        else
+          send( exchange, 200, session + "\n" );
+      }
+      else if( action.isEmpty() && method.equals( "DELETE" ) )
+      {
+        send( exchange, sessions.remove( name ) != null ? 200 : 404, name + "\n" );
+      }
+      else if( method.equals( "POST" ) )
+      {
+        handleAction( exchange, name, action );
+      }
+      else
+      {
+        send( exchange, 405, "Method " + method + " not allowed\n" );
+      }
+    }
+    finally
+    {
+      exchange.close();
+    }
+  }
+
+  private void handleAction( HttpExchange exchange, String name, String action ) throws IOException
+  {
+    Map<String, String> query = parseQuery( exchange.getRequestURI().getRawQuery() );
+    byte[] body = exchange.getRequestBody().readAllBytes();
+    boolean binary = PROTOBUF_CONTENT_TYPE.equals( exchange.getRequestHeaders().getFirst( "Content-Type" ) );
+
+    PlanningSession session;
+    if( action.equals( "plan" ) )
+      session = sessions.computeIfAbsent( name, engine::newSession );
+    else
+      session = sessions.get( name );
+    if( session == null )
+    {
+      send( exchange, 404, "Unknown session " + name + ", plan a model first\n" );
+      return;
+    }
+
+    try
+    {
+      switch( action )
+      {
+        case "plan":
+        {
+          OptimizeToursRequest request = body.length > 0 ? parseRequest( body, binary ) : null;
+          String modelPath = query.get( "model" );
+          if( request == null && modelPath == null )
+          {
+            send( exchange, 400, "Send an OptimizeToursRequest or set ?model=path\n" );
+            return;
+          }
+          sendResponse( exchange, run( RpcMetrics.SERVER_PLAN, () ->
+              request != null ? session.plan( request ) : session.planModel( modelPath ) ) );
+          break;
+        }
+        case "reoptimize":
+          sendResponse( exchange, run( RpcMetrics.SERVER_REOPTIMIZE, session::reoptimize ) );
+          break;
+        case "shipments":
+        {
+          Shipment.Builder shipment = Shipment.newBuilder();
+          if( binary )
+            shipment.mergeFrom( body );
+          else
+            TextFormat.merge( new String( body, StandardCharsets.UTF_8 ), shipment );
+          sendResponse( exchange, run( RpcMetrics.SERVER_INSERT_SHIPMENT, () -> session.insertShipment( shipment.build() ) ) );
+          break;
+        }
+        case "publish":
+        {
+          boolean sync = Boolean.parseBoolean( query.get( "sync" ) );
+          List<String> failedVehicles = run( RpcMetrics.SERVER_PUBLISH, () -> sync ? session.sync() : session.publish() );
+          StringBuilder text = new StringBuilder();
+          for( String label : failedVehicles )
+            text.append( label ).append( '\n' );
+          send( exchange, failedVehicles.isEmpty() ? 200 : 500, text.toString() );
+          break;
+        }
+        default:
+          send( exchange, 404, "Unknown action " + action + "\n" );
+      }
+    }
+    catch( TextFormat.ParseException | InvalidProtocolBufferException ex )
+    {
+      send( exchange, 400, "Cannot parse request body: " + ex.getMessage() + "\n" );
+    }
+    catch( IllegalStateException ex )
+    {
+      send( exchange, 409, ex.getMessage() + "\n" );
+    }
+    catch( InterruptedException ex )
+    {
+      Thread.currentThread().interrupt();
+      send( exchange, 503, "Interrupted\n" );
+    }
+    catch( Exception ex )
+    {
+      System.out.println( "\nEXCEPTION in " + action + " of session " + name + ":" );
+      System.out.println( ex );
+      send( exchange, 500, ex + "\n" );
+    }
+  }
+
+  /**
+   * Runs a session call on the session pool of the engine, timed under the given name.
+   */
+  private <T> T run( String rpc, Callable<T> call ) throws Exception
+  {
+    try( RpcMetrics.Timer timer = RpcMetrics.start( rpc ) )
+    {
+      T result = engine.submit( call ).get();
+      timer.success();
+      return result;
+    }
+    catch( ExecutionException ex )
+    {
+      if( ex.getCause() instanceof Exception )
+        throw (Exception) ex.getCause();
+      throw ex;
+    }
+  }
+
+  private OptimizeToursRequest parseRequest( byte[] body, boolean binary ) throws IOException
+  {
+    OptimizeToursRequest.Builder request = OptimizeToursRequest.newBuilder();
+    if( binary )
+      request.mergeFrom( body );
+    else
+      TextFormat.merge( new String( body, StandardCharsets.UTF_8 ), request );
+    if( request.getParent().isEmpty() )
+      request.setParent( "projects/" + engine.getProviderId() );
+    if( !request.hasTimeout() )
+      request.setTimeout( Duration.newBuilder().setSeconds( App.TIMEOUT_SECONDS ) );
+    return request.build();
+  }
+
+  private static Map<String, String> parseQuery( String rawQuery )
+  {
+    HashMap<String, String> query = new HashMap<>();
+    if( rawQuery == null )
+      return query;
+    for( String parameter : rawQuery.split( "&" ) ) {
+      int equals = parameter.indexOf( '=' );
+      if( equals > 0 )
+        query.put( URLDecoder.decode( parameter.substring( 0, equals ), StandardCharsets.UTF_8 ),
+            URLDecoder.decode( parameter.substring( equals + 1 ), StandardCharsets.UTF_8 ) );
+    }
+    return query;
+  }
+
+  private static void sendResponse( HttpExchange exchange, OptimizeToursResponse response ) throws IOException
+  {
+    send( exchange, 200, response.toString() );
+  }
+
+  private static void send( HttpExchange exchange, int status, String text ) throws IOException
+  {
+    byte[] body = text.getBytes( StandardCharsets.UTF_8 );
+    exchange.getResponseHeaders().set( "Content-Type", TEXT_CONTENT_TYPE );
+    exchange.sendResponseHeaders( status, body.length == 0 ? -1 : body.length );
+    if( body.length > 0 )
+      try( OutputStream out = exchange.getResponseBody() )
+      {
+        out.write( body );
+      }
+  }
+}
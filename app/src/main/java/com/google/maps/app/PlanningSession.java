@@ -0,0 +1,596 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.google.api.gax.rpc.NotFoundException;
+import com.google.protobuf.Duration;
+import com.google.type.LatLng;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest.SearchMode;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+import google.maps.fleetengine.delivery.v1.CreateTaskRequest;
+import google.maps.fleetengine.delivery.v1.DeliveryServiceClient;
+import google.maps.fleetengine.delivery.v1.DeliveryVehicle;
+import google.maps.fleetengine.delivery.v1.Task;
+
+/**
+ * The plan of one depot or fleet: the current request and response, and the routes
+ * published from them to Fleet Engine.
+ *
+ * Calls on one session are serialized, while different sessions of the same
+ * PlanningEngine run concurrently. A session is created by PlanningEngine.newSession.
+ */
+public class PlanningSession {
+
+  private final PlanningEngine engine;
+  private final String name;
+  private final PublishedPlan publishedPlan = new PublishedPlan();
+  private OptimizeToursRequest request;
+  private OptimizeToursResponse response;
+  private String planId;
+
+  PlanningSession( PlanningEngine engine, String name )
+  {
+    this.engine = engine;
+    this.name = name;
+  }
+
+  /**
+   * Plans a model file: builds the request, checks it and optimizes it.
+   *
+   * @param modelPath The path to the model file.
+   * @return The optimized plan.
+   * @throws Exception If the model cannot be read or the API call fails.
+   */
+  public synchronized OptimizeToursResponse planModel( String modelPath ) throws Exception
+  {
+    String projectParent = "projects/" + engine.getProviderId();
+    return plan( RouteOptimizationHelper.buildFleetRoutingRequest( projectParent, modelPath ) );
+  }
+
+  /**
+   * Plans a request: checks it with App.preflight and optimizes it with App.optimize.
+   * The plan replaces the current one, but nothing is published.
+   *
+   * @param newRequest The optimize tours request.
+   * @return The optimized plan.
+   * @throws Exception If the API call fails.
+   */
+  public synchronized OptimizeToursResponse plan( OptimizeToursRequest newRequest ) throws Exception
+  {
+    OptimizeToursRequest checked = App.preflight( newRequest );
+    OptimizeToursResponse newResponse = App.optimize( checked );
+    request = checked;
+    response = newResponse;
+    planId = null;
+    return newResponse;
+  }
+
+  /**
+   * Replaces the current plan with one computed elsewhere, for example by BatchRunner.
+   *
+   * @param newRequest The optimize tours request the plan was computed for.
+   * @param newResponse The optimized plan.
+   */
+  public synchronized void setPlan( OptimizeToursRequest newRequest, OptimizeToursResponse newResponse )
+  {
+    request = newRequest;
+    response = newResponse;
+    planId = null;
+  }
+
+  /**
+   * Re-optimizes the current plan, starting from its routes and using all the available time.
+   * The model must not change, or the injected routes would not match it.
+   * Large models are split into regions by App.optimize, each starting from its own routes.
+   *
+   * @return The new plan.
+   * @throws Exception If there is no plan or the API call fails.
+   */
+  public synchronized OptimizeToursResponse reoptimize() throws Exception
+  {
+    requirePlan();
+    OptimizeToursRequest reoptimizeRequest =
+        OptimizeToursRequest.newBuilder()
+            .setModel( request.getModel() )
+            .setTimeout( Duration.newBuilder().setSeconds( App.TIMEOUT_SECONDS ).build() )
+            .setParent( "projects/" + engine.getProviderId() )
+            .setSearchMode( SearchMode.CONSUME_ALL_AVAILABLE_TIME )
+            .addAllInjectedFirstSolutionRoutes( response.getRoutesList() )
+            .build();
+
+    OptimizeToursResponse newResponse = App.optimize( reoptimizeRequest );
+    request = reoptimizeRequest;
+    response = newResponse;
+    planId = null;
+    return newResponse;
+  }
+
+  /**
+   * Adds a shipment to the model of the current plan and plans it again with App.optimize.
+   *
+   * @param shipment The new shipment.
+   * @return The new plan.
+   * @throws Exception If there is no plan or the API call fails.
+   */
+  public synchronized OptimizeToursResponse insertShipment( Shipment shipment ) throws Exception
+  {
+    requirePlan();
+    ShipmentModel model = request.getModel().toBuilder().addShipments( shipment ).build();
+    OptimizeToursRequest newRequest = App.preflight(
+        OptimizeToursRequest.newBuilder()
+            .setModel( model )
+            .setTimeout( Duration.newBuilder().setSeconds( App.TIMEOUT_SECONDS ).build() )
+            .setParent( "projects/" + engine.getProviderId() )
+            .build() );
+
+    OptimizeToursResponse newResponse = App.optimize( newRequest );
+    request = newRequest;
+    response = newResponse;
+    planId = null;
+    return newResponse;
+  }
+
+  /**
+   * Creates routes in Fleet Engine for every vehicle of the current plan, replacing
+   * whatever this session published before. Vehicle routes are published in parallel.
+   *
+   * @return The labels of the vehicles whose route could not be published.
+   * @throws Exception If there is no plan, or the vehicles cannot be looked up.
+   */
+  public synchronized List<String> publish() throws Exception
+  {
+    requirePlan();
+    publishedPlan.clear();
+    String providerId = engine.getProviderId();
+    String planId = resolvePlanId();
+
+    List<ShipmentRoute> routes = response.getRoutesList();
+    List<Vehicle> vehicles = request.getModel().getVehiclesList();
+    ShipmentModelIndex modelIndex = ShipmentModelIndex.of( request.getModel() );
+
+    LinkedHashMap<String, LatLng> routedVehicles = new LinkedHashMap<String, LatLng>();
+    for (int i = 0; i < routes.size(); i++ ) {
+      ShipmentRoute route = routes.get(i);
+      Vehicle vehicle = vehicles.get(i);
+      if( route.getVehicleLabel().equals( vehicle.getLabel() ) )
+      {
+        if( route.getVisitsCount() > 0 )
+          routedVehicles.put( vehicle.getLabel(), vehicle.getStartLocation() );
+        else
+          System.out.println( "\nThere are no visits for vehicle:'" + vehicle.getLabel() + "' \n");
+      }
+    }
+
+    // One list sweep instead of a create attempt per vehicle
+    Map<String, DeliveryVehicle> deliveryVehicles = ensureDeliveryVehicles( planId, routedVehicles );
+
+    ArrayList<String> vehicleLabels = new ArrayList<String>();
+    ArrayList<Callable<Boolean>> jobs = new ArrayList<Callable<Boolean>>();
+
+    for (int i = 0; i < routes.size(); i++ ) {
+      ShipmentRoute route = routes.get(i);
+      Vehicle vehicle = vehicles.get(i);
+      if( routedVehicles.containsKey( vehicle.getLabel() ) && route.getVehicleLabel().equals( vehicle.getLabel() ) )
+      {
+        vehicleLabels.add( vehicle.getLabel() );
+        DeliveryVehicle dv = deliveryVehicles.get( vehicle.getLabel() );
+        jobs.add( () -> {
+          if( dv == null )
+            return false;
+          List<CreateTaskRequest> createTaskRequests = App.buildRouteTaskRequests( modelIndex, providerId, planId, vehicle, route );
+          List<String> stopFingerprints = App.routeStopFingerprints( route, createTaskRequests );
+          return publishRoute( modelIndex, planId, dv, vehicle.getLabel(), createTaskRequests, stopFingerprints, null );
+        } );
+      }
+    }
+
+    return finishPlan( planId, publishInParallel( vehicleLabels, jobs, "Published" ) );
+  }
+
+  /**
+   * Brings Fleet Engine in line with the current plan, touching only what changed since the last publish.
+   * Vehicles whose stops did not change get no call at all, changed vehicles reuse the tasks of
+   * their unchanged stops and close the others, and vehicles left without visits have their
+   * journey segments cleared and their tasks closed.
+   * Without a previous publish this is the same as publish.
+   *
+   * @return The labels of the vehicles whose route could not be synchronized.
+   * @throws Exception If there is no plan, or the vehicles cannot be looked up.
+   */
+  public synchronized List<String> sync() throws Exception
+  {
+    if( publishedPlan.isEmpty() )
+      return publish();
+
+    String providerId = engine.getProviderId();
+    String planId = resolvePlanId();
+
+    List<ShipmentRoute> routes = response.getRoutesList();
+    ShipmentModel shipmentModel = request.getModel();
+    List<Vehicle> vehicles = shipmentModel.getVehiclesList();
+    ShipmentModelIndex modelIndex = ShipmentModelIndex.of( shipmentModel );
+
+    HashMap<String, Vehicle> routedVehicles = new HashMap<String, Vehicle>();
+    HashMap<String, List<CreateTaskRequest>> createTaskRequests = new HashMap<String, List<CreateTaskRequest>>();
+    LinkedHashMap<String, List<String>> stopFingerprints = new LinkedHashMap<String, List<String>>();
+
+    for (int i = 0; i < routes.size(); i++ ) {
+      ShipmentRoute route = routes.get(i);
+      Vehicle vehicle = vehicles.get(i);
+      if( route.getVehicleLabel().equals( vehicle.getLabel() ) && route.getVisitsCount() > 0 )
+      {
+        List<CreateTaskRequest> requests = App.buildRouteTaskRequests( modelIndex, providerId, planId, vehicle, route );
+        routedVehicles.put( vehicle.getLabel(), vehicle );
+        createTaskRequests.put( vehicle.getLabel(), requests );
+        stopFingerprints.put( vehicle.getLabel(), App.routeStopFingerprints( route, requests ) );
+      }
+    }
+
+    PlanDiff diff = PlanDiff.compute( publishedPlan, stopFingerprints );
+    System.out.println( "\n" + name + " plan changes: " + diff );
+
+    ArrayList<String> vehicleLabels = new ArrayList<String>();
+    ArrayList<Callable<Boolean>> jobs = new ArrayList<Callable<Boolean>>();
+
+    for( String label : diff.getChangedVehicles() ) {
+      vehicleLabels.add( label );
+      jobs.add( () -> publishRoute( modelIndex, planId, App.deliveryVehicleReference( providerId, label ), label,
+          createTaskRequests.get( label ), stopFingerprints.get( label ), publishedPlan.get( label ) ) );
+    }
+
+    LinkedHashMap<String, LatLng> newVehicleLocations = new LinkedHashMap<String, LatLng>();
+    for( String label : diff.getNewVehicles() )
+      newVehicleLocations.put( label, routedVehicles.get( label ).getStartLocation() );
+    Map<String, DeliveryVehicle> newDeliveryVehicles = newVehicleLocations.isEmpty()
+        ? new HashMap<String, DeliveryVehicle>()
+        : ensureDeliveryVehicles( planId, newVehicleLocations );
+
+    for( String label : diff.getNewVehicles() ) {
+      DeliveryVehicle dv = newDeliveryVehicles.get( label );
+      vehicleLabels.add( label );
+      jobs.add( () -> dv != null
+          && publishRoute( modelIndex, planId, dv, label, createTaskRequests.get( label ), stopFingerprints.get( label ), null ) );
+    }
+
+    for( String label : diff.getRemovedVehicles() ) {
+      vehicleLabels.add( label );
+      jobs.add( () -> {
+        // A vehicle that no longer exists has no journey segments left to clear
+        if( !updateSegments( new ArrayList<Task>(), App.deliveryVehicleReference( providerId, label ), label )
+            && !engine.getVehicleRegistry().isMissing( label ) )
+          return false;
+        closeUnmatchedTasks( planId, PublishJournal.routeKey( label, new ArrayList<String>() ),
+            PlanDiff.unmatchedTasks( publishedPlan.get( label ), new ArrayList<Task>() ) );
+        publishedPlan.remove( label );
+        return true;
+      } );
+    }
+
+    return finishPlan( planId, publishInParallel( vehicleLabels, jobs, "Synchronized" ) );
+  }
+
+  /**
+   * Gets the ID of the current plan. Task and tracking IDs are derived from it.
+   *
+   * @return The plan ID, or null if the current plan was not published yet.
+   */
+  public synchronized String getPlanId()
+  {
+    return planId;
+  }
+
+  /**
+   * Sets the ID of the current plan, for example the run ID of a dispatch system, instead of
+   * letting publish assign one. Planning again starts a new plan without an ID.
+   *
+   * @param planId The plan ID.
+   */
+  public synchronized void setPlanId( String planId )
+  {
+    this.planId = planId;
+  }
+
+  /**
+   * Gets the name of the session.
+   *
+   * @return The name.
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Gets the request of the current plan.
+   *
+   * @return The request, or null if nothing was planned yet.
+   */
+  public synchronized OptimizeToursRequest getRequest()
+  {
+    return request;
+  }
+
+  /**
+   * Gets the current plan.
+   *
+   * @return The response, or null if nothing was planned yet.
+   */
+  public synchronized OptimizeToursResponse getResponse()
+  {
+    return response;
+  }
+
+  /**
+   * Gets the routes published by this session.
+   *
+   * @return The published plan.
+   */
+  public PublishedPlan getPublishedPlan()
+  {
+    return publishedPlan;
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return String.format( "PlanningSession{name=%s, shipments=%d, publishedVehicles=%d}",
+        name, request == null ? 0 : request.getModel().getShipmentsCount(), publishedPlan.getVehicleLabels().size() );
+  }
+
+  /**
+   * Gets the ID of the current plan, assigning one on first publish. A plan of this session with the
+   * same content whose publish was interrupted gets its plan ID back from the journal, so the publish
+   * resumes; otherwise the plan gets a new ID, and tasks of earlier runs are never reused.
+   */
+  private String resolvePlanId()
+  {
+    if( planId == null )
+    {
+      PublishJournal journal = engine.getJournal();
+      String contentKey = ResponseCache.cacheKey( request );
+      planId = journal == null ? null : journal.findUnfinishedPlan( name, contentKey );
+      if( planId == null )
+      {
+        planId = UUID.randomUUID().toString();
+        if( journal != null )
+          journal.startPlan( planId, name, contentKey );
+      }
+      else
+      {
+        System.out.println( "\nResuming publish of plan " + planId );
+      }
+    }
+    return planId;
+  }
+
+  /**
+   * Records in the journal that a plan finished publishing if no vehicle failed.
+   */
+  private List<String> finishPlan( String planId, List<String> failedVehicles )
+  {
+    PublishJournal journal = engine.getJournal();
+    if( journal != null && failedVehicles.isEmpty() )
+      journal.finishPlan( planId );
+    return failedVehicles;
+  }
+
+  private void requirePlan()
+  {
+    if( request == null || response == null )
+      throw new IllegalStateException( "Session " + name + " has no plan yet" );
+  }
+
+  /**
+   * Makes sure delivery vehicles exist in Fleet Engine. Vehicles recorded in the publish journal
+   * for this plan are trusted unless Fleet Engine has since reported them as not found, other
+   * existing vehicles are found in the vehicle registry, and only the missing ones are created
+   * in parallel on the publish pool.
+   */
+  private Map<String, DeliveryVehicle> ensureDeliveryVehicles( String planId, Map<String, LatLng> locations ) throws InterruptedException
+  {
+    String providerId = engine.getProviderId();
+    DeliveryServiceClient client = engine.getClient();
+    PublishJournal journal = engine.getJournal();
+    VehicleRegistry registry = engine.getVehicleRegistry();
+    HashMap<String, DeliveryVehicle> journaled = new HashMap<String, DeliveryVehicle>();
+    LinkedHashMap<String, LatLng> unknown = new LinkedHashMap<String, LatLng>();
+    for( Map.Entry<String, LatLng> entry : locations.entrySet() ) {
+      if( journal != null && journal.isDone( planId, entry.getKey(), PublishJournal.Step.VEHICLE_CREATED )
+          && !registry.isMissing( entry.getKey() ) )
+        journaled.put( entry.getKey(), App.deliveryVehicleReference( providerId, entry.getKey() ) );
+      else
+        unknown.put( entry.getKey(), entry.getValue() );
+    }
+
+    Map<String, DeliveryVehicle> vehicles = unknown.isEmpty()
+        ? new HashMap<String, DeliveryVehicle>()
+        : registry.ensureVehicles( unknown,
+            ( vehicleId, location ) -> App.createDeliveryVehicle( client, providerId, vehicleId, location ), engine.getPublishExecutor() );
+    if( journal != null )
+      for( String label : vehicles.keySet() )
+        journal.record( planId, label, PublishJournal.Step.VEHICLE_CREATED );
+
+    journaled.putAll( vehicles );
+    return journaled;
+  }
+
+  /**
+   * Publishes the tasks and journey segments of a vehicle route and records it in the published plan.
+   * Steps already recorded in the publish journal for this plan and route are skipped.
+   */
+  private boolean publishRoute( ShipmentModelIndex modelIndex, String planId, DeliveryVehicle responseDeliveryVehicle, String vehicleLabel, List<CreateTaskRequest> createTaskRequests, List<String> stopFingerprints, PublishedRoute previous )
+  {
+    DeliveryServiceClient client = engine.getClient();
+    try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.PUBLISH_ROUTE ) )
+    {
+      PublishJournal journal = engine.getJournal();
+      String routeKey = PublishJournal.routeKey( vehicleLabel, stopFingerprints );
+
+      List<Task> tasks;
+      List<String> journaledTasks = journal == null ? null : journal.getTasks( planId, routeKey );
+      if( journaledTasks != null && journaledTasks.size() == createTaskRequests.size() )
+      {
+        // The tasks exist already, some possibly reused from an earlier route, so use their recorded names
+        tasks = new ArrayList<Task>();
+        for (int i = 0; i < createTaskRequests.size(); i++ )
+          tasks.add( createTaskRequests.get(i).getTask().toBuilder().setName( journaledTasks.get(i) ).build() );
+      }
+      else
+      {
+        // Only the stops without a reusable task need a createTask call
+        tasks = PlanDiff.matchTasks( previous, stopFingerprints );
+        ArrayList<CreateTaskRequest> missingTasks = new ArrayList<CreateTaskRequest>();
+        for (int i = 0; i < tasks.size(); i++ )
+          if( tasks.get(i) == null )
+            missingTasks.add( createTaskRequests.get(i) );
+
+        List<Task> createdTasks = LmfsHelper.createTasks( client, missingTasks, App.TASK_CREATION_MAX_IN_FLIGHT );
+        for (int i = 0, created = 0; i < tasks.size(); i++ )
+          if( tasks.get(i) == null )
+            tasks.set( i, createdTasks.get( created++ ) );
+
+        if( journal != null )
+        {
+          ArrayList<String> taskNames = new ArrayList<String>();
+          for( Task task : tasks )
+            taskNames.add( task.getName() );
+          journal.recordTasks( planId, routeKey, taskNames );
+        }
+      }
+
+      // Update remaining journey segments
+      if( journal == null || !journal.isDone( planId, routeKey, PublishJournal.Step.SEGMENTS_UPDATED ) )
+      {
+        if( !updateSegments( tasks, responseDeliveryVehicle, vehicleLabel ) )
+          return false;
+        if( journal != null )
+          journal.record( planId, routeKey, PublishJournal.Step.SEGMENTS_UPDATED );
+      }
+
+      // Only once the segments no longer list them, or Fleet Engine would refuse to close them
+      closeUnmatchedTasks( planId, routeKey, PlanDiff.unmatchedTasks( previous, tasks ) );
+
+      publishedPlan.put( new PublishedRoute( vehicleLabel, stopFingerprints, tasks ) );
+      timer.success();
+      System.out.println("\nVehicle assigned:\n" + responseDeliveryVehicle.getName() );
+      return true;
+    }
+    catch( Exception ex )
+    {
+      System.out.println("\nEXCEPTION:");
+      System.out.println(ex);
+      return false;
+    }
+  }
+
+  /**
+   * Replaces the journey segments of a vehicle. A vehicle Fleet Engine reports as not found is
+   * forgotten by the vehicle registry and dropped from the published plan, so the next publish
+   * or sync creates it again.
+   */
+  private boolean updateSegments( List<Task> tasks, DeliveryVehicle deliveryVehicle, String vehicleLabel )
+  {
+    try
+    {
+      return App.updateSegments( tasks, engine.getClient(), deliveryVehicle ) != null;
+    }
+    catch( NotFoundException ex )
+    {
+      System.out.println( "\nWARNING! Delivery vehicle '" + vehicleLabel + "' no longer exists in Fleet Engine, it will be created again" );
+      engine.getVehicleRegistry().forget( vehicleLabel );
+      publishedPlan.remove( vehicleLabel );
+      return false;
+    }
+  }
+
+  /**
+   * Closes the tasks of stops a route no longer has, unless the journal shows they were closed already.
+   * Failures are thrown, so the route stays at its previous version in the published plan and the
+   * next sync closes the tasks again.
+   */
+  private void closeUnmatchedTasks( String planId, String routeKey, List<Task> unmatchedTasks )
+  {
+    PublishJournal journal = engine.getJournal();
+    if( unmatchedTasks.isEmpty()
+        || ( journal != null && journal.isDone( planId, routeKey, PublishJournal.Step.TASKS_CLOSED ) ) )
+      return;
+
+    int closed = LmfsHelper.closeTasks( engine.getClient(), unmatchedTasks );
+    System.out.printf( "\nClosed %d of %d tasks no longer in the route\n", closed, unmatchedTasks.size() );
+    if( journal != null )
+      journal.record( planId, routeKey, PublishJournal.Step.TASKS_CLOSED );
+  }
+
+  /**
+   * Runs one publishing job per vehicle on the shared publish pool of the engine and reports the outcome.
+   */
+  private List<String> publishInParallel( List<String> vehicleLabels, List<Callable<Boolean>> jobs, String action ) throws InterruptedException
+  {
+    long startMillis = System.currentTimeMillis();
+    RpcMetrics.Timer planTimer = RpcMetrics.start( RpcMetrics.PUBLISH_PLAN );
+    ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    try
+    {
+      for( Callable<Boolean> job : jobs )
+        results.add( engine.getPublishExecutor().submit( job ) );
+
+      ArrayList<String> failedVehicles = new ArrayList<String>();
+      for (int i = 0; i < results.size(); i++ ) {
+        try
+        {
+          if( !results.get(i).get() )
+            failedVehicles.add( vehicleLabels.get(i) );
+        }
+        catch( ExecutionException ex )
+        {
+          System.out.println( "Error publishing route for vehicle '" + vehicleLabels.get(i) + "': " + ex.getCause() );
+          failedVehicles.add( vehicleLabels.get(i) );
+        }
+      }
+
+      System.out.printf( "\n%s: %s %d of %d vehicle routes in %d ms\n",
+          name, action, results.size() - failedVehicles.size(), results.size(), System.currentTimeMillis() - startMillis );
+      if( !failedVehicles.isEmpty() )
+        System.out.println( "Failed vehicles: " + failedVehicles );
+      else
+        planTimer.success();
+
+      return failedVehicles;
+    }
+    finally
+    {
+      planTimer.close();
+      // The pool is shared, so stop only the jobs of this call if it was interrupted
+      for( Future<Boolean> result : results )
+        result.cancel( true );
+    }
+  }
+}
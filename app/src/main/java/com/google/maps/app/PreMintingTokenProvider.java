@@ -0,0 +1,188 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.fleetengine.auth.client.FleetEngineTokenProvider;
+import com.google.fleetengine.auth.token.FleetEngineToken;
+import com.google.fleetengine.auth.token.factory.signer.SigningTokenException;
+
+/**
+ * Token provider that signs delivery server tokens in the background, ahead of their expiry.
+ *
+ * The current token sits in a volatile field, so the gRPC threads asking for it never take
+ * a lock or wait on a signing call while it is valid. A background thread signs the next
+ * token refreshAheadMillis before the current one expires and retries with backoff on failure.
+ * Only when no valid token is left does a caller sign one itself; those calls are recorded as
+ * RpcMetrics.MINT_TOKEN_BLOCKING, and the background ones as RpcMetrics.MINT_TOKEN.
+ */
+public class PreMintingTokenProvider implements FleetEngineTokenProvider, AutoCloseable {
+
+  /**
+   * Signs a new token.
+   */
+  @FunctionalInterface
+  public interface TokenSource {
+    /**
+     * Signs a new token.
+     *
+     * @return The signed token.
+     * @throws SigningTokenException If the token cannot be signed.
+     */
+    FleetEngineToken mint() throws SigningTokenException;
+  }
+
+  // A token this close to expiry is not handed out, so it cannot expire in flight
+  private static final long MIN_VALIDITY_MILLIS = 10_000;
+  private static final long MIN_RETRY_MILLIS = 1_000;
+  private static final long MAX_RETRY_MILLIS = 60_000;
+
+  private final TokenSource source;
+  private final long refreshAheadMillis;
+  private final ScheduledExecutorService scheduler;
+  private volatile FleetEngineToken current;
+  private volatile long mintedAtMillis;
+  private long retryMillis = MIN_RETRY_MILLIS;
+
+  /**
+   * Creates the provider and starts signing the first token in the background.
+   *
+   * @param source Signs new tokens.
+   * @param refreshAheadMillis How long before expiry the next token is signed.
+   */
+  public PreMintingTokenProvider( TokenSource source, long refreshAheadMillis )
+  {
+    this.source = source;
+    this.refreshAheadMillis = refreshAheadMillis;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+      Thread thread = new Thread( runnable, "token-pre-minting" );
+      thread.setDaemon( true );
+      return thread;
+    } );
+    scheduler.execute( this::refresh );
+  }
+
+  /**
+   * Gets a valid signed token, signing one in the calling thread only if the background
+   * refresh has not produced one.
+   *
+   * @return The signed token.
+   * @throws SigningTokenException If no valid token is cached and signing fails.
+   */
+  @Override
+  public FleetEngineToken getSignedToken() throws SigningTokenException
+  {
+    FleetEngineToken token = current;
+    if( isUsable( token ) )
+      return token;
+
+    synchronized( this )
+    {
+      token = current;
+      if( isUsable( token ) )
+        return token;
+      return mint( RpcMetrics.MINT_TOKEN_BLOCKING );
+    }
+  }
+
+  /**
+   * Gets how long ago the current token was signed.
+   *
+   * @return The age in milliseconds, or -1 if no token was signed yet.
+   */
+  public long getTokenAgeMillis()
+  {
+    return current == null ? -1 : System.currentTimeMillis() - mintedAtMillis;
+  }
+
+  /**
+   * Gets how long the current token stays valid.
+   *
+   * @return The time to expiry in milliseconds, negative once expired, or -1 if no token was signed yet.
+   */
+  public long getMillisUntilExpiry()
+  {
+    FleetEngineToken token = current;
+    return token == null ? -1 : token.expirationTimestamp().getTime() - System.currentTimeMillis();
+  }
+
+  /**
+   * Exports the token age and time to expiry as RpcMetrics gauges.
+   */
+  public void registerGauges()
+  {
+    RpcMetrics.registerGauge( "fleet_auth_token_age_seconds", "Age of the cached delivery server token.",
+        () -> getTokenAgeMillis() / 1e3 );
+    RpcMetrics.registerGauge( "fleet_auth_token_expiry_seconds", "Time until the cached delivery server token expires.",
+        () -> getMillisUntilExpiry() / 1e3 );
+  }
+
+  /**
+   * Stops the background refresh. Tokens already signed are still handed out until they expire.
+   */
+  @Override
+  public void close()
+  {
+    scheduler.shutdownNow();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "PreMintingTokenProvider{ageMillis=%d, millisUntilExpiry=%d}", getTokenAgeMillis(), getMillisUntilExpiry() );
+  }
+
+  private static boolean isUsable( FleetEngineToken token )
+  {
+    return token != null && token.expirationTimestamp().getTime() - System.currentTimeMillis() > MIN_VALIDITY_MILLIS;
+  }
+
+  private FleetEngineToken mint( String rpc ) throws SigningTokenException
+  {
+    try( RpcMetrics.Timer timer = RpcMetrics.start( rpc ) )
+    {
+      FleetEngineToken token = source.mint();
+      mintedAtMillis = System.currentTimeMillis();
+      current = token;
+      timer.success();
+      return token;
+    }
+  }
+
+  private void refresh()
+  {
+    long delayMillis;
+    try
+    {
+      FleetEngineToken token = mint( RpcMetrics.MINT_TOKEN );
+      retryMillis = MIN_RETRY_MILLIS;
+      long lifetimeMillis = token.expirationTimestamp().getTime() - System.currentTimeMillis();
+      delayMillis = Math.max( MIN_RETRY_MILLIS, lifetimeMillis - refreshAheadMillis );
+    }
+    catch( SigningTokenException | RuntimeException ex )
+    {
+      // The current token, if any, is still handed out while it is valid
+      System.out.println( "\nWARNING! Cannot pre-mint delivery server token, retrying in " + retryMillis + " ms: " + ex );
+      delayMillis = retryMillis;
+      retryMillis = Math.min( retryMillis * 2, MAX_RETRY_MILLIS );
+    }
+
+    if( !scheduler.isShutdown() )
+      scheduler.schedule( this::refresh, delayMillis, TimeUnit.MILLISECONDS );
+  }
+}
@@ -0,0 +1,342 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only journal of the publish steps completed for a plan, so that a publish
+ * interrupted halfway resumes where it stopped instead of starting over.
+ *
+ * Each line holds a plan ID, a subject (a vehicle label, a route key or a session) and a step,
+ * separated by tabs. A plan ID is started for a session and its plan content, and a publish
+ * restarted before the plan finished publishing gets the same plan ID back, so it resumes
+ * instead of creating new tasks. Lines are flushed as soon as they are recorded, and a torn last line left by a
+ * crash is ignored when the journal is read back.
+ */
+public class PublishJournal implements AutoCloseable {
+
+  /**
+   * A completed publish step.
+   */
+  public enum Step {
+    // A plan ID was assigned to the plan of a session
+    PLAN_STARTED,
+    // Every vehicle route of the plan was published
+    PLAN_FINISHED,
+    // The delivery vehicle exists in Fleet Engine
+    VEHICLE_CREATED,
+    // Every task of the route exists in Fleet Engine, with the task names recorded in stop order
+    TASKS_CREATED,
+    // The journey segments of the vehicle list the tasks of the route
+    SEGMENTS_UPDATED,
+    // The tasks of the previous route that the route no longer uses are closed
+    TASKS_CLOSED
+  }
+
+  private final Path file;
+  private final Set<String> completed = ConcurrentHashMap.newKeySet();
+  // Plan ID of each session and plan content, and the plans that finished publishing
+  private final Map<String, String> startedPlans = new ConcurrentHashMap<>();
+  private final Set<String> finishedPlans = ConcurrentHashMap.newKeySet();
+  // Task names of each route, by TASKS_CREATED entry
+  private final Map<String, List<String>> routeTasks = new ConcurrentHashMap<>();
+  private final BufferedWriter writer;
+
+  /**
+   * Opens a journal, reading the steps recorded by earlier runs.
+   *
+   * @param file The journal file, created if it does not exist.
+   * @throws IOException If the file cannot be read or opened for appending.
+   */
+  public PublishJournal( Path file ) throws IOException
+  {
+    this.file = file;
+    if( file.getParent() != null )
+      Files.createDirectories( file.getParent() );
+
+    if( Files.exists( file ) )
+    {
+      List<String> lines = compact( Files.readAllLines( file, StandardCharsets.UTF_8 ) );
+      for( String line : lines ) {
+        String[] fields = line.split( "\t" );
+        if( fields.length == 3 )
+        {
+          completed.add( line );
+          track( fields[0], fields[1], Step.valueOf( fields[2] ) );
+        }
+        else
+        {
+          String entry = entry( fields[0], fields[1], Step.TASKS_CREATED );
+          routeTasks.put( entry, Arrays.asList( fields[3].split( "," ) ) );
+          completed.add( entry );
+        }
+      }
+    }
+
+    writer = Files.newBufferedWriter( file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND );
+  }
+
+  /**
+   * Gets the key of a vehicle route. The key changes whenever a stop of the route changes,
+   * so the steps recorded for an earlier version of the route are not taken as done.
+   *
+   * @param vehicleLabel The vehicle label.
+   * @param stopFingerprints The stop fingerprints of the route.
+   * @return The route key.
+   */
+  public static String routeKey( String vehicleLabel, List<String> stopFingerprints )
+  {
+    try
+    {
+      MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+      for( String fingerprint : stopFingerprints ) {
+        digest.update( fingerprint.getBytes( StandardCharsets.UTF_8 ) );
+        digest.update( (byte) '\n' );
+      }
+      StringBuilder key = new StringBuilder( vehicleLabel ).append( '#' );
+      for( byte b : digest.digest() )
+        key.append( String.format( "%02x", b ) );
+      return key.toString();
+    }
+    catch( NoSuchAlgorithmException ex )
+    {
+      // Every JVM provides SHA-256
+      throw new IllegalStateException( ex );
+    }
+  }
+
+  /**
+   * Finds the plan ID started for a session and plan content whose publish did not finish.
+   *
+   * @param session The session name.
+   * @param contentKey The cache key of the plan request.
+   * @return The plan ID to resume, or null if there is none.
+   */
+  public String findUnfinishedPlan( String session, String contentKey )
+  {
+    String planId = startedPlans.get( planSubject( session, contentKey ) );
+    return planId == null || finishedPlans.contains( planId ) ? null : planId;
+  }
+
+  /**
+   * Records the plan ID assigned to the plan of a session.
+   *
+   * @param planId The plan ID.
+   * @param session The session name.
+   * @param contentKey The cache key of the plan request.
+   */
+  public void startPlan( String planId, String session, String contentKey )
+  {
+    record( planId, planSubject( session, contentKey ), Step.PLAN_STARTED );
+  }
+
+  /**
+   * Records that every vehicle route of a plan was published. The same plan content
+   * published again later gets a new plan ID.
+   *
+   * @param planId The plan ID.
+   */
+  public void finishPlan( String planId )
+  {
+    record( planId, "plan", Step.PLAN_FINISHED );
+  }
+
+  /**
+   * Records that every task of a route exists, with the names of the tasks, and flushes it to the file.
+   * The names include the tasks reused from an earlier route, which were not created by this plan.
+   *
+   * @param planId The plan ID.
+   * @param routeKey The route key.
+   * @param taskNames The full names of the tasks of the route, in stop order.
+   */
+  public void recordTasks( String planId, String routeKey, List<String> taskNames )
+  {
+    String entry = entry( planId, routeKey, Step.TASKS_CREATED );
+    if( routeTasks.putIfAbsent( entry, taskNames ) != null )
+      return;
+    completed.add( entry );
+    write( entry + "\t" + String.join( ",", taskNames ) );
+  }
+
+  /**
+   * Gets the task names recorded for a route.
+   *
+   * @param planId The plan ID.
+   * @param routeKey The route key.
+   * @return The full task names in stop order, or null if the tasks of the route were not recorded.
+   */
+  public List<String> getTasks( String planId, String routeKey )
+  {
+    return routeTasks.get( entry( planId, routeKey, Step.TASKS_CREATED ) );
+  }
+
+  /**
+   * Checks whether a step was completed.
+   *
+   * @param planId The plan ID.
+   * @param subject The vehicle label or route key.
+   * @param step The step.
+   * @return True if the step was recorded.
+   */
+  public boolean isDone( String planId, String subject, Step step )
+  {
+    return completed.contains( entry( planId, subject, step ) );
+  }
+
+  /**
+   * Records a completed step and flushes it to the file. TASKS_CREATED is recorded with recordTasks.
+   *
+   * @param planId The plan ID.
+   * @param subject The vehicle label or route key.
+   * @param step The step.
+   */
+  public void record( String planId, String subject, Step step )
+  {
+    String entry = entry( planId, subject, step );
+    if( !completed.add( entry ) )
+      return;
+    track( planId, subject, step );
+    write( entry );
+  }
+
+  /**
+   * Gets the number of steps recorded.
+   *
+   * @return The number of steps.
+   */
+  public int size()
+  {
+    return completed.size();
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    synchronized( writer )
+    {
+      writer.close();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "PublishJournal{file=%s, steps=%d}", file, completed.size() );
+  }
+
+  private void write( String line )
+  {
+    synchronized( writer )
+    {
+      try
+      {
+        writer.write( line );
+        writer.newLine();
+        writer.flush();
+      }
+      catch( IOException ex )
+      {
+        // The step is done either way; a resumed publish will just repeat it
+        System.out.println( "\nWARNING! Cannot write publish journal " + file + ": " + ex );
+      }
+    }
+  }
+
+  /**
+   * Keeps the well-formed lines of the plans that may still be resumed, and rewrites the file
+   * without the other lines if there are any.
+   */
+  private List<String> compact( List<String> lines ) throws IOException
+  {
+    ArrayList<String[]> entries = new ArrayList<>();
+    HashMap<String, String> latestPlans = new HashMap<>();
+    HashSet<String> finished = new HashSet<>();
+    for( String line : lines ) {
+      String[] fields = line.split( "\t" );
+      boolean wellFormed = fields.length == 3 && isStep( fields[2] ) && !fields[2].equals( Step.TASKS_CREATED.name() )
+          || fields.length == 4 && fields[2].equals( Step.TASKS_CREATED.name() );
+      if( !wellFormed )
+        continue;
+      entries.add( fields );
+      if( fields[2].equals( Step.PLAN_STARTED.name() ) )
+        latestPlans.put( fields[1], fields[0] );
+      else if( fields[2].equals( Step.PLAN_FINISHED.name() ) )
+        finished.add( fields[0] );
+    }
+
+    // Plans replaced by a newer plan of the same session and content can no longer be resumed
+    HashSet<String> dropped = new HashSet<>( finished );
+    for( String[] fields : entries )
+      if( fields[2].equals( Step.PLAN_STARTED.name() ) && !fields[0].equals( latestPlans.get( fields[1] ) ) )
+        dropped.add( fields[0] );
+
+    ArrayList<String> kept = new ArrayList<>();
+    for( String[] fields : entries )
+      if( !dropped.contains( fields[0] ) )
+        kept.add( String.join( "\t", fields ) );
+
+    if( kept.size() < lines.size() )
+    {
+      Path temporary = Files.createTempFile( file.toAbsolutePath().getParent(), "journal", ".tmp" );
+      Files.write( temporary, kept, StandardCharsets.UTF_8 );
+      Files.move( temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      System.out.printf( "Compacted publish journal %s: %d of %d lines kept\n", file, kept.size(), lines.size() );
+    }
+    return kept;
+  }
+
+  private void track( String planId, String subject, Step step )
+  {
+    if( step == Step.PLAN_STARTED )
+      startedPlans.put( subject, planId );
+    else if( step == Step.PLAN_FINISHED )
+      finishedPlans.add( planId );
+  }
+
+  private static String planSubject( String session, String contentKey )
+  {
+    return session + "#" + contentKey;
+  }
+
+  private static String entry( String planId, String subject, Step step )
+  {
+    // Tabs and line breaks would break the line format
+    return planId + "\t" + subject.replaceAll( "[\t\r\n]", " " ) + "\t" + step.name();
+  }
+
+  private static boolean isStep( String name )
+  {
+    for( Step step : Step.values() )
+      if( step.name().equals( name ) )
+        return true;
+    return false;
+  }
+}
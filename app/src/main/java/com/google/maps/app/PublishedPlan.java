@@ -0,0 +1,86 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The routes currently published to Fleet Engine, by vehicle label.
+ * Safe to update from the parallel route publishers.
+ */
+public class PublishedPlan {
+
+  private final ConcurrentHashMap<String, PublishedRoute> routes = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the published route of a vehicle.
+   *
+   * @param vehicleLabel The label of the vehicle.
+   * @return The published route, or null if nothing was published for this vehicle.
+   */
+  public PublishedRoute get( String vehicleLabel )
+  {
+    return routes.get( vehicleLabel );
+  }
+
+  /**
+   * Records the route published for a vehicle, replacing the previous one.
+   *
+   * @param route The published route.
+   */
+  public void put( PublishedRoute route )
+  {
+    routes.put( route.getVehicleLabel(), route );
+  }
+
+  /**
+   * Forgets the route of a vehicle.
+   *
+   * @param vehicleLabel The label of the vehicle.
+   */
+  public void remove( String vehicleLabel )
+  {
+    routes.remove( vehicleLabel );
+  }
+
+  /**
+   * Forgets every route.
+   */
+  public void clear()
+  {
+    routes.clear();
+  }
+
+  /**
+   * Checks whether any route was published.
+   *
+   * @return True if no route was published.
+   */
+  public boolean isEmpty()
+  {
+    return routes.isEmpty();
+  }
+
+  /**
+   * Gets the labels of the vehicles with a published route.
+   *
+   * @return A live view of the vehicle labels.
+   */
+  public Set<String> getVehicleLabels()
+  {
+    return routes.keySet();
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.type.LatLng;
+
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+
+import google.maps.fleetengine.delivery.v1.Task;
+
+/**
+ * A vehicle route as it was last published to Fleet Engine.
+ *
+ * Every stop of the route (start, visits, end) is described by a fingerprint made of
+ * the stop identity and the task content, so two plans can be compared stop by stop
+ * without looking at the task IDs.
+ */
+public final class PublishedRoute {
+
+  private final String vehicleLabel;
+  private final List<String> stopFingerprints;
+  private final List<Task> tasks;
+
+  /**
+   * Creates a published route.
+   *
+   * @param vehicleLabel The label of the vehicle.
+   * @param stopFingerprints The fingerprints of the stops, in route order.
+   * @param tasks The Fleet Engine tasks of the stops, in route order.
+   */
+  public PublishedRoute( String vehicleLabel, List<String> stopFingerprints, List<Task> tasks )
+  {
+    if( stopFingerprints.size() != tasks.size() )
+      throw new IllegalArgumentException( "Expected one task per stop, got " + tasks.size() + " tasks for " + stopFingerprints.size() + " stops" );
+
+    this.vehicleLabel = vehicleLabel;
+    this.stopFingerprints = Collections.unmodifiableList( new ArrayList<>( stopFingerprints ) );
+    this.tasks = Collections.unmodifiableList( new ArrayList<>( tasks ) );
+  }
+
+  /**
+   * Gets the label of the vehicle.
+   *
+   * @return The vehicle label.
+   */
+  public String getVehicleLabel()
+  {
+    return vehicleLabel;
+  }
+
+  /**
+   * Gets the fingerprints of the stops, in route order.
+   *
+   * @return The stop fingerprints.
+   */
+  public List<String> getStopFingerprints()
+  {
+    return stopFingerprints;
+  }
+
+  /**
+   * Gets the Fleet Engine tasks of the stops, in route order.
+   *
+   * @return The tasks.
+   */
+  public List<Task> getTasks()
+  {
+    return tasks;
+  }
+
+  /**
+   * Gets the key identifying a route visit within one plan, used for its task and tracking IDs.
+   * The visit label is used when there is one, the position of the visit request otherwise.
+   * Positions shift when the model changes, so use stopKey to compare plans.
+   *
+   * @param visit The visit of a shipment route.
+   * @return The visit key.
+   */
+  public static String visitKey( Visit visit )
+  {
+    if( !visit.getVisitLabel().isEmpty() )
+      return "visit:" + visit.getVisitLabel();
+
+    return String.format( "shipment:%d/%s:%d", visit.getShipmentIndex(),
+        visit.getIsPickup() ? "pickup" : "delivery", visit.getVisitRequestIndex() );
+  }
+
+  /**
+   * Gets the key identifying a route visit across plans, even when shipments were added or pruned.
+   * The visit label is used when there is one, then the shipment label. A visit with neither is
+   * identified by the rest of its fingerprint only: location, task type and duration.
+   *
+   * @param visit The visit of a shipment route.
+   * @return The stop key.
+   */
+  public static String stopKey( Visit visit )
+  {
+    if( !visit.getVisitLabel().isEmpty() )
+      return "visit:" + visit.getVisitLabel();
+
+    String side = visit.getIsPickup() ? "pickup" : "delivery";
+    if( !visit.getShipmentLabel().isEmpty() )
+      return String.format( "shipment:%s/%s:%d", visit.getShipmentLabel(), side, visit.getVisitRequestIndex() );
+
+    return "unlabeled:" + side;
+  }
+
+  /**
+   * Gets the fingerprint of a stop: its key and the content of its task.
+   *
+   * @param stopKey The key of the stop.
+   * @param task The task of the stop.
+   * @return The stop fingerprint.
+   */
+  public static String fingerprint( String stopKey, Task task )
+  {
+    LatLng point = task.getPlannedLocation().getPoint();
+    return stopKey + "|" + task.getType() + "|" + point.getLatitude() + "," + point.getLongitude()
+        + "|" + task.getTaskDuration().getSeconds();
+  }
+}
@@ -0,0 +1,250 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.CodedOutputStream;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
+
+/**
+ * On-disk cache of optimization responses, keyed by a hash of the request.
+ *
+ * Responses are stored as binary protobuf files named after the request hash.
+ * Reading an entry refreshes its modification time, and the least recently used
+ * entries are deleted once the directory grows over the configured size.
+ */
+public class ResponseCache {
+
+  private static final String ENTRY_EXTENSION = ".pb";
+
+  private final Path directory;
+  private final long maxBytes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Creates a cache in a directory, creating the directory if needed.
+   *
+   * @param directory The directory holding the cached responses.
+   * @param maxBytes The maximum total size of the cached responses.
+   * @throws IOException If the directory cannot be created.
+   */
+  public ResponseCache( Path directory, long maxBytes ) throws IOException
+  {
+    this.directory = Files.createDirectories( directory );
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Computes the cache key of a request.
+   * Fields that do not change the solution, such as the timeout and the parent project,
+   * are left out, and map fields are serialized in a stable order.
+   *
+   * @param request The optimize tours request.
+   * @return The hex encoded SHA-256 hash of the request.
+   */
+  public static String cacheKey( OptimizeToursRequest request )
+  {
+    OptimizeToursRequest keyRequest = request.toBuilder()
+        .clearTimeout()
+        .clearParent()
+        .build();
+
+    try
+    {
+      byte[] bytes = new byte[ keyRequest.getSerializedSize() ];
+      CodedOutputStream output = CodedOutputStream.newInstance( bytes );
+      output.useDeterministicSerialization();
+      keyRequest.writeTo( output );
+      output.checkNoSpaceLeft();
+
+      byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( bytes );
+      StringBuilder key = new StringBuilder( digest.length * 2 );
+      for( byte b : digest )
+        key.append( String.format( "%02x", b ) );
+      return key.toString();
+    }
+    catch( IOException | NoSuchAlgorithmException ex )
+    {
+      // Serializing into a correctly sized array cannot fail, and every JVM provides SHA-256.
+      throw new IllegalStateException( ex );
+    }
+  }
+
+  /**
+   * Gets the cached response for a request.
+   *
+   * @param request The optimize tours request.
+   * @return The cached response, or null if there is none.
+   */
+  public OptimizeToursResponse get( OptimizeToursRequest request )
+  {
+    Path entry = entryPath( cacheKey( request ) );
+    try
+    {
+      if( Files.exists( entry ) )
+      {
+        OptimizeToursResponse response = OptimizeToursResponse.parseFrom( Files.readAllBytes( entry ) );
+        Files.setLastModifiedTime( entry, FileTime.fromMillis( System.currentTimeMillis() ) );
+        hits.incrementAndGet();
+        return response;
+      }
+    }
+    catch( IOException ex )
+    {
+      // Unreadable or corrupt entry, drop it and treat it as a miss
+      System.out.println( "\nWARNING! Ignoring cached response " + entry + ": " + ex );
+      deleteQuietly( entry );
+    }
+
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Stores the response for a request, then evicts old entries if the cache is too large.
+   *
+   * @param request The optimize tours request.
+   * @param response The optimize tours response.
+   */
+  public void put( OptimizeToursRequest request, OptimizeToursResponse response )
+  {
+    Path entry = entryPath( cacheKey( request ) );
+    Path temporary = null;
+    try
+    {
+      // Write to a temporary file first so readers never see a partial entry
+      temporary = Files.createTempFile( directory, "response", ".tmp" );
+      Files.write( temporary, response.toByteArray() );
+      Files.move( temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      evict();
+    }
+    catch( IOException ex )
+    {
+      System.out.println( "\nWARNING! Cannot cache response: " + ex );
+      if( temporary != null )
+        deleteQuietly( temporary );
+    }
+  }
+
+  /**
+   * Gets the number of lookups that found a cached response.
+   *
+   * @return The hit count.
+   */
+  public long getHitCount()
+  {
+    return hits.get();
+  }
+
+  /**
+   * Gets the number of lookups that did not find a cached response.
+   *
+   * @return The miss count.
+   */
+  public long getMissCount()
+  {
+    return misses.get();
+  }
+
+  /**
+   * Gets the number of entries deleted to keep the cache under its size limit.
+   *
+   * @return The eviction count.
+   */
+  public long getEvictionCount()
+  {
+    return evictions.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "ResponseCache{directory=%s, hits=%d, misses=%d, evictions=%d}",
+        directory, hits.get(), misses.get(), evictions.get() );
+  }
+
+  private Path entryPath( String key )
+  {
+    return directory.resolve( key + ENTRY_EXTENSION );
+  }
+
+  private synchronized void evict() throws IOException
+  {
+    List<Path> entries = new ArrayList<>();
+    long totalBytes = 0;
+    try( DirectoryStream<Path> stream = Files.newDirectoryStream( directory, "*" + ENTRY_EXTENSION ) )
+    {
+      for( Path entry : stream ) {
+        entries.add( entry );
+        totalBytes += Files.size( entry );
+      }
+    }
+
+    if( totalBytes <= maxBytes )
+      return;
+
+    entries.sort( Comparator.comparing( ResponseCache::lastModified ) );
+    for( Path entry : entries ) {
+      if( totalBytes <= maxBytes )
+        break;
+      long size = Files.size( entry );
+      if( deleteQuietly( entry ) )
+      {
+        totalBytes -= size;
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private static FileTime lastModified( Path entry )
+  {
+    try
+    {
+      return Files.getLastModifiedTime( entry );
+    }
+    catch( IOException ex )
+    {
+      return FileTime.fromMillis( 0 );
+    }
+  }
+
+  private static boolean deleteQuietly( Path path )
+  {
+    try
+    {
+      return Files.deleteIfExists( path );
+    }
+    catch( IOException ex )
+    {
+      return false;
+    }
+  }
+}
@@ -14,12 +14,17 @@
 
 package com.google.maps.app;
 
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import com.google.api.gax.core.NoCredentialsProvider;
 import com.google.auto.value.AutoValue;
 import com.google.protobuf.Duration;
 import com.google.protobuf.FieldMask;
@@ -28,6 +33,7 @@ import com.google.protobuf.Timestamp;
 import com.google.type.LatLng;
 
 import com.google.maps.routeoptimization.v1.RouteOptimizationClient;
+import com.google.maps.routeoptimization.v1.RouteOptimizationSettings;
 import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
 import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
 import com.google.maps.routeoptimization.v1.Shipment;
@@ -42,8 +48,163 @@ import com.google.maps.routeoptimization.v1.Vehicle;
  */
 public class RouteOptimizationHelper {
 
+  // Shared by every optimization call; created on first use and closed when the JVM exits.
+  private static volatile RouteOptimizationClient sharedClient;
+  // Settings of the shared client, or null for the default endpoint and credentials.
+  private static volatile RouteOptimizationSettings clientSettings;
+  // Optional cache of previous responses, disabled when null.
+  private static volatile ResponseCache responseCache;
+  // Optional cache of travel durations and distances, disabled when null.
+  private static volatile MatrixCache matrixCache;
+
+  static
+  {
+    Runtime.getRuntime().addShutdownHook( new Thread( RouteOptimizationHelper::closeRouteOptimizationClient ) );
+  }
+
+  /**
+   * Gets the shared Route Optimization client, creating it on first use.
+   * The client owns a gRPC channel and thread pools, so it is reused across calls
+   * instead of being created and shut down for every request.
+   *
+   * @return The shared Route Optimization client.
+   * @throws IOException If the client cannot be created.
+   */
+  public static RouteOptimizationClient getRouteOptimizationClient() throws IOException
+  {
+    RouteOptimizationClient client = sharedClient;
+    if( client == null )
+    {
+      synchronized( RouteOptimizationHelper.class )
+      {
+        client = sharedClient;
+        if( client == null )
+        {
+          RouteOptimizationSettings settings = clientSettings;
+          client = settings == null ? RouteOptimizationClient.create() : RouteOptimizationClient.create( settings );
+          sharedClient = client;
+        }
+      }
+    }
+
+    return client;
+  }
+
+  /**
+   * Sets the settings used to create the shared client, for example to use another endpoint.
+   * The current shared client is closed, and the next call creates one with the new settings.
+   *
+   * @param settings The client settings, or null for the default endpoint and credentials.
+   */
+  public static void setClientSettings( RouteOptimizationSettings settings )
+  {
+    clientSettings = settings;
+    closeRouteOptimizationClient();
+  }
+
+  /**
+   * Points the shared client at a local plaintext endpoint without credentials, such as a stand-in server.
+   *
+   * @param address The address of the endpoint, in host:port form.
+   * @throws IOException If the settings cannot be built.
+   */
+  public static void setLocalEndpoint( String address ) throws IOException
+  {
+    setClientSettings( RouteOptimizationSettings.newBuilder()
+        .setEndpoint( address )
+        .setCredentialsProvider( NoCredentialsProvider.create() )
+        .setTransportChannelProvider( RouteOptimizationSettings.defaultGrpcTransportProviderBuilder()
+            .setChannelConfigurator( builder -> builder.usePlaintext() )
+            .build() )
+        .build() );
+  }
+
+  /**
+   * Creates the shared client ahead of the first optimization so that credential
+   * loading and channel setup do not add to the latency of the first request.
+   */
+  public static void warmUp()
+  {
+    try
+    {
+      getRouteOptimizationClient();
+    }
+    catch( IOException ex )
+    {
+      System.out.println( "\nERROR! Cannot create RouteOptimizationClient: \n" + ex );
+    }
+  }
+
+  /**
+   * Sets the cache consulted by callCloudFleetRouting before calling the API.
+   *
+   * @param cache The response cache, or null to disable caching.
+   */
+  public static void setResponseCache( ResponseCache cache )
+  {
+    responseCache = cache;
+  }
+
+  /**
+   * Gets the cache consulted by callCloudFleetRouting.
+   *
+   * @return The response cache, or null if caching is disabled.
+   */
+  public static ResponseCache getResponseCache()
+  {
+    return responseCache;
+  }
+
+  /**
+   * Sets the matrix cache that fills the travel matrices of requests sent by callCloudFleetRouting
+   * and learns from their responses.
+   *
+   * @param cache The matrix cache, or null to let the API compute every travel cost.
+   */
+  public static void setMatrixCache( MatrixCache cache )
+  {
+    matrixCache = cache;
+  }
+
+  /**
+   * Gets the matrix cache used by callCloudFleetRouting.
+   *
+   * @return The matrix cache, or null if it is disabled.
+   */
+  public static MatrixCache getMatrixCache()
+  {
+    return matrixCache;
+  }
+
+  /**
+   * Closes the shared client. A later call to getRouteOptimizationClient creates a new one.
+   */
+  public static void closeRouteOptimizationClient()
+  {
+    RouteOptimizationClient client;
+    synchronized( RouteOptimizationHelper.class )
+    {
+      client = sharedClient;
+      sharedClient = null;
+    }
+
+    if( client != null )
+    {
+      client.shutdown();
+      try
+      {
+        client.awaitTermination( 5, TimeUnit.SECONDS );
+      }
+      catch( InterruptedException ex )
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   /**
    * Builds a fleet routing request from a model file.
+   * The model can be in text or binary format, see ModelLoader for the supported extensions.
    *
    * @param projectParent The project parent.
    * @param modelPath The path to the model file.
@@ -53,20 +214,21 @@ public class RouteOptimizationHelper {
   public static OptimizeToursRequest buildFleetRoutingRequest(String projectParent, String modelPath) throws Exception
   {
     int timeoutSeconds = 100;
-    InputStream modelInputstream = new FileInputStream(modelPath);
-    Reader modelInputStreamReader = new InputStreamReader(modelInputstream);
     OptimizeToursRequest.Builder requestBuilder =
         OptimizeToursRequest.newBuilder()
             .setTimeout(Duration.newBuilder().setSeconds(timeoutSeconds).build())
             .setParent(projectParent);
 
-    TextFormat.getParser().merge(modelInputStreamReader, requestBuilder);
+    ModelLoader.mergeModel(modelPath, requestBuilder);
 
     return requestBuilder.build();
   }
 
   /**
    * Calls the Cloud Fleet Routing API to optimize tours.
+   * If a response cache is set, an identical earlier request is answered from the cache.
+   * If a matrix cache is set, the request sent to the API carries travel matrices from the cache
+   * when it knows enough of the location pairs, and otherwise the cache learns from the response.
    *
    * @param request The optimize tours request.
    * @return The optimize tours response.
@@ -74,9 +236,29 @@ public class RouteOptimizationHelper {
    */
   public static OptimizeToursResponse callCloudFleetRouting(OptimizeToursRequest request) throws Exception {
 
-    RouteOptimizationClient fleetRoutingClient = RouteOptimizationClient.create();
-    OptimizeToursResponse response = fleetRoutingClient.optimizeTours(request);
-    fleetRoutingClient.shutdown();
+    ResponseCache cache = responseCache;
+    OptimizeToursResponse response = cache == null ? null : cache.get(request);
+    if( response != null )
+    {
+      System.out.println("Using cached optimization response");
+    }
+    else
+    {
+      MatrixCache matrices = matrixCache;
+      OptimizeToursRequest sentRequest = matrices == null ? request : matrices.fill(request);
+
+      RouteOptimizationClient fleetRoutingClient = getRouteOptimizationClient();
+      try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.OPTIMIZE_TOURS ) )
+      {
+        response = fleetRoutingClient.optimizeTours(sentRequest);
+        timer.success();
+      }
+      // Transitions only reflect the road network when the API computed them itself
+      if( matrices != null && sentRequest == request )
+        matrices.learn(request, response);
+      if( cache != null )
+        cache.put(request, response);
+    }
 
     // Check metrics for unused vehicles or skipped shipments
     int usedVehicles = response.getMetrics().getUsedVehicleCount();
@@ -89,8 +271,88 @@ public class RouteOptimizationHelper {
     return response;
   }
 
+  /**
+   * Optimizes a large request by splitting it into regions that are solved concurrently.
+   * Each region starts from its share of the injected first solution routes, if any.
+   * Shipments skipped by their region are moved to the nearest other region, which is solved
+   * again starting from its first solution, and the regional solutions are merged into a
+   * response that uses the indices of the full request.
+   *
+   * @param request The full optimize tours request.
+   * @param regionCount The number of regions to split the request into.
+   * @param parallelism The maximum number of regions solved at the same time.
+   * @return The merged optimize tours response.
+   * @throws Exception If there is an error calling the API.
+   */
+  public static OptimizeToursResponse callCloudFleetRoutingDecomposed( OptimizeToursRequest request, int regionCount, int parallelism ) throws Exception
+  {
+    long startMillis = System.currentTimeMillis();
+    GeoDecomposer decomposer = GeoDecomposer.of( request, regionCount );
+    List<GeoDecomposer.Region> regions = new ArrayList<>( decomposer.getRegions() );
+    System.out.println( "Decomposed " + request.getModel().getShipmentsCount() + " shipments into " + regions );
+
+    ArrayList<OptimizeToursRequest> subRequests = new ArrayList<>();
+    for( GeoDecomposer.Region region : regions )
+      subRequests.add( decomposer.buildSubRequest( region, decomposer.injectedRoutes( region ) ) );
+    List<OptimizeToursResponse> responses = new ArrayList<>( solveConcurrently( subRequests, parallelism ) );
+
+    // Rebalance: give skipped shipments a second chance in the nearest other region
+    Map<Integer, List<Integer>> moves = decomposer.rebalanceTargets( regions, responses );
+    if( !moves.isEmpty() )
+    {
+      ArrayList<Integer> rebalancedRegions = new ArrayList<>( moves.keySet() );
+      ArrayList<OptimizeToursRequest> rebalanceRequests = new ArrayList<>();
+      for( int r : rebalancedRegions ) {
+        GeoDecomposer.Region extended = regions.get(r).withExtraShipments( moves.get(r) );
+        regions.set( r, extended );
+        rebalanceRequests.add( decomposer.buildSubRequest( extended, responses.get(r).getRoutesList() ) );
+      }
+      System.out.println( "Rebalancing skipped shipments into " + rebalancedRegions.size() + " region(s)" );
+
+      List<OptimizeToursResponse> rebalanced = solveConcurrently( rebalanceRequests, parallelism );
+      for (int i = 0; i < rebalancedRegions.size(); i++ )
+        responses.set( rebalancedRegions.get(i), rebalanced.get(i) );
+    }
+
+    OptimizeToursResponse merged = decomposer.merge( regions, responses );
+    System.out.printf( "Decomposed optimization done in %d ms: %d vehicles used, %d mandatory shipment(s) skipped\n",
+        System.currentTimeMillis() - startMillis, merged.getMetrics().getUsedVehicleCount(), merged.getMetrics().getSkippedMandatoryShipmentCount() );
+    return merged;
+  }
+
+  private static List<OptimizeToursResponse> solveConcurrently( List<OptimizeToursRequest> requests, int parallelism ) throws Exception
+  {
+    ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, Math.min( parallelism, requests.size() ) ) );
+    try
+    {
+      ArrayList<Future<OptimizeToursResponse>> futures = new ArrayList<>();
+      for( OptimizeToursRequest subRequest : requests )
+        futures.add( executor.submit( () -> callCloudFleetRouting( subRequest ) ) );
+
+      ArrayList<OptimizeToursResponse> responses = new ArrayList<>();
+      for( Future<OptimizeToursResponse> future : futures ) {
+        try
+        {
+          responses.add( future.get() );
+        }
+        catch( ExecutionException ex )
+        {
+          if( ex.getCause() instanceof Exception )
+            throw (Exception) ex.getCause();
+          throw ex;
+        }
+      }
+      return responses;
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * Gets the location of a visit.
+   * This scans the whole model; use a ShipmentModelIndex when looking up many visits.
    *
    * @param model The shipment model.
    * @param label The label of the visit.
@@ -100,11 +362,13 @@ public class RouteOptimizationHelper {
   {
     List<Shipment> shipments = model.getShipmentsList();
     for (int i=0; i< shipments.size(); i++ ) {
-      if( shipments.get(i).getDeliveriesList().get(0).getLabel().equals( label ) )
-        return shipments.get(i).getDeliveriesList().get(0).getArrivalLocation();
+      for( VisitRequest delivery : shipments.get(i).getDeliveriesList() )
+        if( delivery.getLabel().equals( label ) )
+          return delivery.getArrivalLocation();
 
-        if( shipments.get(i).getPickupsList().get(0).getLabel().equals( label ) )
-          return shipments.get(i).getPickupsList().get(0).getArrivalLocation();
+      for( VisitRequest pickup : shipments.get(i).getPickupsList() )
+        if( pickup.getLabel().equals( label ) )
+          return pickup.getArrivalLocation();
     }
 
     return null;
@@ -177,29 +441,16 @@ public class RouteOptimizationHelper {
 
   /**
    * Gets the start or end location of a vehicle.
+   * Build the ShipmentModelIndex once per model and reuse it across lookups.
    *
-   * @param model The shipment model.
+   * @param modelIndex The index of the shipment model.
    * @param vehicleFullName The full name of the vehicle.
    * @param isStart Whether to get the start location.
    * @return The start or end location of the vehicle.
    */
   // Make sure to have a Label in your model data, example label : "vehicle-UC2-1-555965d6-e186-11ec-8fea-0242ac120002"
-  public static LatLng getVehicleStartEndLocation( ShipmentModel model, String vehicleFullName, Boolean isStart )
+  public static LatLng getVehicleStartEndLocation( ShipmentModelIndex modelIndex, String vehicleFullName, Boolean isStart )
   {
-    List<Vehicle> vehicles = model.getVehiclesList();
-    for ( int i=0; i < vehicles.size(); i++ ) {
-      if( vehicleFullName.contains( vehicles.get(i).getLabel() ) ) //
-      {
-        LatLng point = null;
-        if( isStart )
-          point = vehicles.get(i).getStartLocation();
-        else
-          point = vehicles.get(i).getEndLocation();
-
-        return point;
-      }
-    }
-
-    return null;
+    return modelIndex.getVehicleStartEndLocation( vehicleFullName, isStart );
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,366 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Per-RPC latency histograms, call counts, error counts and in-flight gauges.
+ *
+ * Wrap each call in a Timer:
+ *   try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.CREATE_TASK ) )
+ *   {
+ *     task = client.createTask( request );
+ *     timer.success();
+ *   }
+ * A timer closed without success() counts as an error.
+ *
+ * The metrics can be printed, written to a file or served over HTTP in the Prometheus text format.
+ */
+public final class RpcMetrics {
+
+  public static final String OPTIMIZE_TOURS = "OptimizeTours";
+  public static final String CREATE_DELIVERY_VEHICLE = "CreateDeliveryVehicle";
+  public static final String GET_DELIVERY_VEHICLE = "GetDeliveryVehicle";
+  public static final String LIST_DELIVERY_VEHICLES = "ListDeliveryVehicles";
+  public static final String UPDATE_DELIVERY_VEHICLE = "UpdateDeliveryVehicle";
+  public static final String CREATE_TASK = "CreateTask";
+  public static final String GET_TASK = "GetTask";
+  public static final String UPDATE_TASK = "UpdateTask";
+  // Delivery server token signing, in the background and in the request path
+  public static final String MINT_TOKEN = "auth.MintToken";
+  public static final String MINT_TOKEN_BLOCKING = "auth.MintTokenBlocking";
+  // Application steps made of several RPCs
+  public static final String PUBLISH_ROUTE = "app.PublishRoute";
+  public static final String PUBLISH_PLAN = "app.PublishPlan";
+  // Planning server requests, from receiving the request to sending the response
+  public static final String SERVER_PLAN = "server.Plan";
+  public static final String SERVER_REOPTIMIZE = "server.Reoptimize";
+  public static final String SERVER_INSERT_SHIPMENT = "server.InsertShipment";
+  public static final String SERVER_PUBLISH = "server.Publish";
+
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  private static final Map<String, RpcStats> stats = new ConcurrentSkipListMap<>();
+  private static final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+  private static volatile long startNanos = System.nanoTime();
+  // Wall clock time of the first service RPC, 0 until then. Not cleared by reset().
+  private static final AtomicLong firstRpcMillis = new AtomicLong();
+
+  private RpcMetrics()
+  {
+  }
+
+  /**
+   * Statistics of one RPC type.
+   */
+  public static final class RpcStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    /**
+     * Gets the latency histogram of every finished call, successful or not.
+     *
+     * @return The latency histogram.
+     */
+    public LatencyHistogram getLatency()
+    {
+      return latency;
+    }
+
+    /**
+     * Gets the number of finished calls.
+     *
+     * @return The call count.
+     */
+    public long getCount()
+    {
+      return latency.getCount();
+    }
+
+    /**
+     * Gets the number of failed calls.
+     *
+     * @return The error count.
+     */
+    public long getErrorCount()
+    {
+      return errors.sum();
+    }
+
+    /**
+     * Gets the number of calls started but not finished.
+     *
+     * @return The in-flight count.
+     */
+    public long getInFlight()
+    {
+      return inFlight.get();
+    }
+  }
+
+  private static final class Gauge {
+    private final String help;
+    private final DoubleSupplier value;
+
+    Gauge( String help, DoubleSupplier value )
+    {
+      this.help = help;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Times one call. Call success() or failure() when the call completes; closing the
+   * timer before either records a failure, so it can be used in try-with-resources.
+   */
+  public static final class Timer implements AutoCloseable {
+    private final RpcStats rpcStats;
+    private final long startNanos = System.nanoTime();
+    private boolean stopped;
+
+    private Timer( RpcStats rpcStats )
+    {
+      this.rpcStats = rpcStats;
+      rpcStats.inFlight.incrementAndGet();
+    }
+
+    /**
+     * Records the call as successful.
+     */
+    public void success()
+    {
+      stop( false );
+    }
+
+    /**
+     * Records the call as failed.
+     */
+    public void failure()
+    {
+      stop( true );
+    }
+
+    @Override
+    public void close()
+    {
+      stop( true );
+    }
+
+    private synchronized void stop( boolean error )
+    {
+      if( stopped )
+        return;
+      stopped = true;
+
+      rpcStats.latency.record( ( System.nanoTime() - startNanos ) / 1000 );
+      if( error )
+        rpcStats.errors.increment();
+      rpcStats.inFlight.decrementAndGet();
+    }
+  }
+
+  /**
+   * Starts timing a call.
+   *
+   * @param rpc The RPC name.
+   * @return The timer of the call.
+   */
+  public static Timer start( String rpc )
+  {
+    // Service RPCs have no step prefix such as "auth." or "app."
+    if( firstRpcMillis.get() == 0 && rpc.indexOf( '.' ) < 0 )
+      firstRpcMillis.compareAndSet( 0, System.currentTimeMillis() );
+    return new Timer( get( rpc ) );
+  }
+
+  /**
+   * Gets the time from JVM start to the first Fleet Engine or Route Optimization call,
+   * which covers class loading, client creation and token signing.
+   *
+   * @return The time to first RPC in milliseconds, or -1 if no RPC was made yet.
+   */
+  public static long getTimeToFirstRpcMillis()
+  {
+    long first = firstRpcMillis.get();
+    return first == 0 ? -1 : first - ManagementFactory.getRuntimeMXBean().getStartTime();
+  }
+
+  /**
+   * Gets the statistics of an RPC type, creating them if needed.
+   *
+   * @param rpc The RPC name.
+   * @return The statistics.
+   */
+  public static RpcStats get( String rpc )
+  {
+    return stats.computeIfAbsent( rpc, name -> new RpcStats() );
+  }
+
+  /**
+   * Registers a gauge exported next to the RPC metrics, replacing any gauge with the same name.
+   *
+   * @param name The Prometheus metric name.
+   * @param help The description of the metric.
+   * @param value Reads the current value when the metrics are exported.
+   */
+  public static void registerGauge( String name, String help, DoubleSupplier value )
+  {
+    gauges.put( name, new Gauge( help, value ) );
+  }
+
+  /**
+   * Removes a gauge.
+   *
+   * @param name The Prometheus metric name.
+   */
+  public static void unregisterGauge( String name )
+  {
+    gauges.remove( name );
+  }
+
+  /**
+   * Clears every statistic. Calls in flight are still counted when they finish.
+   */
+  public static void reset()
+  {
+    for( RpcStats rpcStats : stats.values() ) {
+      rpcStats.latency.reset();
+      rpcStats.errors.reset();
+    }
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Formats the metrics in the Prometheus text exposition format.
+   * Latencies are exported as summaries in seconds.
+   *
+   * @return The metrics text.
+   */
+  public static String toPrometheusText()
+  {
+    StringBuilder text = new StringBuilder();
+
+    text.append( "# HELP fleet_rpc_latency_seconds Latency of finished calls.\n" );
+    text.append( "# TYPE fleet_rpc_latency_seconds summary\n" );
+    for( Map.Entry<String, RpcStats> entry : stats.entrySet() ) {
+      String rpc = entry.getKey();
+      LatencyHistogram latency = entry.getValue().latency;
+      for( double quantile : QUANTILES )
+        text.append( String.format( Locale.ROOT, "fleet_rpc_latency_seconds{rpc=\"%s\",quantile=\"%s\"} %.6f\n",
+            rpc, quantile, latency.getValueAtPercentile( quantile * 100 ) / 1e6 ) );
+      text.append( String.format( Locale.ROOT, "fleet_rpc_latency_seconds_sum{rpc=\"%s\"} %.6f\n", rpc, latency.getSumMicros() / 1e6 ) );
+      text.append( String.format( Locale.ROOT, "fleet_rpc_latency_seconds_count{rpc=\"%s\"} %d\n", rpc, latency.getCount() ) );
+    }
+
+    text.append( "# HELP fleet_rpc_errors_total Calls that failed.\n" );
+    text.append( "# TYPE fleet_rpc_errors_total counter\n" );
+    for( Map.Entry<String, RpcStats> entry : stats.entrySet() )
+      text.append( String.format( Locale.ROOT, "fleet_rpc_errors_total{rpc=\"%s\"} %d\n", entry.getKey(), entry.getValue().getErrorCount() ) );
+
+    text.append( "# HELP fleet_rpc_in_flight Calls started but not finished.\n" );
+    text.append( "# TYPE fleet_rpc_in_flight gauge\n" );
+    for( Map.Entry<String, RpcStats> entry : stats.entrySet() )
+      text.append( String.format( Locale.ROOT, "fleet_rpc_in_flight{rpc=\"%s\"} %d\n", entry.getKey(), entry.getValue().getInFlight() ) );
+
+    for( Map.Entry<String, Gauge> entry : gauges.entrySet() ) {
+      text.append( "# HELP " ).append( entry.getKey() ).append( ' ' ).append( entry.getValue().help ).append( '\n' );
+      text.append( "# TYPE " ).append( entry.getKey() ).append( " gauge\n" );
+      text.append( String.format( Locale.ROOT, "%s %.3f\n", entry.getKey(), entry.getValue().value.getAsDouble() ) );
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Writes the metrics in the Prometheus text format to a file, replacing it atomically
+   * so a collector reading the file never sees a partial write.
+   *
+   * @param path The file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void writeToFile( Path path ) throws IOException
+  {
+    Path absolute = path.toAbsolutePath();
+    Path temporary = Files.createTempFile( absolute.getParent(), "metrics", ".tmp" );
+    try
+    {
+      Files.write( temporary, toPrometheusText().getBytes( StandardCharsets.UTF_8 ) );
+      Files.move( temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+    finally
+    {
+      Files.deleteIfExists( temporary );
+    }
+  }
+
+  /**
+   * Starts an HTTP server answering GET /metrics with the Prometheus text format.
+   *
+   * @param port The port to listen on, or 0 for any free port.
+   * @return The started server. Stop it when done.
+   * @throws IOException If the server cannot be started.
+   */
+  public static HttpServer startHttpServer( int port ) throws IOException
+  {
+    HttpServer server = HttpServer.create( new InetSocketAddress( port ), 0 );
+    server.createContext( "/metrics", exchange -> {
+      byte[] body = toPrometheusText().getBytes( StandardCharsets.UTF_8 );
+      exchange.getResponseHeaders().set( "Content-Type", "text/plain; version=0.0.4; charset=utf-8" );
+      exchange.sendResponseHeaders( 200, body.length );
+      try( OutputStream out = exchange.getResponseBody() )
+      {
+        out.write( body );
+      }
+    } );
+    server.start();
+    return server;
+  }
+
+  /**
+   * Prints a table of call counts, throughput and latency percentiles.
+   */
+  public static void printReport()
+  {
+    double elapsedSeconds = Math.max( 1e-3, ( System.nanoTime() - startNanos ) / 1e9 );
+    System.out.println( "\nRPC metrics:" );
+    if( getTimeToFirstRpcMillis() >= 0 )
+      System.out.println( "Time to first RPC: " + getTimeToFirstRpcMillis() + " ms" );
+    System.out.printf( "%-24s %8s %7s %9s %10s %10s %10s\n", "rpc", "calls", "errors", "calls/s", "p50 ms", "p99 ms", "max ms" );
+    for( Map.Entry<String, RpcStats> entry : stats.entrySet() ) {
+      RpcStats rpcStats = entry.getValue();
+      LatencyHistogram latency = rpcStats.latency;
+      System.out.printf( Locale.ROOT, "%-24s %8d %7d %9.1f %10.1f %10.1f %10.1f\n",
+          entry.getKey(), latency.getCount(), rpcStats.getErrorCount(), latency.getCount() / elapsedSeconds,
+          latency.getValueAtPercentile( 50 ) / 1e3, latency.getValueAtPercentile( 99 ) / 1e3, latency.getMaxMicros() / 1e3 );
+    }
+  }
+}
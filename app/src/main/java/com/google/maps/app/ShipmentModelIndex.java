@@ -0,0 +1,186 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.app;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.type.LatLng;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.Shipment.VisitRequest;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+/**
+ * Immutable lookup tables over a shipment model.
+ * Build it once per OptimizeToursRequest and share it between threads; every lookup is O(1).
+ */
+public final class ShipmentModelIndex {
+
+  private final ShipmentModel model;
+  private final Map<String, VisitRequest> visitRequestsByLabel;
+  private final Map<String, Vehicle> vehiclesByLabel;
+
+  private ShipmentModelIndex( ShipmentModel model )
+  {
+    this.model = model;
+
+    HashMap<String, VisitRequest> visitRequests = new HashMap<>();
+    for( Shipment shipment : model.getShipmentsList() ) {
+      // Deliveries first, matching the lookup order of RouteOptimizationHelper.getVisitLocation
+      for( VisitRequest delivery : shipment.getDeliveriesList() )
+        visitRequests.putIfAbsent( delivery.getLabel(), delivery );
+      for( VisitRequest pickup : shipment.getPickupsList() )
+        visitRequests.putIfAbsent( pickup.getLabel(), pickup );
+    }
+    this.visitRequestsByLabel = Collections.unmodifiableMap( visitRequests );
+
+    HashMap<String, Vehicle> vehicles = new HashMap<>();
+    for( Vehicle vehicle : model.getVehiclesList() )
+      vehicles.putIfAbsent( vehicle.getLabel(), vehicle );
+    this.vehiclesByLabel = Collections.unmodifiableMap( vehicles );
+  }
+
+  /**
+   * Builds the index for the model of a request.
+   *
+   * @param request The optimize tours request.
+   * @return The index.
+   */
+  public static ShipmentModelIndex of( OptimizeToursRequest request )
+  {
+    return of( request.getModel() );
+  }
+
+  /**
+   * Builds the index for a shipment model.
+   *
+   * @param model The shipment model.
+   * @return The index.
+   */
+  public static ShipmentModelIndex of( ShipmentModel model )
+  {
+    return new ShipmentModelIndex( model );
+  }
+
+  /**
+   * Gets the indexed shipment model.
+   *
+   * @return The shipment model.
+   */
+  public ShipmentModel getModel()
+  {
+    return model;
+  }
+
+  /**
+   * Gets a visit request by its label.
+   *
+   * @param label The label of the visit request.
+   * @return The visit request, or null if no visit request has this label.
+   */
+  public VisitRequest getVisitRequest( String label )
+  {
+    return visitRequestsByLabel.get( label );
+  }
+
+  /**
+   * Gets a visit request by its position in the model.
+   *
+   * @param shipmentIndex The index of the shipment.
+   * @param isPickup Whether the visit request is a pickup or a delivery.
+   * @param visitRequestIndex The index of the visit request in the pickups or deliveries of the shipment.
+   * @return The visit request, or null if the indices are out of range.
+   */
+  public VisitRequest getVisitRequest( int shipmentIndex, boolean isPickup, int visitRequestIndex )
+  {
+    if( shipmentIndex < 0 || shipmentIndex >= model.getShipmentsCount() )
+      return null;
+
+    Shipment shipment = model.getShipments( shipmentIndex );
+    List<VisitRequest> visitRequests = isPickup ? shipment.getPickupsList() : shipment.getDeliveriesList();
+    if( visitRequestIndex < 0 || visitRequestIndex >= visitRequests.size() )
+      return null;
+
+    return visitRequests.get( visitRequestIndex );
+  }
+
+  /**
+   * Gets the visit request a route visit was planned for.
+   *
+   * @param visit The visit of a shipment route.
+   * @return The visit request, or null if it is not part of the model.
+   */
+  public VisitRequest getVisitRequest( Visit visit )
+  {
+    return getVisitRequest( visit.getShipmentIndex(), visit.getIsPickup(), visit.getVisitRequestIndex() );
+  }
+
+  /**
+   * Gets the location of a visit request by its label.
+   *
+   * @param label The label of the visit request.
+   * @return The arrival location, or null if no visit request has this label.
+   */
+  public LatLng getVisitLocation( String label )
+  {
+    VisitRequest visitRequest = getVisitRequest( label );
+    return visitRequest == null ? null : visitRequest.getArrivalLocation();
+  }
+
+  /**
+   * Gets the location of a route visit.
+   *
+   * @param visit The visit of a shipment route.
+   * @return The arrival location, or null if the visit is not part of the model.
+   */
+  public LatLng getVisitLocation( Visit visit )
+  {
+    VisitRequest visitRequest = getVisitRequest( visit );
+    return visitRequest == null ? null : visitRequest.getArrivalLocation();
+  }
+
+  /**
+   * Gets a vehicle by its label.
+   *
+   * @param label The label of the vehicle.
+   * @return The vehicle, or null if no vehicle has this label.
+   */
+  public Vehicle getVehicle( String label )
+  {
+    return vehiclesByLabel.get( label );
+  }
+
+  /**
+   * Gets the start or end location of a vehicle.
+   *
+   * @param vehicleFullName The vehicle label, or a full Fleet Engine name ending with it.
+   * @param isStart Whether to get the start location.
+   * @return The start or end location of the vehicle, or null if the vehicle is unknown.
+   */
+  public LatLng getVehicleStartEndLocation( String vehicleFullName, boolean isStart )
+  {
+    Vehicle vehicle = getVehicle( App.stripFullPathFromId( vehicleFullName ) );
+    if( vehicle == null )
+      return null;
+
+    return isStart ? vehicle.getStartLocation() : vehicle.getEndLocation();
+  }
+}
@@ -0,0 +1,265 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.type.LatLng;
+
+import google.maps.fleetengine.delivery.v1.DeliveryServiceClient;
+import google.maps.fleetengine.delivery.v1.DeliveryServiceClient.ListDeliveryVehiclesPagedResponse;
+import google.maps.fleetengine.delivery.v1.DeliveryVehicle;
+import google.maps.fleetengine.delivery.v1.ListDeliveryVehiclesRequest;
+
+/**
+ * Cache of the delivery vehicles that exist in Fleet Engine for a provider.
+ *
+ * All vehicles are loaded with one paged ListDeliveryVehicles sweep, which is repeated once
+ * the cache is older than its time to live. Only the vehicles missing from the cache are
+ * created, in parallel, instead of trying a create for every vehicle and catching
+ * AlreadyExistsException. A vehicle Fleet Engine reports as not found is forgotten, so it is
+ * created again even if an earlier publish recorded it as created.
+ */
+public class VehicleRegistry {
+
+  // Largest page accepted by ListDeliveryVehicles
+  private static final int PAGE_SIZE = 500;
+
+  /**
+   * Creates a delivery vehicle in Fleet Engine.
+   */
+  @FunctionalInterface
+  public interface VehicleCreator {
+    /**
+     * Creates a delivery vehicle.
+     *
+     * @param vehicleId The vehicle ID.
+     * @param location The initial location of the vehicle.
+     * @return The delivery vehicle.
+     * @throws Exception If the vehicle cannot be created.
+     */
+    DeliveryVehicle create( String vehicleId, LatLng location ) throws Exception;
+  }
+
+  private final DeliveryServiceClient client;
+  private final String providerId;
+  private final long ttlMillis;
+  private final Map<String, DeliveryVehicle> vehicles = new ConcurrentHashMap<>();
+  private final Set<String> missing = ConcurrentHashMap.newKeySet();
+  private volatile long loadedAtMillis = -1;
+
+  /**
+   * Creates an empty registry. Vehicles are loaded on first use.
+   *
+   * @param client The delivery service client.
+   * @param providerId The provider ID.
+   * @param ttlMillis How long a sweep is trusted before vehicles are listed again.
+   */
+  public VehicleRegistry( DeliveryServiceClient client, String providerId, long ttlMillis )
+  {
+    this.client = client;
+    this.providerId = providerId;
+    this.ttlMillis = ttlMillis;
+  }
+
+  /**
+   * Gets the client the registry lists and creates vehicles with.
+   *
+   * @return The delivery service client.
+   */
+  public DeliveryServiceClient getClient()
+  {
+    return client;
+  }
+
+  /**
+   * Lists every delivery vehicle of the provider and replaces the cached ones.
+   */
+  public synchronized void refresh()
+  {
+    long startMillis = System.currentTimeMillis();
+    HashMap<String, DeliveryVehicle> listed = new HashMap<>();
+    ListDeliveryVehiclesRequest request = ListDeliveryVehiclesRequest.newBuilder()
+        .setParent( String.format( "providers/%s", providerId ) )
+        .setPageSize( PAGE_SIZE )
+        .build();
+
+    // Pages are fetched while iterating, so the timer covers the whole sweep
+    try( RpcMetrics.Timer timer = RpcMetrics.start( RpcMetrics.LIST_DELIVERY_VEHICLES ) )
+    {
+      ListDeliveryVehiclesPagedResponse response = client.listDeliveryVehicles( request );
+      for( DeliveryVehicle vehicle : response.iterateAll() )
+        listed.put( App.stripFullPathFromId( vehicle.getName() ), vehicle );
+      timer.success();
+    }
+
+    vehicles.keySet().retainAll( listed.keySet() );
+    vehicles.putAll( listed );
+    missing.removeAll( listed.keySet() );
+    loadedAtMillis = System.currentTimeMillis();
+    System.out.printf( "Listed %d delivery vehicles in %d ms\n", listed.size(), loadedAtMillis - startMillis );
+  }
+
+  /**
+   * Gets a cached vehicle, listing the vehicles first if the cache has expired.
+   *
+   * @param vehicleId The vehicle ID.
+   * @return The vehicle, or null if it does not exist.
+   */
+  public DeliveryVehicle get( String vehicleId )
+  {
+    refreshIfExpired();
+    return vehicles.get( vehicleId );
+  }
+
+  /**
+   * Makes sure vehicles exist, creating the ones missing from the registry in parallel.
+   * The creates run on the given executor, so it must not be the thread pool of the caller.
+   *
+   * @param locations The initial location of each vehicle, by vehicle ID.
+   * @param creator Creates a missing vehicle.
+   * @param executor The executor the creates run on.
+   * @return The vehicles, by vehicle ID. Vehicles that could not be created are left out.
+   * @throws InterruptedException If interrupted while waiting for the creates.
+   */
+  public Map<String, DeliveryVehicle> ensureVehicles( Map<String, LatLng> locations, VehicleCreator creator, ExecutorService executor ) throws InterruptedException
+  {
+    refreshIfExpired();
+
+    HashMap<String, DeliveryVehicle> result = new HashMap<>();
+    ArrayList<String> absent = new ArrayList<>();
+    for( String vehicleId : locations.keySet() ) {
+      DeliveryVehicle vehicle = vehicles.get( vehicleId );
+      if( vehicle != null )
+        result.put( vehicleId, vehicle );
+      else
+        absent.add( vehicleId );
+    }
+
+    if( absent.isEmpty() )
+      return result;
+
+    List<Future<DeliveryVehicle>> futures = new ArrayList<>();
+    try
+    {
+      for( String vehicleId : absent )
+        futures.add( executor.submit( () -> creator.create( vehicleId, locations.get( vehicleId ) ) ) );
+
+      for (int i = 0; i < absent.size(); i++ ) {
+        String vehicleId = absent.get(i);
+        try
+        {
+          DeliveryVehicle vehicle = futures.get(i).get();
+          vehicles.put( vehicleId, vehicle );
+          missing.remove( vehicleId );
+          result.put( vehicleId, vehicle );
+        }
+        catch( ExecutionException ex )
+        {
+          System.out.println( "Error creating delivery vehicle '" + vehicleId + "': " + ex.getCause() );
+        }
+      }
+    }
+    finally
+    {
+      // The executor is shared, so stop only the creates of this call if it was interrupted
+      for( Future<DeliveryVehicle> future : futures )
+        future.cancel( true );
+    }
+
+    System.out.printf( "Created %d of %d missing delivery vehicles, %d already existed\n",
+        result.size() - ( locations.size() - absent.size() ), absent.size(), locations.size() - absent.size() );
+    return result;
+  }
+
+  /**
+   * Forgets a vehicle after Fleet Engine reported it as not found, for example because it was
+   * deleted outside the app. It stays known as missing until it is listed or created again.
+   *
+   * @param vehicleId The vehicle ID.
+   */
+  public void forget( String vehicleId )
+  {
+    vehicles.remove( vehicleId );
+    missing.add( vehicleId );
+  }
+
+  /**
+   * Checks whether a vehicle was forgotten because Fleet Engine reported it as not found.
+   *
+   * @param vehicleId The vehicle ID.
+   * @return True if the vehicle must be created again.
+   */
+  public boolean isMissing( String vehicleId )
+  {
+    return missing.contains( vehicleId );
+  }
+
+  /**
+   * Expires the cache, so the next lookup lists the vehicles again.
+   */
+  public void invalidate()
+  {
+    loadedAtMillis = -1;
+  }
+
+  /**
+   * Gets the number of cached vehicles.
+   *
+   * @return The number of vehicles.
+   */
+  public int size()
+  {
+    return vehicles.size();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "VehicleRegistry{provider=%s, vehicles=%d, ageMillis=%d}",
+        providerId, vehicles.size(), loadedAtMillis < 0 ? -1 : System.currentTimeMillis() - loadedAtMillis );
+  }
+
+  private void refreshIfExpired()
+  {
+    long loadedAt = loadedAtMillis;
+    if( loadedAt < 0 || System.currentTimeMillis() - loadedAt > ttlMillis )
+    {
+      synchronized( this )
+      {
+        loadedAt = loadedAtMillis;
+        if( loadedAt < 0 || System.currentTimeMillis() - loadedAt > ttlMillis )
+        {
+          try
+          {
+            refresh();
+          }
+          catch( RuntimeException ex )
+          {
+            // Keep what is cached; vehicles missing from it are created and an existing one is reported as such
+            System.out.println( "\nWARNING! Cannot list delivery vehicles: " + ex );
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.Status;
+
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+    private static ApiException failure(Status.Code code) {
+        return ApiExceptionFactory.createException(new RuntimeException(code.name()), GrpcStatusCode.of(code), false);
+    }
+
+    private static Integer sleepAndReturn(int value) {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+
+    @Test void testInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter(4, 0, 8, 0.5, 3));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter(4, 8, 4, 0.5, 3));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter(4, 1, 8, 1.0, 3));
+    }
+
+    @Test void testInitialLimitClamped() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(100, 1, 8, 0.5, 3);
+        assertEquals(8, limiter.getLimit());
+        limiter.close();
+    }
+
+    @Test void testIncreaseOnSteadyLatency() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 64, 0.5, 3);
+        for (int i = 0; i < 50; i++) {
+            int value = i;
+            assertEquals(value, (int) limiter.call(() -> sleepAndReturn(value)));
+        }
+        assertTrue(limiter.getLimit() > 4, limiter.toString());
+        assertEquals(0, limiter.getInFlight());
+        limiter.close();
+    }
+
+    @Test void testDecreaseOnThrottling() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(8, 1, 64, 0.5, 1);
+        ApiException thrown = assertThrows(ApiException.class, () -> limiter.call(() -> {
+            throw failure(Status.Code.RESOURCE_EXHAUSTED);
+        }));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED.name(), thrown.getStatusCode().getCode().name());
+        assertEquals(4, limiter.getLimit());
+        assertEquals(1, limiter.getThrottledCount());
+        assertEquals(0, limiter.getInFlight());
+        limiter.close();
+    }
+
+    @Test void testRetryUnavailable() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 64, 0.5, 3);
+        AtomicInteger attempts = new AtomicInteger();
+        String result = limiter.call(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw failure(Status.Code.UNAVAILABLE);
+            }
+            return "done";
+        });
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, limiter.getRetryCount());
+        assertEquals(0, limiter.getThrottledCount());
+        limiter.close();
+    }
+
+    @Test void testRetriesExhausted() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 64, 0.5, 2);
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(ApiException.class, () -> limiter.call(() -> {
+            attempts.incrementAndGet();
+            throw failure(Status.Code.DEADLINE_EXCEEDED);
+        }));
+        assertEquals(2, attempts.get());
+        assertEquals(1, limiter.getRetryCount());
+        assertEquals(2, limiter.getThrottledCount());
+        limiter.close();
+    }
+
+    @Test void testNotRetryable() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 64, 0.5, 3);
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(ApiException.class, () -> limiter.call(() -> {
+            attempts.incrementAndGet();
+            throw failure(Status.Code.NOT_FOUND);
+        }));
+        assertThrows(IllegalStateException.class, () -> limiter.call(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException();
+        }));
+        assertEquals(2, attempts.get());
+        assertEquals(0, limiter.getRetryCount());
+        assertEquals(4, limiter.getLimit());
+        limiter.close();
+    }
+}
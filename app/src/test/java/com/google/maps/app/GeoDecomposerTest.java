@@ -0,0 +1,152 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.type.LatLng;
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.Shipment.VisitRequest;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeoDecomposerTest {
+    private static final double SF_LAT = 37.77;
+    private static final double SF_LNG = -122.42;
+    private static final double LA_LAT = 34.05;
+    private static final double LA_LNG = -118.24;
+
+    private static LatLng latLng(double latitude, double longitude) {
+        return LatLng.newBuilder().setLatitude(latitude).setLongitude(longitude).build();
+    }
+
+    private static Shipment shipment(String label, double latitude, double longitude, Integer... allowedVehicles) {
+        return Shipment.newBuilder()
+            .setLabel(label)
+            .addDeliveries(VisitRequest.newBuilder().setLabel(label + "-d").setArrivalLocation(latLng(latitude, longitude)))
+            .addAllAllowedVehicleIndices(Arrays.asList(allowedVehicles))
+            .build();
+    }
+
+    private static Vehicle vehicle(String label, double latitude, double longitude) {
+        return Vehicle.newBuilder().setLabel(label).setStartLocation(latLng(latitude, longitude)).build();
+    }
+
+    private static ShipmentModel twoCityModel() {
+        return ShipmentModel.newBuilder()
+            .addShipments(shipment("sf1", SF_LAT, SF_LNG))
+            .addShipments(shipment("sf2", SF_LAT + 0.01, SF_LNG))
+            .addShipments(shipment("la1", LA_LAT, LA_LNG))
+            .addShipments(shipment("la2", LA_LAT + 0.01, LA_LNG))
+            .addVehicles(vehicle("sf", SF_LAT, SF_LNG))
+            .addVehicles(vehicle("la", LA_LAT, LA_LNG))
+            .build();
+    }
+
+    private static int[] vehicleRegions(GeoDecomposer decomposer, int vehicleCount) {
+        int[] regionOf = new int[vehicleCount];
+        Arrays.fill(regionOf, -1);
+        for (GeoDecomposer.Region region : decomposer.getRegions()) {
+            for (int v : region.getVehicleIndices()) {
+                assertEquals(-1, regionOf[v], "vehicle " + v + " is in two regions");
+                regionOf[v] = region.getId();
+            }
+        }
+        return regionOf;
+    }
+
+    @Test void testTwoClusters() {
+        GeoDecomposer decomposer = GeoDecomposer.of(OptimizeToursRequest.newBuilder().setModel(twoCityModel()).build(), 2);
+        List<GeoDecomposer.Region> regions = decomposer.getRegions();
+
+        assertEquals(2, regions.size());
+        int[] regionOf = vehicleRegions(decomposer, 2);
+        assertNotEquals(regionOf[0], regionOf[1]);
+        for (GeoDecomposer.Region region : regions) {
+            assertEquals(2, region.getShipmentIndices().length);
+            assertEquals(1, region.getVehicleIndices().length);
+        }
+    }
+
+    @Test void testVehicleOnlyClusterJoinsNearestRegion() {
+        // The LA shipments may only use the SF vehicle, which leaves the LA cluster with a vehicle and no shipments
+        ShipmentModel model = ShipmentModel.newBuilder()
+            .addShipments(shipment("sf1", SF_LAT, SF_LNG))
+            .addShipments(shipment("sf2", SF_LAT + 0.01, SF_LNG))
+            .addShipments(shipment("la1", LA_LAT, LA_LNG, 0))
+            .addShipments(shipment("la2", LA_LAT + 0.01, LA_LNG, 0))
+            .addVehicles(vehicle("sf", SF_LAT, SF_LNG))
+            .addVehicles(vehicle("la", LA_LAT, LA_LNG))
+            .build();
+
+        GeoDecomposer decomposer = GeoDecomposer.of(OptimizeToursRequest.newBuilder().setModel(model).build(), 2);
+        List<GeoDecomposer.Region> regions = decomposer.getRegions();
+
+        assertEquals(1, regions.size());
+        assertEquals(4, regions.get(0).getShipmentIndices().length);
+        int[] regionOf = vehicleRegions(decomposer, 2);
+        assertEquals(regions.get(0).getId(), regionOf[0]);
+        assertEquals(regions.get(0).getId(), regionOf[1]);
+
+        OptimizeToursRequest subRequest = decomposer.buildSubRequest(regions.get(0), Collections.emptyList());
+        assertEquals(2, subRequest.getModel().getVehiclesCount());
+    }
+
+    @Test void testInjectedRoutesKeepOnlyRegionVisits() {
+        // The SF vehicle was routed through an LA shipment, with transitions and a polyline for all three visits
+        ShipmentRoute route = ShipmentRoute.newBuilder()
+            .setVehicleIndex(0)
+            .setVehicleLabel("sf")
+            .addVisits(Visit.newBuilder().setShipmentIndex(1).setIsPickup(false))
+            .addVisits(Visit.newBuilder().setShipmentIndex(2).setIsPickup(false))
+            .addVisits(Visit.newBuilder().setShipmentIndex(0).setIsPickup(false))
+            .addTransitions(ShipmentRoute.Transition.getDefaultInstance())
+            .addTransitions(ShipmentRoute.Transition.getDefaultInstance())
+            .addTransitions(ShipmentRoute.Transition.getDefaultInstance())
+            .addTransitions(ShipmentRoute.Transition.getDefaultInstance())
+            .setRoutePolyline(ShipmentRoute.EncodedPolyline.newBuilder().setPoints("_p~iF~ps|U"))
+            .build();
+        OptimizeToursRequest request = OptimizeToursRequest.newBuilder()
+            .setModel(twoCityModel())
+            .addInjectedFirstSolutionRoutes(route)
+            .build();
+
+        GeoDecomposer decomposer = GeoDecomposer.of(request, 2);
+        int sfRegion = vehicleRegions(decomposer, 2)[0];
+        int laRegion = vehicleRegions(decomposer, 2)[1];
+
+        List<ShipmentRoute> sfRoutes = decomposer.injectedRoutes(decomposer.getRegions().get(sfRegion));
+        assertEquals(1, sfRoutes.size());
+        ShipmentRoute sfRoute = sfRoutes.get(0);
+        assertEquals(0, sfRoute.getVehicleIndex());
+        assertEquals("sf", sfRoute.getVehicleLabel());
+        assertEquals(2, sfRoute.getVisitsCount());
+        int[] sfShipments = decomposer.getRegions().get(sfRegion).getShipmentIndices();
+        assertEquals(1, sfShipments[sfRoute.getVisits(0).getShipmentIndex()]);
+        assertEquals(0, sfShipments[sfRoute.getVisits(1).getShipmentIndex()]);
+        assertEquals(0, sfRoute.getTransitionsCount());
+        assertFalse(sfRoute.hasRoutePolyline());
+
+        assertTrue(decomposer.injectedRoutes(decomposer.getRegions().get(laRegion)).isEmpty());
+    }
+}
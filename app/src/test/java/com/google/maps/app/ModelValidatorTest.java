@@ -0,0 +1,155 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.Timestamp;
+import com.google.type.LatLng;
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.Shipment.VisitRequest;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentModel.PrecedenceRule;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+import com.google.maps.routeoptimization.v1.TimeWindow;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelValidatorTest {
+    private static LatLng latLng(double latitude, double longitude) {
+        return LatLng.newBuilder().setLatitude(latitude).setLongitude(longitude).build();
+    }
+
+    private static Timestamp seconds(long seconds) {
+        return Timestamp.newBuilder().setSeconds(seconds).build();
+    }
+
+    private static Shipment delivery(String label, double latitude, double longitude) {
+        return Shipment.newBuilder()
+            .setLabel(label)
+            .addDeliveries(VisitRequest.newBuilder().setArrivalLocation(latLng(latitude, longitude)))
+            .build();
+    }
+
+    private static OptimizeToursRequest request(Shipment... shipments) {
+        ShipmentModel.Builder model = ShipmentModel.newBuilder()
+            .addVehicles(Vehicle.newBuilder()
+                .setLabel("van")
+                .setStartLocation(latLng(48.85, 2.35))
+                .putLoadLimits("weight", Vehicle.LoadLimit.newBuilder().setMaxLoad(100).build()));
+        for (Shipment shipment : shipments) {
+            model.addShipments(shipment);
+        }
+        return OptimizeToursRequest.newBuilder().setModel(model).build();
+    }
+
+    private static ModelValidator.Kind onlyProblem(OptimizeToursRequest request) {
+        ModelValidator.Report report = ModelValidator.validate(request);
+        assertEquals(1, report.getProblems().size(), report.toString());
+        return report.getProblems().get(0).getKind();
+    }
+
+    @Test void testCleanModel() {
+        ModelValidator.Report report = ModelValidator.validate(request(delivery("a", 48.86, 2.35), delivery("b", 48.87, 2.36)));
+        assertTrue(report.isClean());
+    }
+
+    @Test void testNoVisits() {
+        assertEquals(ModelValidator.Kind.NO_VISITS, onlyProblem(request(Shipment.newBuilder().setLabel("empty").build())));
+    }
+
+    @Test void testMissingLocation() {
+        Shipment shipment = Shipment.newBuilder().addDeliveries(VisitRequest.getDefaultInstance()).build();
+        assertEquals(ModelValidator.Kind.MISSING_LOCATION, onlyProblem(request(shipment)));
+    }
+
+    @Test void testInvertedTimeWindow() {
+        Shipment shipment = delivery("late", 48.86, 2.35).toBuilder()
+            .setDeliveries(0, VisitRequest.newBuilder()
+                .setArrivalLocation(latLng(48.86, 2.35))
+                .addTimeWindows(TimeWindow.newBuilder().setStartTime(seconds(7200)).setEndTime(seconds(3600))))
+            .build();
+        assertEquals(ModelValidator.Kind.INVALID_TIME_WINDOW, onlyProblem(request(shipment)));
+    }
+
+    @Test void testOverCapacity() {
+        Shipment shipment = delivery("heavy", 48.86, 2.35).toBuilder()
+            .putLoadDemands("weight", Shipment.Load.newBuilder().setAmount(500).build())
+            .build();
+        assertEquals(ModelValidator.Kind.OVER_CAPACITY, onlyProblem(request(shipment)));
+    }
+
+    @Test void testUnreachable() {
+        // Over 300 km from the vehicle start, but due within ten minutes of the start of the horizon
+        Shipment shipment = Shipment.newBuilder()
+            .setLabel("far")
+            .addDeliveries(VisitRequest.newBuilder()
+                .setArrivalLocation(latLng(45.76, 4.84))
+                .addTimeWindows(TimeWindow.newBuilder().setEndTime(seconds(600))))
+            .build();
+        assertEquals(ModelValidator.Kind.UNREACHABLE, onlyProblem(request(shipment)));
+    }
+
+    @Test void testCountByKind() {
+        ModelValidator.Report report = ModelValidator.validate(request(
+            Shipment.getDefaultInstance(), Shipment.getDefaultInstance(), delivery("ok", 48.86, 2.35)));
+        Map<ModelValidator.Kind, Integer> counts = report.countByKind();
+        assertEquals(1, counts.size());
+        assertEquals(2, counts.get(ModelValidator.Kind.NO_VISITS));
+    }
+
+    @Test void testPruneCleanRequest() {
+        OptimizeToursRequest request = request(delivery("a", 48.86, 2.35));
+        assertSame(request, ModelValidator.prune(request, ModelValidator.validate(request)));
+    }
+
+    @Test void testPruneRenumbersPrecedenceAndRoutes() {
+        OptimizeToursRequest request = request(
+                delivery("a", 48.86, 2.35), Shipment.newBuilder().setLabel("empty").build(),
+                delivery("c", 48.87, 2.36), delivery("d", 48.88, 2.37));
+        request = request.toBuilder()
+            .setModel(request.getModel().toBuilder()
+                .addPrecedenceRules(PrecedenceRule.newBuilder().setFirstIndex(0).setSecondIndex(2))
+                .addPrecedenceRules(PrecedenceRule.newBuilder().setFirstIndex(1).setSecondIndex(3))
+                .addPrecedenceRules(PrecedenceRule.newBuilder().setFirstIndex(3).setSecondIndex(2)))
+            .addInjectedFirstSolutionRoutes(ShipmentRoute.newBuilder()
+                .setVehicleLabel("van")
+                .addVisits(Visit.newBuilder().setShipmentIndex(3))
+                .addVisits(Visit.newBuilder().setShipmentIndex(1))
+                .addVisits(Visit.newBuilder().setShipmentIndex(0)))
+            .build();
+
+        OptimizeToursRequest pruned = ModelValidator.prune(request, ModelValidator.validate(request));
+        ShipmentModel model = pruned.getModel();
+        assertEquals(3, model.getShipmentsCount());
+        assertEquals("c", model.getShipments(1).getLabel());
+
+        assertEquals(2, model.getPrecedenceRulesCount());
+        assertEquals(0, model.getPrecedenceRules(0).getFirstIndex());
+        assertEquals(1, model.getPrecedenceRules(0).getSecondIndex());
+        assertEquals(2, model.getPrecedenceRules(1).getFirstIndex());
+        assertEquals(1, model.getPrecedenceRules(1).getSecondIndex());
+
+        ShipmentRoute route = pruned.getInjectedFirstSolutionRoutes(0);
+        assertEquals("van", route.getVehicleLabel());
+        assertEquals(2, route.getVisitsCount());
+        assertEquals(2, route.getVisits(0).getShipmentIndex());
+        assertEquals(0, route.getVisits(1).getShipmentIndex());
+    }
+}
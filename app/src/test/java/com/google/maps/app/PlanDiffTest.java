@@ -0,0 +1,126 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.type.LatLng;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+
+import google.maps.fleetengine.delivery.v1.LocationInfo;
+import google.maps.fleetengine.delivery.v1.Task;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanDiffTest {
+    private static Task task(String name) {
+        return Task.newBuilder().setName(name).build();
+    }
+
+    private static PublishedRoute route(String vehicleLabel, String... fingerprints) {
+        Task[] tasks = new Task[fingerprints.length];
+        for (int i = 0; i < fingerprints.length; i++) {
+            tasks[i] = task(vehicleLabel + "/" + i);
+        }
+        return new PublishedRoute(vehicleLabel, Arrays.asList(fingerprints), Arrays.asList(tasks));
+    }
+
+    @Test void testCompute() {
+        PublishedPlan published = new PublishedPlan();
+        published.put(route("same", "start", "a", "end"));
+        published.put(route("changed", "start", "b", "end"));
+        published.put(route("removed", "start", "c", "end"));
+
+        Map<String, List<String>> stops = new LinkedHashMap<>();
+        stops.put("same", Arrays.asList("start", "a", "end"));
+        stops.put("changed", Arrays.asList("start", "b", "d", "end"));
+        stops.put("new", Arrays.asList("start", "e", "end"));
+
+        PlanDiff diff = PlanDiff.compute(published, stops);
+        assertEquals(Collections.singletonList("same"), diff.getUnchangedVehicles());
+        assertEquals(Collections.singletonList("changed"), diff.getChangedVehicles());
+        assertEquals(Collections.singletonList("new"), diff.getNewVehicles());
+        assertEquals(Collections.singletonList("removed"), diff.getRemovedVehicles());
+    }
+
+    @Test void testMatchTasksByFingerprint() {
+        PublishedRoute previous = route("van", "start", "a", "b", "end");
+        List<Task> matched = PlanDiff.matchTasks(previous, Arrays.asList("start", "b", "x", "a", "end"));
+
+        assertEquals("van/0", matched.get(0).getName());
+        assertEquals("van/2", matched.get(1).getName());
+        assertNull(matched.get(2));
+        assertEquals("van/1", matched.get(3).getName());
+        assertEquals("van/3", matched.get(4).getName());
+    }
+
+    @Test void testMatchTasksReusesEachTaskOnce() {
+        PublishedRoute previous = route("van", "start", "a", "a", "end");
+        List<Task> matched = PlanDiff.matchTasks(previous, Arrays.asList("start", "a", "a", "a", "end"));
+
+        assertEquals("van/1", matched.get(1).getName());
+        assertEquals("van/2", matched.get(2).getName());
+        assertNull(matched.get(3));
+    }
+
+    @Test void testMatchTasksWithoutPreviousRoute() {
+        List<Task> matched = PlanDiff.matchTasks(null, Arrays.asList("start", "end"));
+        assertEquals(Arrays.asList(null, null), matched);
+    }
+
+    @Test void testUnmatchedTasks() {
+        PublishedRoute previous = route("van", "start", "a", "b", "end");
+        List<Task> matched = PlanDiff.matchTasks(previous, Arrays.asList("start", "b", "end"));
+
+        List<Task> unmatched = PlanDiff.unmatchedTasks(previous, matched);
+        assertEquals(1, unmatched.size());
+        assertEquals("van/1", unmatched.get(0).getName());
+
+        assertEquals(4, PlanDiff.unmatchedTasks(previous, Collections.<Task>emptyList()).size());
+        assertTrue(PlanDiff.unmatchedTasks(null, matched).isEmpty());
+    }
+
+    @Test void testStopKeyIgnoresShipmentIndex() {
+        Visit labeled = Visit.newBuilder().setShipmentIndex(4).setShipmentLabel("parcel-7").build();
+        Visit shifted = labeled.toBuilder().setShipmentIndex(3).build();
+        assertEquals(PublishedRoute.stopKey(labeled), PublishedRoute.stopKey(shifted));
+        assertNotEquals(PublishedRoute.visitKey(labeled), PublishedRoute.visitKey(shifted));
+
+        Visit visitLabeled = shifted.toBuilder().setVisitLabel("drop-7").build();
+        assertEquals("visit:drop-7", PublishedRoute.stopKey(visitLabeled));
+
+        Visit unlabeled = Visit.newBuilder().setShipmentIndex(4).build();
+        assertEquals(PublishedRoute.stopKey(unlabeled), PublishedRoute.stopKey(unlabeled.toBuilder().setShipmentIndex(3).build()));
+        assertNotEquals(PublishedRoute.stopKey(unlabeled), PublishedRoute.stopKey(unlabeled.toBuilder().setIsPickup(true).build()));
+    }
+
+    @Test void testFingerprintIncludesTaskContent() {
+        Task task = Task.newBuilder()
+            .setType(Task.Type.DELIVERY)
+            .setPlannedLocation(LocationInfo.newBuilder().setPoint(LatLng.newBuilder().setLatitude(1).setLongitude(2)))
+            .build();
+        Task moved = task.toBuilder()
+            .setPlannedLocation(LocationInfo.newBuilder().setPoint(LatLng.newBuilder().setLatitude(1).setLongitude(3)))
+            .build();
+        assertEquals(PublishedRoute.fingerprint("visit:a", task), PublishedRoute.fingerprint("visit:a", task));
+        assertNotEquals(PublishedRoute.fingerprint("visit:a", task), PublishedRoute.fingerprint("visit:a", moved));
+        assertNotEquals(PublishedRoute.fingerprint("visit:a", task), PublishedRoute.fingerprint("visit:b", task));
+    }
+}
@@ -0,0 +1,112 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublishJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test void testRecordAndReplay() throws IOException {
+        Path file = directory.resolve("journal.tsv");
+        List<String> taskNames = Arrays.asList("providers/p/tasks/a", "providers/p/tasks/b");
+        try (PublishJournal journal = new PublishJournal(file)) {
+            journal.startPlan("plan-1", "depot", "content");
+            journal.record("plan-1", "van-1", PublishJournal.Step.VEHICLE_CREATED);
+            journal.recordTasks("plan-1", "van-1#route", taskNames);
+            assertTrue(journal.isDone("plan-1", "van-1", PublishJournal.Step.VEHICLE_CREATED));
+            assertFalse(journal.isDone("plan-1", "van-1#route", PublishJournal.Step.SEGMENTS_UPDATED));
+        }
+
+        try (PublishJournal journal = new PublishJournal(file)) {
+            assertEquals("plan-1", journal.findUnfinishedPlan("depot", "content"));
+            assertTrue(journal.isDone("plan-1", "van-1", PublishJournal.Step.VEHICLE_CREATED));
+            assertTrue(journal.isDone("plan-1", "van-1#route", PublishJournal.Step.TASKS_CREATED));
+            assertEquals(taskNames, journal.getTasks("plan-1", "van-1#route"));
+            assertNull(journal.getTasks("plan-1", "van-2#route"));
+        }
+    }
+
+    @Test void testRecordTwice() throws IOException {
+        Path file = directory.resolve("journal.tsv");
+        try (PublishJournal journal = new PublishJournal(file)) {
+            journal.record("plan-1", "van-1", PublishJournal.Step.VEHICLE_CREATED);
+            journal.record("plan-1", "van-1", PublishJournal.Step.VEHICLE_CREATED);
+            assertEquals(1, journal.size());
+        }
+        assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+    }
+
+    @Test void testTornLineIgnored() throws IOException {
+        Path file = directory.resolve("journal.tsv");
+        try (PublishJournal journal = new PublishJournal(file)) {
+            journal.startPlan("plan-1", "depot", "content");
+        }
+        Files.write(file, "plan-1\tvan-1\tVEHICLE_CRE".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (PublishJournal journal = new PublishJournal(file)) {
+            assertEquals(1, journal.size());
+            assertEquals("plan-1", journal.findUnfinishedPlan("depot", "content"));
+        }
+    }
+
+    @Test void testCompactionDropsFinishedAndReplacedPlans() throws IOException {
+        Path file = directory.resolve("journal.tsv");
+        try (PublishJournal journal = new PublishJournal(file)) {
+            journal.startPlan("plan-1", "depot", "content");
+            journal.record("plan-1", "van-1", PublishJournal.Step.VEHICLE_CREATED);
+            journal.finishPlan("plan-1");
+            journal.startPlan("plan-2", "depot", "content");
+            journal.startPlan("plan-3", "depot", "content");
+            journal.record("plan-3", "van-1", PublishJournal.Step.VEHICLE_CREATED);
+            assertEquals("plan-3", journal.findUnfinishedPlan("depot", "content"));
+        }
+
+        try (PublishJournal journal = new PublishJournal(file)) {
+            assertEquals("plan-3", journal.findUnfinishedPlan("depot", "content"));
+            assertFalse(journal.isDone("plan-1", "van-1", PublishJournal.Step.VEHICLE_CREATED));
+            assertTrue(journal.isDone("plan-3", "van-1", PublishJournal.Step.VEHICLE_CREATED));
+            assertEquals(2, journal.size());
+        }
+        assertEquals(2, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+    }
+
+    @Test void testFinishedPlanIsNotResumed() throws IOException {
+        try (PublishJournal journal = new PublishJournal(directory.resolve("journal.tsv"))) {
+            journal.startPlan("plan-1", "depot", "content");
+            journal.finishPlan("plan-1");
+            assertNull(journal.findUnfinishedPlan("depot", "content"));
+        }
+    }
+
+    @Test void testRouteKey() {
+        String key = PublishJournal.routeKey("van-1", Arrays.asList("start", "visit:a", "end"));
+        assertTrue(key.startsWith("van-1#"));
+        assertEquals(key, PublishJournal.routeKey("van-1", Arrays.asList("start", "visit:a", "end")));
+        assertNotEquals(key, PublishJournal.routeKey("van-1", Arrays.asList("start", "visit:b", "end")));
+        assertNotEquals(key, PublishJournal.routeKey("van-2", Arrays.asList("start", "visit:a", "end")));
+    }
+}
@@ -0,0 +1,101 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.protobuf.Duration;
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+    @TempDir
+    Path directory;
+
+    private static OptimizeToursRequest request(String shipmentLabel) {
+        return OptimizeToursRequest.newBuilder()
+            .setParent("projects/test")
+            .setModel(ShipmentModel.newBuilder().addShipments(Shipment.newBuilder().setLabel(shipmentLabel)))
+            .build();
+    }
+
+    private static OptimizeToursResponse response(String vehicleLabel) {
+        return OptimizeToursResponse.newBuilder()
+            .addRoutes(ShipmentRoute.newBuilder().setVehicleLabel(vehicleLabel))
+            .build();
+    }
+
+    private Path entry(OptimizeToursRequest request) {
+        return directory.resolve(ResponseCache.cacheKey(request) + ".pb");
+    }
+
+    @Test void testCacheKey() {
+        OptimizeToursRequest request = request("a");
+        String key = ResponseCache.cacheKey(request);
+        assertEquals(64, key.length());
+        assertEquals(key, ResponseCache.cacheKey(request.toBuilder()
+            .setParent("projects/other")
+            .setTimeout(Duration.newBuilder().setSeconds(30))
+            .build()));
+        assertNotEquals(key, ResponseCache.cacheKey(request("b")));
+    }
+
+    @Test void testPutAndGet() throws IOException {
+        ResponseCache cache = new ResponseCache(directory, 1 << 20);
+        assertNull(cache.get(request("a")));
+        cache.put(request("a"), response("van-a"));
+        assertEquals(response("van-a"), cache.get(request("a")));
+        assertNull(cache.get(request("b")));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test void testCorruptEntryIsAMiss() throws IOException {
+        ResponseCache cache = new ResponseCache(directory, 1 << 20);
+        Files.write(entry(request("a")), new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff });
+        assertNull(cache.get(request("a")));
+        assertFalse(Files.exists(entry(request("a"))));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test void testLeastRecentlyUsedEvicted() throws IOException {
+        // Room for two entries of the same size
+        long entryBytes = response("van-a").getSerializedSize();
+        ResponseCache cache = new ResponseCache(directory, 2 * entryBytes + entryBytes / 2);
+        cache.put(request("a"), response("van-a"));
+        cache.put(request("b"), response("van-b"));
+        Files.setLastModifiedTime(entry(request("a")), FileTime.fromMillis(1_000));
+        Files.setLastModifiedTime(entry(request("b")), FileTime.fromMillis(2_000));
+
+        // Reading the older entry makes the other one the least recently used
+        assertNotNull(cache.get(request("a")));
+        cache.put(request("c"), response("van-c"));
+
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(Files.exists(entry(request("a"))));
+        assertFalse(Files.exists(entry(request("b"))));
+        assertTrue(Files.exists(entry(request("c"))));
+    }
+}
@@ -0,0 +1,89 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.maps.app;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.type.LatLng;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.Shipment.VisitRequest;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShipmentModelIndexTest {
+    private static LatLng latLng(double latitude, double longitude) {
+        return LatLng.newBuilder().setLatitude(latitude).setLongitude(longitude).build();
+    }
+
+    private static VisitRequest visitRequest(String label, double latitude, double longitude) {
+        return VisitRequest.newBuilder().setLabel(label).setArrivalLocation(latLng(latitude, longitude)).build();
+    }
+
+    private static ShipmentModel model() {
+        return ShipmentModel.newBuilder()
+            .addShipments(Shipment.newBuilder()
+                .addPickups(visitRequest("p0", 1, 1))
+                .addDeliveries(visitRequest("d0", 2, 2))
+                .addDeliveries(visitRequest("d0-alt", 3, 3)))
+            .addShipments(Shipment.newBuilder()
+                .addPickups(visitRequest("shared", 4, 4))
+                .addDeliveries(visitRequest("shared", 5, 5)))
+            .addVehicles(Vehicle.newBuilder().setLabel("van-1").setStartLocation(latLng(10, 10)).setEndLocation(latLng(11, 11)))
+            .addVehicles(Vehicle.newBuilder().setLabel("van-2").setStartLocation(latLng(20, 20)))
+            .build();
+    }
+
+    @Test void testVisitRequestByLabel() {
+        ShipmentModelIndex index = ShipmentModelIndex.of(model());
+        assertEquals("p0", index.getVisitRequest("p0").getLabel());
+        assertEquals(latLng(3, 3), index.getVisitLocation("d0-alt"));
+        assertNull(index.getVisitRequest("missing"));
+        assertNull(index.getVisitLocation("missing"));
+    }
+
+    @Test void testDeliveryWinsOnDuplicateLabel() {
+        ShipmentModelIndex index = ShipmentModelIndex.of(model());
+        assertEquals(latLng(5, 5), index.getVisitLocation("shared"));
+    }
+
+    @Test void testVisitRequestByPosition() {
+        ShipmentModelIndex index = ShipmentModelIndex.of(model());
+        assertEquals("p0", index.getVisitRequest(0, true, 0).getLabel());
+        assertEquals("d0-alt", index.getVisitRequest(0, false, 1).getLabel());
+        assertNull(index.getVisitRequest(0, true, 1));
+        assertNull(index.getVisitRequest(2, false, 0));
+        assertNull(index.getVisitRequest(-1, false, 0));
+    }
+
+    @Test void testVisitLocation() {
+        ShipmentModelIndex index = ShipmentModelIndex.of(model());
+        Visit visit = Visit.newBuilder().setShipmentIndex(1).setIsPickup(true).build();
+        assertEquals(latLng(4, 4), index.getVisitLocation(visit));
+
+        Visit outside = Visit.newBuilder().setShipmentIndex(5).build();
+        assertNull(index.getVisitLocation(outside));
+    }
+
+    @Test void testVehicleLookups() {
+        ShipmentModelIndex index = ShipmentModelIndex.of(model());
+        assertEquals(latLng(20, 20), index.getVehicle("van-2").getStartLocation());
+        assertNull(index.getVehicle("van-3"));
+        assertEquals(latLng(10, 10), index.getVehicleStartEndLocation("van-1", true));
+        assertEquals(latLng(11, 11), index.getVehicleStartEndLocation("providers/p/deliveryVehicles/van-1", false));
+        assertNull(index.getVehicleStartEndLocation("providers/p/deliveryVehicles/van-3", true));
+    }
+}
@@ -0,0 +1,116 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.maps.list.ArrayStringList;
+import com.google.maps.list.LinkedList;
+import com.google.maps.utilities.StringUtils;
+import com.google.maps.utilities.Tokenizer;
+
+/**
+ * Measures the list module and the split / join utilities built on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListBenchmark {
+
+  @Param({ "10", "1000", "10000" })
+  public int size;
+
+  private LinkedList list;
+  private String text;
+
+  @Setup
+  public void fill()
+  {
+    list = new LinkedList();
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < size; i++ ) {
+      String token = "label-" + i;
+      list.add( token );
+      if( builder.length() > 0 )
+        builder.append( ' ' );
+      builder.append( token );
+    }
+    text = builder.toString();
+  }
+
+  @Benchmark
+  public LinkedList add()
+  {
+    LinkedList result = new LinkedList();
+    for (int i = 0; i < size; i++ )
+      result.add( "label" );
+    return result;
+  }
+
+  @Benchmark
+  public ArrayStringList addArray()
+  {
+    ArrayStringList result = new ArrayStringList();
+    for (int i = 0; i < size; i++ )
+      result.add( "label" );
+    return result;
+  }
+
+  @Benchmark
+  public void iterate( Blackhole blackhole )
+  {
+    for( String element : list )
+      blackhole.consume( element );
+  }
+
+  @Benchmark
+  public void get( Blackhole blackhole )
+  {
+    for (int i = 0; i < size; i++ )
+      blackhole.consume( list.get( i ) );
+  }
+
+  @Benchmark
+  public LinkedList split()
+  {
+    return StringUtils.split( text );
+  }
+
+  @Benchmark
+  public int tokenize()
+  {
+    int length = 0;
+    Tokenizer tokenizer = StringUtils.tokenize( text );
+    while( tokenizer.next() )
+      length += tokenizer.end() - tokenizer.start();
+    return length;
+  }
+
+  @Benchmark
+  public String join()
+  {
+    return StringUtils.join( list );
+  }
+}
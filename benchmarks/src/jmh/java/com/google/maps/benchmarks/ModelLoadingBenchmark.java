@@ -0,0 +1,60 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.benchmarks;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.maps.app.RouteOptimizationHelper;
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+
+/**
+ * Measures RouteOptimizationHelper.buildFleetRoutingRequest on text and binary models.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ModelLoadingBenchmark {
+
+  @Param({ "10", "1000", "10000", "50000" })
+  public int shipments;
+
+  @Param({ ".textproto", ".pb" })
+  public String format;
+
+  private String modelPath;
+
+  @Setup
+  public void writeModel() throws Exception
+  {
+    Path path = SyntheticModels.write( SyntheticModels.request( shipments ), format );
+    modelPath = path.toString();
+  }
+
+  @Benchmark
+  public OptimizeToursRequest buildFleetRoutingRequest() throws Exception
+  {
+    return RouteOptimizationHelper.buildFleetRoutingRequest( "projects/benchmark", modelPath );
+  }
+}
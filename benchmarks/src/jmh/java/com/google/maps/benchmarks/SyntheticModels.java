@@ -0,0 +1,150 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.google.protobuf.Duration;
+import com.google.protobuf.TextFormat;
+import com.google.protobuf.Timestamp;
+import com.google.type.LatLng;
+
+import com.google.maps.app.ModelLoader;
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.Shipment.Load;
+import com.google.maps.routeoptimization.v1.Shipment.VisitRequest;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+import com.google.maps.routeoptimization.v1.TimeWindow;
+import com.google.maps.routeoptimization.v1.Vehicle;
+
+/**
+ * Generates reproducible shipment models shaped like the UC*.textproto examples:
+ * one pickup and one delivery per shipment, spread over the Helsinki area.
+ */
+final class SyntheticModels {
+
+  private static final double MIN_LATITUDE = 60.15;
+  private static final double MAX_LATITUDE = 60.25;
+  private static final double MIN_LONGITUDE = 24.80;
+  private static final double MAX_LONGITUDE = 25.10;
+
+  private SyntheticModels()
+  {
+  }
+
+  /**
+   * Builds a request with the given number of shipments and one vehicle per 25 shipments.
+   */
+  static OptimizeToursRequest request( int shipmentCount )
+  {
+    Random random = new Random( shipmentCount );
+    ShipmentModel.Builder model = ShipmentModel.newBuilder();
+
+    for (int i = 0; i < shipmentCount; i++ )
+      model.addShipments( Shipment.newBuilder()
+          .setLabel( "shipment-" + i )
+          .addPickups( visitRequest( random, "pickup-" + i, 1000 ) )
+          .addDeliveries( visitRequest( random, "delivery-" + i, 3000 ) )
+          .putLoadDemands( "weight", Load.newBuilder().setAmount( 10 ).build() ) );
+
+    int vehicleCount = Math.max( 1, shipmentCount / 25 );
+    for (int i = 0; i < vehicleCount; i++ ) {
+      LatLng depot = location( random );
+      model.addVehicles( Vehicle.newBuilder()
+          .setLabel( "vehicle-" + i )
+          .setStartLocation( depot )
+          .setEndLocation( depot ) );
+    }
+
+    return OptimizeToursRequest.newBuilder()
+        .setParent( "projects/benchmark" )
+        .setTimeout( Duration.newBuilder().setSeconds( 100 ) )
+        .setModel( model )
+        .build();
+  }
+
+  /**
+   * Builds a route visiting every shipment of the model with the given vehicle, pickups first.
+   */
+  static ShipmentRoute route( ShipmentModel model, int vehicleIndex, int visitCount )
+  {
+    ShipmentRoute.Builder route = ShipmentRoute.newBuilder()
+        .setVehicleIndex( vehicleIndex )
+        .setVehicleLabel( model.getVehicles( vehicleIndex ).getLabel() );
+    for (int i = 0; i < visitCount && i < model.getShipmentsCount(); i++ ) {
+      Shipment shipment = model.getShipments( i );
+      route.addVisits( Visit.newBuilder()
+          .setShipmentIndex( i )
+          .setIsPickup( true )
+          .setVisitLabel( shipment.getPickups( 0 ).getLabel() )
+          .setDetour( Duration.newBuilder().setSeconds( 60 ) ) );
+      route.addVisits( Visit.newBuilder()
+          .setShipmentIndex( i )
+          .setIsPickup( false )
+          .setVisitLabel( shipment.getDeliveries( 0 ).getLabel() )
+          .setDetour( Duration.newBuilder().setSeconds( 60 ) ) );
+    }
+    return route.build();
+  }
+
+  /**
+   * Writes a request to a temporary file, in text format or in binary format depending on the extension.
+   */
+  static Path write( OptimizeToursRequest request, String extension ) throws IOException
+  {
+    Path path = Files.createTempFile( "synthetic-model", extension );
+    path.toFile().deleteOnExit();
+    if( extension.endsWith( ".textproto" ) )
+    {
+      try( Writer writer = Files.newBufferedWriter( path, StandardCharsets.UTF_8 ) )
+      {
+        TextFormat.printer().print( request, writer );
+      }
+    }
+    else
+    {
+      ModelLoader.writeBinaryModel( request, path.toString() );
+    }
+    return path;
+  }
+
+  static LatLng location( Random random )
+  {
+    return LatLng.newBuilder()
+        .setLatitude( MIN_LATITUDE + random.nextDouble() * ( MAX_LATITUDE - MIN_LATITUDE ) )
+        .setLongitude( MIN_LONGITUDE + random.nextDouble() * ( MAX_LONGITUDE - MIN_LONGITUDE ) )
+        .build();
+  }
+
+  private static VisitRequest visitRequest( Random random, String label, long windowStart )
+  {
+    return VisitRequest.newBuilder()
+        .setLabel( label )
+        .setArrivalLocation( location( random ) )
+        .addTimeWindows( TimeWindow.newBuilder()
+            .setStartTime( Timestamp.newBuilder().setSeconds( windowStart ) )
+            .setEndTime( Timestamp.newBuilder().setSeconds( windowStart + 1000 ) ) )
+        .setDuration( Duration.newBuilder().setSeconds( 150 ) )
+        .build();
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.type.LatLng;
+
+import com.google.maps.app.App;
+import com.google.maps.app.ShipmentModelIndex;
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+
+import google.maps.fleetengine.delivery.v1.CreateTaskRequest;
+import google.maps.fleetengine.delivery.v1.LocationInfo;
+import google.maps.fleetengine.delivery.v1.Task;
+import google.maps.fleetengine.delivery.v1.VehicleJourneySegment;
+
+/**
+ * Measures the request building done for every stop while publishing a plan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TaskBuildingBenchmark {
+
+  @Param({ "10", "150", "1000" })
+  public int visits;
+
+  private LatLng location;
+  private LocationInfo locationInfo;
+  private UUID trackingId;
+  private String taskName;
+  private OptimizeToursRequest request;
+  private ShipmentModelIndex index;
+  private ShipmentRoute route;
+  private List<Task> tasks;
+
+  @Setup
+  public void prepare()
+  {
+    location = SyntheticModels.location( new Random( 1 ) );
+    locationInfo = LocationInfo.newBuilder().setPoint( location ).build();
+    trackingId = UUID.randomUUID();
+    taskName = "providers/benchmark/tasks/" + UUID.randomUUID();
+    request = SyntheticModels.request( visits );
+    index = ShipmentModelIndex.of( request );
+    route = SyntheticModels.route( request.getModel(), 0, visits );
+
+    // Tasks as Fleet Engine returns them, with every other pair of visits at the same address
+    tasks = new ArrayList<>();
+    for( CreateTaskRequest taskRequest : App.buildRouteTaskRequests( index, "benchmark", "plan", request.getModel().getVehicles( 0 ), route ) ) {
+      Task.Builder task = taskRequest.getTask().toBuilder().setName( "providers/benchmark/tasks/" + taskRequest.getTaskId() );
+      if( tasks.size() % 2 == 1 )
+        task.setPlannedLocation( tasks.get( tasks.size() - 1 ).getPlannedLocation() );
+      tasks.add( task.build() );
+    }
+  }
+
+  @Benchmark
+  public CreateTaskRequest buildTask()
+  {
+    return App.buildTask( "benchmark", "task-id", location, 150, Task.Type.DELIVERY, trackingId );
+  }
+
+  @Benchmark
+  public VehicleJourneySegment createVehicleJourneySegment()
+  {
+    return App.createVehicleJourneySegment( taskName, locationInfo, 150 );
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<VehicleJourneySegment> createVehicleJourneySegments()
+  {
+    return App.createVehicleJourneySegments( tasks, App.STOP_MERGE_TOLERANCE_METERS );
+  }
+
+  @Benchmark
+  public String stripFullPathFromId()
+  {
+    return App.stripFullPathFromId( taskName );
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<CreateTaskRequest> buildRouteTaskRequests()
+  {
+    return App.buildRouteTaskRequests( index, "benchmark", "plan", request.getModel().getVehicles( 0 ), route );
+  }
+}
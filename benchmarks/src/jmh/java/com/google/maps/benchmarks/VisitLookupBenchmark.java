@@ -0,0 +1,86 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.type.LatLng;
+
+import com.google.maps.app.RouteOptimizationHelper;
+import com.google.maps.app.ShipmentModelIndex;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+
+/**
+ * Compares the linear getVisitLocation scan with ShipmentModelIndex lookups.
+ * Labels are looked up in the middle of the model, the average case of the scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VisitLookupBenchmark {
+
+  @Param({ "10", "1000", "10000", "50000" })
+  public int shipments;
+
+  private ShipmentModel model;
+  private ShipmentModelIndex index;
+  private String label;
+  private Visit visit;
+
+  @Setup
+  public void buildModel()
+  {
+    model = SyntheticModels.request( shipments ).getModel();
+    index = ShipmentModelIndex.of( model );
+    int middle = shipments / 2;
+    label = model.getShipments( middle ).getDeliveries( 0 ).getLabel();
+    visit = Visit.newBuilder().setShipmentIndex( middle ).setIsPickup( false ).setVisitLabel( label ).build();
+  }
+
+  @Benchmark
+  public LatLng getVisitLocation()
+  {
+    return RouteOptimizationHelper.getVisitLocation( model, label );
+  }
+
+  @Benchmark
+  public LatLng indexByLabel()
+  {
+    return index.getVisitLocation( label );
+  }
+
+  @Benchmark
+  public LatLng indexByVisit()
+  {
+    return index.getVisitLocation( visit );
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public ShipmentModelIndex buildIndex()
+  {
+    return ShipmentModelIndex.of( model );
+  }
+}
@@ -0,0 +1,41 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.gradle
+
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+
+/**
+ * Configures the training run of the 'com.google.maps.java-fast-start-conventions' plugin.
+ */
+abstract class FastStartExtension {
+
+    /** Main class of the training run. It should go through the startup path up to the first RPCs. */
+    abstract Property<String> getTrainingMainClass()
+
+    /** Arguments of the training run. */
+    abstract ListProperty<String> getTrainingArgs()
+
+    /**
+     * Jars needed by the training run only, such as local stand-in services. They are appended
+     * to the application classpath, and their classes are left out of the archive.
+     */
+    abstract ConfigurableFileCollection getTrainingClasspath()
+
+    /** Working directory of the training run. */
+    abstract DirectoryProperty getTrainingWorkingDir()
+}
@@ -0,0 +1,115 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.list;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class ArrayStringList implements StringList {
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private String[] elements;
+    private int size;
+
+    public ArrayStringList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ArrayStringList(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        elements = new String[initialCapacity];
+    }
+
+    @Override
+    public void add(String element) {
+        ensureCapacity(size + 1);
+        elements[size++] = element;
+    }
+
+    @Override
+    public void addAll(Iterable<String> source) {
+        if (source == this) {
+            // Iterating over the list while appending to it would never reach the end
+            ensureCapacity(2 * size);
+            System.arraycopy(elements, 0, elements, size, size);
+            size *= 2;
+            return;
+        }
+        if (source instanceof StringList) {
+            ensureCapacity(size + ((StringList) source).size());
+        }
+        for (String element : source) {
+            add(element);
+        }
+    }
+
+    @Override
+    public boolean remove(String element) {
+        for (int i = 0; i < size; ++i) {
+            if (0 == element.compareTo(elements[i])) {
+                System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+                elements[--size] = null;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index is out of range");
+        }
+
+        return elements[index];
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+
+                return elements[next++];
+            }
+        };
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            int newCapacity = Math.max(capacity, elements.length + (elements.length >> 1) + 1);
+            elements = Arrays.copyOf(elements, newCapacity);
+        }
+    }
+}
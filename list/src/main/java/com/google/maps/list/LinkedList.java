@@ -17,28 +17,28 @@
  */
 package com.google.maps.list;
 
-public class LinkedList {
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class LinkedList implements StringList {
     private Node head;
+    private Node tail;
+    private int size;
 
+    @Override
     public void add(String element) {
         Node newNode = new Node(element);
 
-        Node it = tail(head);
-        if (it == null) {
+        if (tail == null) {
             head = newNode;
         } else {
-            it.next = newNode;
+            tail.next = newNode;
         }
+        tail = newNode;
+        ++size;
     }
 
-    private static Node tail(Node head) {
-        Node it;
-
-        for (it = head; it != null && it.next != null; it = it.next) {}
-
-        return it;
-    }
-
+    @Override
     public boolean remove(String element) {
         boolean result = false;
         Node previousIt = null;
@@ -60,30 +60,56 @@ public class LinkedList {
         } else {
             previousIt.next = currentIt.next;
         }
+
+        if (currentIt == tail) {
+            tail = previousIt;
+        }
+        --size;
     }
 
+    @Override
     public int size() {
-        int size = 0;
-
-        for (Node it = head; it != null; ++size, it = it.next) {}
-
         return size;
     }
 
+    @Override
     public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index is out of range");
+        }
+
         Node it = head;
-        while (index > 0 && it != null) {
+        while (index > 0) {
             it = it.next;
             index--;
         }
 
-        if (it == null) {
-            throw new IndexOutOfBoundsException("Index is out of range");
-        }
-
         return it.data;
     }
 
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private Node next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                String data = next.data;
+                next = next.next;
+                return data;
+            }
+        };
+    }
+
     private static class Node {
         final String data;
         Node next;
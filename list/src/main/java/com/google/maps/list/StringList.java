@@ -0,0 +1,47 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.list;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public interface StringList extends Iterable<String> {
+    void add(String element);
+
+    default void addAll(Iterable<String> elements) {
+        Iterable<String> source = elements;
+        if (elements == this) {
+            // Copy first, or iterating over the list while appending to it would never reach the end
+            List<String> copy = new ArrayList<>(size());
+            for (String element : this) {
+                copy.add(element);
+            }
+            source = copy;
+        }
+        for (String element : source) {
+            add(element);
+        }
+    }
+
+    boolean remove(String element);
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    String get(int index);
+}
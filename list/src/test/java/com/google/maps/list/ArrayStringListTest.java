@@ -0,0 +1,101 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.list;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrayStringListTest {
+    @Test void testConstructor() {
+        ArrayStringList list = new ArrayStringList();
+        assertEquals(0, list.size());
+        assertTrue(list.isEmpty());
+    }
+
+    @Test void testAddBeyondCapacity() {
+        ArrayStringList list = new ArrayStringList(1);
+
+        for (int i = 0; i < 100; ++i) {
+            list.add("item" + i);
+        }
+
+        assertEquals(100, list.size());
+        assertEquals("item0", list.get(0));
+        assertEquals("item99", list.get(99));
+    }
+
+    @Test void testRemove() {
+        ArrayStringList list = new ArrayStringList();
+
+        list.add("one");
+        list.add("two");
+        list.add("three");
+        assertTrue(list.remove("two"));
+
+        assertEquals(2, list.size());
+        assertEquals("one", list.get(0));
+        assertEquals("three", list.get(1));
+        assertFalse(list.remove("two"));
+    }
+
+    @Test void testGetOutOfRange() {
+        ArrayStringList list = new ArrayStringList();
+        list.add("one");
+
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+    }
+
+    @Test void testAddAll() {
+        LinkedList source = new LinkedList();
+        source.add("one");
+        source.add("two");
+
+        ArrayStringList list = new ArrayStringList(0);
+        list.add("zero");
+        list.addAll(source);
+
+        assertEquals(3, list.size());
+        assertEquals("zero", list.get(0));
+        assertEquals("two", list.get(2));
+    }
+
+    @Test void testAddAllSelf() {
+        ArrayStringList list = new ArrayStringList(2);
+        list.add("one");
+        list.add("two");
+        list.addAll(list);
+
+        assertEquals(4, list.size());
+        assertEquals("one", list.get(2));
+        assertEquals("two", list.get(3));
+    }
+
+    @Test void testIterator() {
+        ArrayStringList list = new ArrayStringList();
+        list.add("one");
+        list.add("two");
+
+        Iterator<String> it = list.iterator();
+        assertEquals("one", it.next());
+        assertEquals("two", it.next());
+        assertFalse(it.hasNext());
+        assertThrows(NoSuchElementException.class, it::next);
+    }
+}
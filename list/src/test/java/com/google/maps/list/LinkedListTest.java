@@ -61,4 +61,62 @@ class LinkedListTest {
         assertFalse(list.remove("three"));
         assertEquals(2, list.size());
     }
+
+    @Test void testAddAfterRemovingTail() {
+        LinkedList list = new LinkedList();
+
+        list.add("one");
+        list.add("two");
+        assertTrue(list.remove("two"));
+        list.add("three");
+
+        assertEquals(2, list.size());
+        assertEquals("one", list.get(0));
+        assertEquals("three", list.get(1));
+    }
+
+    @Test void testAddAfterRemovingAll() {
+        LinkedList list = new LinkedList();
+
+        list.add("one");
+        assertTrue(list.remove("one"));
+        assertTrue(list.isEmpty());
+
+        list.add("two");
+        assertEquals(1, list.size());
+        assertEquals("two", list.get(0));
+    }
+
+    @Test void testGetOutOfRange() {
+        LinkedList list = new LinkedList();
+        list.add("one");
+
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+    }
+
+    @Test void testAddAllSelf() {
+        LinkedList list = new LinkedList();
+        list.add("one");
+        list.add("two");
+        list.addAll(list);
+
+        assertEquals(4, list.size());
+        assertEquals("one", list.get(2));
+        assertEquals("two", list.get(3));
+    }
+
+    @Test void testIterator() {
+        LinkedList list = new LinkedList();
+        list.addAll(java.util.Arrays.asList("one", "two", "three"));
+
+        StringBuilder result = new StringBuilder();
+        for (String element : list) {
+            result.append(element);
+        }
+
+        assertEquals(3, list.size());
+        assertEquals("onetwothree", result.toString());
+        assertFalse(new LinkedList().iterator().hasNext());
+    }
 }
@@ -0,0 +1,334 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import google.maps.fleetengine.delivery.v1.CreateDeliveryVehicleRequest;
+import google.maps.fleetengine.delivery.v1.CreateTaskRequest;
+import google.maps.fleetengine.delivery.v1.DeliveryServiceGrpc;
+import google.maps.fleetengine.delivery.v1.DeliveryVehicle;
+import google.maps.fleetengine.delivery.v1.GetDeliveryVehicleRequest;
+import google.maps.fleetengine.delivery.v1.GetTaskRequest;
+import google.maps.fleetengine.delivery.v1.ListDeliveryVehiclesRequest;
+import google.maps.fleetengine.delivery.v1.ListDeliveryVehiclesResponse;
+import google.maps.fleetengine.delivery.v1.Task;
+import google.maps.fleetengine.delivery.v1.UpdateDeliveryVehicleRequest;
+import google.maps.fleetengine.delivery.v1.UpdateTaskRequest;
+import google.maps.fleetengine.delivery.v1.VehicleJourneySegment;
+import google.maps.fleetengine.delivery.v1.VehicleStop;
+
+/**
+ * In-memory stand-in for the Fleet Engine Delivery service.
+ *
+ * Vehicles and tasks are kept in maps keyed by their full resource name. The checks
+ * that matter for publishing are reproduced: duplicate IDs fail with ALREADY_EXISTS,
+ * unknown names with NOT_FOUND, and journey segments referencing unknown tasks with
+ * FAILED_PRECONDITION.
+ */
+public class FakeDeliveryService extends DeliveryServiceGrpc.DeliveryServiceImplBase {
+
+  // Page size used when a list request does not set one, as in Fleet Engine
+  private static final int DEFAULT_PAGE_SIZE = 100;
+
+  private final FaultInjector faults;
+  private final Map<String, DeliveryVehicle> vehicles = new ConcurrentHashMap<>();
+  private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> callCounts = new ConcurrentHashMap<>();
+
+  /**
+   * Creates the stand-in.
+   *
+   * @param faults The faults injected into every call.
+   */
+  public FakeDeliveryService( FaultInjector faults )
+  {
+    this.faults = faults;
+  }
+
+  @Override
+  public void createDeliveryVehicle( CreateDeliveryVehicleRequest request, StreamObserver<DeliveryVehicle> responseObserver )
+  {
+    if( !begin( "createDeliveryVehicle", responseObserver ) )
+      return;
+
+    String name = request.getParent() + "/deliveryVehicles/" + request.getDeliveryVehicleId();
+    DeliveryVehicle vehicle = request.getDeliveryVehicle().toBuilder().setName( name ).build();
+    if( vehicles.putIfAbsent( name, vehicle ) != null )
+    {
+      responseObserver.onError( Status.ALREADY_EXISTS.withDescription( name ).asRuntimeException() );
+      return;
+    }
+
+    respond( vehicle, responseObserver );
+  }
+
+  @Override
+  public void getDeliveryVehicle( GetDeliveryVehicleRequest request, StreamObserver<DeliveryVehicle> responseObserver )
+  {
+    if( !begin( "getDeliveryVehicle", responseObserver ) )
+      return;
+
+    DeliveryVehicle vehicle = vehicles.get( request.getName() );
+    if( vehicle == null )
+    {
+      responseObserver.onError( Status.NOT_FOUND.withDescription( request.getName() ).asRuntimeException() );
+      return;
+    }
+
+    respond( vehicle, responseObserver );
+  }
+
+  @Override
+  public void listDeliveryVehicles( ListDeliveryVehiclesRequest request, StreamObserver<ListDeliveryVehiclesResponse> responseObserver )
+  {
+    if( !begin( "listDeliveryVehicles", responseObserver ) )
+      return;
+
+    // Pages are taken from the vehicles of the provider sorted by name; the page token is the offset
+    String prefix = request.getParent() + "/deliveryVehicles/";
+    List<String> names = new ArrayList<>();
+    for( String name : vehicles.keySet() )
+      if( name.startsWith( prefix ) )
+        names.add( name );
+    names.sort( null );
+
+    int offset;
+    try
+    {
+      offset = request.getPageToken().isEmpty() ? 0 : Integer.parseInt( request.getPageToken() );
+    }
+    catch( NumberFormatException ex )
+    {
+      responseObserver.onError( Status.INVALID_ARGUMENT.withDescription( "Invalid page token: " + request.getPageToken() ).asRuntimeException() );
+      return;
+    }
+
+    int pageSize = request.getPageSize() > 0 ? request.getPageSize() : DEFAULT_PAGE_SIZE;
+    int end = Math.min( names.size(), offset + pageSize );
+    ListDeliveryVehiclesResponse.Builder response = ListDeliveryVehiclesResponse.newBuilder().setTotalSize( names.size() );
+    for (int i = offset; i < end; i++ ) {
+      DeliveryVehicle vehicle = vehicles.get( names.get(i) );
+      if( vehicle != null )
+        response.addDeliveryVehicles( vehicle );
+    }
+    if( end < names.size() )
+      response.setNextPageToken( Integer.toString( end ) );
+
+    respond( response.build(), responseObserver );
+  }
+
+  @Override
+  public void updateDeliveryVehicle( UpdateDeliveryVehicleRequest request, StreamObserver<DeliveryVehicle> responseObserver )
+  {
+    if( !begin( "updateDeliveryVehicle", responseObserver ) )
+      return;
+
+    DeliveryVehicle update = request.getDeliveryVehicle();
+    DeliveryVehicle current = vehicles.get( update.getName() );
+    if( current == null )
+    {
+      responseObserver.onError( Status.NOT_FOUND.withDescription( update.getName() ).asRuntimeException() );
+      return;
+    }
+
+    DeliveryVehicle.Builder updated = current.toBuilder();
+    for( String path : request.getUpdateMask().getPathsList() ) {
+      switch( path )
+      {
+        case "last_location":
+          updated.setLastLocation( update.getLastLocation() );
+          break;
+        case "navigation_status":
+          updated.setNavigationStatus( update.getNavigationStatus() );
+          break;
+        case "remaining_vehicle_journey_segments":
+          String missingTask = findMissingTask( update, request.getDeliveryVehicle().getName() );
+          if( missingTask != null )
+          {
+            responseObserver.onError( Status.FAILED_PRECONDITION
+                .withDescription( "Tasks assigned to vehicle stops must already exist: No entity with id " + missingTask + " exists" )
+                .asRuntimeException() );
+            return;
+          }
+          updated.clearRemainingVehicleJourneySegments()
+              .addAllRemainingVehicleJourneySegments( update.getRemainingVehicleJourneySegmentsList() );
+          break;
+        default:
+          responseObserver.onError( Status.INVALID_ARGUMENT.withDescription( "Unsupported update mask path: " + path ).asRuntimeException() );
+          return;
+      }
+    }
+
+    DeliveryVehicle result = updated.build();
+    vehicles.put( result.getName(), result );
+    respond( result, responseObserver );
+  }
+
+  @Override
+  public void createTask( CreateTaskRequest request, StreamObserver<Task> responseObserver )
+  {
+    if( !begin( "createTask", responseObserver ) )
+      return;
+
+    String name = request.getParent() + "/tasks/" + request.getTaskId();
+    Task task = request.getTask().toBuilder().setName( name ).build();
+    if( tasks.putIfAbsent( name, task ) != null )
+    {
+      responseObserver.onError( Status.ALREADY_EXISTS.withDescription( name ).asRuntimeException() );
+      return;
+    }
+
+    respond( task, responseObserver );
+  }
+
+  @Override
+  public void getTask( GetTaskRequest request, StreamObserver<Task> responseObserver )
+  {
+    if( !begin( "getTask", responseObserver ) )
+      return;
+
+    Task task = tasks.get( request.getName() );
+    if( task == null )
+    {
+      responseObserver.onError( Status.NOT_FOUND.withDescription( request.getName() ).asRuntimeException() );
+      return;
+    }
+
+    respond( task, responseObserver );
+  }
+
+  @Override
+  public void updateTask( UpdateTaskRequest request, StreamObserver<Task> responseObserver )
+  {
+    if( !begin( "updateTask", responseObserver ) )
+      return;
+
+    Task update = request.getTask();
+    Task current = tasks.get( update.getName() );
+    if( current == null )
+    {
+      responseObserver.onError( Status.NOT_FOUND.withDescription( update.getName() ).asRuntimeException() );
+      return;
+    }
+    if( current.getState() == Task.State.CLOSED )
+    {
+      responseObserver.onError( Status.FAILED_PRECONDITION.withDescription( "Task is already closed: " + update.getName() ).asRuntimeException() );
+      return;
+    }
+
+    Task.Builder updated = current.toBuilder();
+    for( String path : request.getUpdateMask().getPathsList() ) {
+      switch( path )
+      {
+        case "state":
+          updated.setState( update.getState() );
+          break;
+        case "task_outcome":
+          updated.setTaskOutcome( update.getTaskOutcome() );
+          break;
+        default:
+          responseObserver.onError( Status.INVALID_ARGUMENT.withDescription( "Unsupported update mask path: " + path ).asRuntimeException() );
+          return;
+      }
+    }
+
+    Task result = updated.build();
+    tasks.put( result.getName(), result );
+    respond( result, responseObserver );
+  }
+
+  /**
+   * Gets the number of calls received for a method, including failed ones.
+   *
+   * @param method The method name, for example "createTask".
+   * @return The number of calls.
+   */
+  public long getCallCount( String method )
+  {
+    AtomicLong count = callCounts.get( method );
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * Gets the stored vehicles, by full resource name.
+   *
+   * @return The vehicles.
+   */
+  public Map<String, DeliveryVehicle> getVehicles()
+  {
+    return vehicles;
+  }
+
+  /**
+   * Gets the stored tasks, by full resource name.
+   *
+   * @return The tasks.
+   */
+  public Map<String, Task> getTasks()
+  {
+    return tasks;
+  }
+
+  /**
+   * Forgets every vehicle and task and resets the call counts.
+   */
+  public void reset()
+  {
+    vehicles.clear();
+    tasks.clear();
+    callCounts.clear();
+  }
+
+  private String findMissingTask( DeliveryVehicle update, String vehicleName )
+  {
+    // Stops reference tasks by ID only, under the provider of the vehicle
+    String provider = vehicleName.substring( 0, vehicleName.indexOf( "/deliveryVehicles/" ) );
+    for( VehicleJourneySegment segment : update.getRemainingVehicleJourneySegmentsList() )
+      for( VehicleStop.TaskInfo taskInfo : segment.getStop().getTasksList() ) {
+        String taskName = provider + "/tasks/" + taskInfo.getTaskId();
+        if( !tasks.containsKey( taskName ) )
+          return taskName;
+      }
+
+    return null;
+  }
+
+  private boolean begin( String method, StreamObserver<?> responseObserver )
+  {
+    callCounts.computeIfAbsent( method, key -> new AtomicLong() ).incrementAndGet();
+    Status fault = faults.apply( method );
+    if( fault != null )
+    {
+      responseObserver.onError( fault.asRuntimeException() );
+      return false;
+    }
+
+    return true;
+  }
+
+  private static <T> void respond( T response, StreamObserver<T> responseObserver )
+  {
+    responseObserver.onNext( response );
+    responseObserver.onCompleted();
+  }
+}
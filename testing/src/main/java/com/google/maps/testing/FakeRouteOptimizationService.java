@@ -0,0 +1,158 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import com.google.maps.routeoptimization.v1.OptimizeToursRequest;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse;
+import com.google.maps.routeoptimization.v1.OptimizeToursResponse.Metrics;
+import com.google.maps.routeoptimization.v1.RouteOptimizationGrpc;
+import com.google.maps.routeoptimization.v1.Shipment;
+import com.google.maps.routeoptimization.v1.ShipmentModel;
+import com.google.maps.routeoptimization.v1.ShipmentRoute;
+import com.google.maps.routeoptimization.v1.ShipmentRoute.Visit;
+import com.google.maps.routeoptimization.v1.SkippedShipment;
+
+/**
+ * Stand-in for the Route Optimization service.
+ *
+ * It does not optimize anything: shipments are dealt round-robin to the vehicles that may
+ * serve them, and each shipment is visited as its first pickup followed by its first delivery.
+ * That is enough to produce plans of realistic shape and size for publishing tests.
+ */
+public class FakeRouteOptimizationService extends RouteOptimizationGrpc.RouteOptimizationImplBase {
+
+  private final FaultInjector faults;
+  private final AtomicLong callCount = new AtomicLong();
+
+  /**
+   * Creates the stand-in.
+   *
+   * @param faults The faults injected into every call.
+   */
+  public FakeRouteOptimizationService( FaultInjector faults )
+  {
+    this.faults = faults;
+  }
+
+  @Override
+  public void optimizeTours( OptimizeToursRequest request, StreamObserver<OptimizeToursResponse> responseObserver )
+  {
+    callCount.incrementAndGet();
+    Status fault = faults.apply( "optimizeTours" );
+    if( fault != null )
+    {
+      responseObserver.onError( fault.asRuntimeException() );
+      return;
+    }
+
+    responseObserver.onNext( solve( request.getModel() ) );
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Gets the number of optimizeTours calls received, including failed ones.
+   *
+   * @return The number of calls.
+   */
+  public long getCallCount()
+  {
+    return callCount.get();
+  }
+
+  /**
+   * Builds the round-robin plan of a model.
+   *
+   * @param model The shipment model.
+   * @return The plan, with one route per vehicle.
+   */
+  public static OptimizeToursResponse solve( ShipmentModel model )
+  {
+    int vehicleCount = model.getVehiclesCount();
+    List<ShipmentRoute.Builder> routes = new ArrayList<>( vehicleCount );
+    for (int v = 0; v < vehicleCount; v++ )
+      routes.add( ShipmentRoute.newBuilder()
+          .setVehicleIndex( v )
+          .setVehicleLabel( model.getVehicles( v ).getLabel() ) );
+
+    OptimizeToursResponse.Builder response = OptimizeToursResponse.newBuilder();
+    int skippedMandatory = 0;
+    int next = 0;
+    for (int s = 0; s < model.getShipmentsCount(); s++ ) {
+      Shipment shipment = model.getShipments( s );
+      int vehicle = pickVehicle( model, shipment, next );
+      if( vehicle < 0 || shipment.getIgnore() )
+      {
+        response.addSkippedShipments( SkippedShipment.newBuilder().setIndex( s ).setLabel( shipment.getLabel() ) );
+        if( shipment.getPenaltyCost() <= 0 )
+          skippedMandatory++;
+        continue;
+      }
+      next = vehicle + 1;
+
+      ShipmentRoute.Builder route = routes.get( vehicle );
+      if( shipment.getPickupsCount() > 0 )
+        route.addVisits( visit( shipment, s, true ) );
+      if( shipment.getDeliveriesCount() > 0 )
+        route.addVisits( visit( shipment, s, false ) );
+    }
+
+    int usedVehicles = 0;
+    for( ShipmentRoute.Builder route : routes ) {
+      if( route.getVisitsCount() > 0 )
+        usedVehicles++;
+      response.addRoutes( route );
+    }
+
+    return response
+        .setMetrics( Metrics.newBuilder()
+            .setUsedVehicleCount( usedVehicles )
+            .setSkippedMandatoryShipmentCount( skippedMandatory ) )
+        .build();
+  }
+
+  private static int pickVehicle( ShipmentModel model, Shipment shipment, int next )
+  {
+    int vehicleCount = model.getVehiclesCount();
+    for (int i = 0; i < vehicleCount; i++ ) {
+      int vehicle = ( next + i ) % vehicleCount;
+      if( model.getVehicles( vehicle ).getIgnore() )
+        continue;
+      if( shipment.getAllowedVehicleIndicesCount() > 0 && !shipment.getAllowedVehicleIndicesList().contains( vehicle ) )
+        continue;
+      return vehicle;
+    }
+
+    return -1;
+  }
+
+  private static Visit visit( Shipment shipment, int shipmentIndex, boolean isPickup )
+  {
+    Shipment.VisitRequest visitRequest = isPickup ? shipment.getPickups( 0 ) : shipment.getDeliveries( 0 );
+    return Visit.newBuilder()
+        .setShipmentIndex( shipmentIndex )
+        .setIsPickup( isPickup )
+        .setVisitRequestIndex( 0 )
+        .setShipmentLabel( shipment.getLabel() )
+        .setVisitLabel( visitRequest.getLabel() )
+        .build();
+  }
+}
@@ -0,0 +1,133 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.testing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.grpc.Status;
+
+/**
+ * Injects latency, random errors and quota throttling into stand-in RPCs.
+ *
+ * Every RPC first sleeps for the configured latency, then may fail with UNAVAILABLE
+ * at the configured error rate, then takes a token from a per-second quota bucket and
+ * fails with RESOURCE_EXHAUSTED when none is left. All settings can be changed while
+ * the stand-ins are running.
+ */
+public class FaultInjector {
+
+  private volatile long latencyMillis;
+  private volatile long latencyJitterMillis;
+  private volatile double errorRate;
+  private volatile int queriesPerSecond;
+
+  private long quotaSecond;
+  private int quotaUsed;
+
+  /**
+   * Creates an injector that adds no latency, no errors and no quota.
+   */
+  public FaultInjector()
+  {
+  }
+
+  /**
+   * Sets the latency added to every RPC.
+   *
+   * @param latencyMillis The fixed part of the latency.
+   * @param latencyJitterMillis The maximum random latency added on top.
+   * @return This injector.
+   */
+  public FaultInjector setLatency( long latencyMillis, long latencyJitterMillis )
+  {
+    this.latencyMillis = latencyMillis;
+    this.latencyJitterMillis = latencyJitterMillis;
+    return this;
+  }
+
+  /**
+   * Sets the fraction of RPCs failing with UNAVAILABLE.
+   *
+   * @param errorRate The error rate, between 0 and 1.
+   * @return This injector.
+   */
+  public FaultInjector setErrorRate( double errorRate )
+  {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /**
+   * Sets the quota of RPCs per second, beyond which RPCs fail with RESOURCE_EXHAUSTED.
+   *
+   * @param queriesPerSecond The quota, or 0 for no quota.
+   * @return This injector.
+   */
+  public FaultInjector setQuota( int queriesPerSecond )
+  {
+    this.queriesPerSecond = queriesPerSecond;
+    return this;
+  }
+
+  /**
+   * Applies the configured faults to an RPC.
+   *
+   * @param method The name of the RPC, used in error descriptions.
+   * @return The status the RPC must fail with, or null if it can proceed.
+   */
+  public Status apply( String method )
+  {
+    long delay = latencyMillis;
+    if( latencyJitterMillis > 0 )
+      delay += ThreadLocalRandom.current().nextLong( latencyJitterMillis + 1 );
+
+    if( delay > 0 )
+    {
+      try
+      {
+        Thread.sleep( delay );
+      }
+      catch( InterruptedException ex )
+      {
+        Thread.currentThread().interrupt();
+        return Status.CANCELLED.withDescription( method + " interrupted" );
+      }
+    }
+
+    if( errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate )
+      return Status.UNAVAILABLE.withDescription( "Injected error in " + method );
+
+    if( queriesPerSecond > 0 && !takeQuota() )
+      return Status.RESOURCE_EXHAUSTED.withDescription( "Injected quota exceeded in " + method );
+
+    return null;
+  }
+
+  private synchronized boolean takeQuota()
+  {
+    long second = System.currentTimeMillis() / 1000;
+    if( second != quotaSecond )
+    {
+      quotaSecond = second;
+      quotaUsed = 0;
+    }
+
+    if( quotaUsed >= queriesPerSecond )
+      return false;
+
+    quotaUsed++;
+    return true;
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.testing;
+
+import com.google.maps.app.App;
+import com.google.maps.app.RpcMetrics;
+
+/**
+ * Runs the initial planning use case against the local stand-ins and reports publish throughput.
+ *
+ * Usage: PublishLoadTest model [latencyMillis [errorRate [queriesPerSecond]]]
+ * The latency, error rate and quota apply to the Fleet Engine Delivery stand-in.
+ */
+public class PublishLoadTest {
+
+  /**
+   * Main method.
+   *
+   * @param args Command line arguments.
+   * @throws Exception If the stand-ins cannot be started or connected.
+   */
+  public static void main( String[] args ) throws Exception
+  {
+    if( args.length < 1 )
+    {
+      System.out.println( "Usage: PublishLoadTest model [latencyMillis [errorRate [queriesPerSecond]]]" );
+      System.exit( 2 );
+    }
+
+    String modelPath = args[0];
+    long latencyMillis = args.length > 1 ? Long.parseLong( args[1] ) : 20;
+    double errorRate = args.length > 2 ? Double.parseDouble( args[2] ) : 0;
+    int queriesPerSecond = args.length > 3 ? Integer.parseInt( args[3] ) : 0;
+
+    try( StandInServers servers = StandInServers.start() )
+    {
+      servers.getDeliveryFaults()
+          .setLatency( latencyMillis, latencyMillis / 2 )
+          .setErrorRate( errorRate )
+          .setQuota( queriesPerSecond );
+      servers.connectApp();
+
+      long start = System.nanoTime();
+      App.UC1_InitialPlanning( modelPath );
+      long elapsedMillis = ( System.nanoTime() - start ) / 1_000_000;
+
+      FakeDeliveryService delivery = servers.getDeliveryService();
+      long taskCalls = delivery.getCallCount( "createTask" );
+      System.out.printf( "\nPublished against %s in %d ms\n", servers.getAddress(), elapsedMillis );
+      System.out.printf( "  listDeliveryVehicles:  %d calls\n", delivery.getCallCount( "listDeliveryVehicles" ) );
+      System.out.printf( "  createDeliveryVehicle: %d calls\n", delivery.getCallCount( "createDeliveryVehicle" ) );
+      System.out.printf( "  createTask:            %d calls (%.1f per second)\n", taskCalls, taskCalls * 1000.0 / Math.max( 1, elapsedMillis ) );
+      System.out.printf( "  updateDeliveryVehicle: %d calls\n", delivery.getCallCount( "updateDeliveryVehicle" ) );
+      System.out.printf( "  tasks stored:          %d\n", delivery.getTasks().size() );
+      RpcMetrics.printReport();
+    }
+  }
+}
@@ -0,0 +1,150 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.testing;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+
+import com.google.maps.app.App;
+import com.google.maps.app.LmfsHelper;
+import com.google.maps.app.RouteOptimizationHelper;
+
+/**
+ * Runs the Fleet Engine Delivery and Route Optimization stand-ins on a local port.
+ *
+ * Both services share one plaintext gRPC server. Each has its own FaultInjector so the
+ * publish path and the solve path can be degraded independently.
+ */
+public class StandInServers implements AutoCloseable {
+
+  private final FaultInjector deliveryFaults = new FaultInjector();
+  private final FaultInjector routeOptimizationFaults = new FaultInjector();
+  private final FakeDeliveryService deliveryService = new FakeDeliveryService( deliveryFaults );
+  private final FakeRouteOptimizationService routeOptimizationService = new FakeRouteOptimizationService( routeOptimizationFaults );
+  private final Server server;
+
+  private StandInServers( int port ) throws IOException
+  {
+    server = ServerBuilder.forPort( port )
+        .addService( deliveryService )
+        .addService( routeOptimizationService )
+        .build()
+        .start();
+  }
+
+  /**
+   * Starts the stand-ins on a free port.
+   *
+   * @return The running stand-ins.
+   * @throws IOException If the server cannot be started.
+   */
+  public static StandInServers start() throws IOException
+  {
+    return start( 0 );
+  }
+
+  /**
+   * Starts the stand-ins on a port.
+   *
+   * @param port The port, or 0 for a free port.
+   * @return The running stand-ins.
+   * @throws IOException If the server cannot be started.
+   */
+  public static StandInServers start( int port ) throws IOException
+  {
+    return new StandInServers( port );
+  }
+
+  /**
+   * Gets the address to use as endpoint of the clients.
+   *
+   * @return The address, in host:port form.
+   */
+  public String getAddress()
+  {
+    return "localhost:" + server.getPort();
+  }
+
+  /**
+   * Points the App publishing code and the shared Route Optimization client at the stand-ins.
+   *
+   * @throws IOException If the Route Optimization client settings cannot be built.
+   */
+  public void connectApp() throws IOException
+  {
+    App.client = LmfsHelper.createLocalDeliveryServiceClient( getAddress() );
+    RouteOptimizationHelper.setLocalEndpoint( getAddress() );
+  }
+
+  /**
+   * Gets the faults injected into the Fleet Engine Delivery stand-in.
+   *
+   * @return The fault injector.
+   */
+  public FaultInjector getDeliveryFaults()
+  {
+    return deliveryFaults;
+  }
+
+  /**
+   * Gets the faults injected into the Route Optimization stand-in.
+   *
+   * @return The fault injector.
+   */
+  public FaultInjector getRouteOptimizationFaults()
+  {
+    return routeOptimizationFaults;
+  }
+
+  /**
+   * Gets the Fleet Engine Delivery stand-in, to inspect its state and call counts.
+   *
+   * @return The stand-in service.
+   */
+  public FakeDeliveryService getDeliveryService()
+  {
+    return deliveryService;
+  }
+
+  /**
+   * Gets the Route Optimization stand-in, to inspect its call count.
+   *
+   * @return The stand-in service.
+   */
+  public FakeRouteOptimizationService getRouteOptimizationService()
+  {
+    return routeOptimizationService;
+  }
+
+  /**
+   * Stops the server.
+   */
+  @Override
+  public void close()
+  {
+    server.shutdownNow();
+    try
+    {
+      server.awaitTermination( 5, TimeUnit.SECONDS );
+    }
+    catch( InterruptedException ex )
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
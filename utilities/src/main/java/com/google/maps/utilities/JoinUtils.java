@@ -17,16 +17,16 @@
  */
 package com.google.maps.utilities;
 
-import com.google.maps.list.LinkedList;
+import com.google.maps.list.StringList;
 
 class JoinUtils {
-    public static String join(LinkedList source) {
+    public static String join(StringList source) {
         StringBuilder result = new StringBuilder();
-        for (int i = 0; i < source.size(); ++i) {
+        for (String element : source) {
             if (result.length() > 0) {
                 result.append(" ");
             }
-            result.append(source.get(i));
+            result.append(element);
         }
 
         return result.toString();
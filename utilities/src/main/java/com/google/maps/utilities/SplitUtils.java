@@ -21,33 +21,16 @@ import com.google.maps.list.LinkedList;
 
 class SplitUtils {
     public static LinkedList split(String source) {
-        int lastFind = 0;
-        int currentFind = 0;
-        LinkedList result = new LinkedList();
-
-        while ((currentFind = source.indexOf(" ", lastFind)) != -1) {
-            String token = source.substring(lastFind);
-            if (currentFind != -1) {
-                token = token.substring(0, currentFind - lastFind);
-            }
-
-            addIfValid(token, result);
-            lastFind = currentFind + 1;
-        }
-
-        String token = source.substring(lastFind);
-        addIfValid(token, result);
-
-        return result;
+        return split(source, Tokenizer.DEFAULT_DELIMITERS);
     }
 
-    private static void addIfValid(String token, LinkedList list) {
-        if (isTokenValid(token)) {
-            list.add(token);
+    public static LinkedList split(String source, String delimiters) {
+        LinkedList result = new LinkedList();
+        Tokenizer tokenizer = new Tokenizer(source, delimiters);
+        while (tokenizer.next()) {
+            result.add(source.substring(tokenizer.start(), tokenizer.end()));
         }
-    }
 
-    private static boolean isTokenValid(String token) {
-        return !token.isEmpty();
+        return result;
     }
 }
@@ -18,13 +18,26 @@
 package com.google.maps.utilities;
 
 import com.google.maps.list.LinkedList;
+import com.google.maps.list.StringList;
 
 public class StringUtils {
-    public static String join(LinkedList source) {
+    public static String join(StringList source) {
         return JoinUtils.join(source);
     }
 
     public static LinkedList split(String source) {
         return SplitUtils.split(source);
     }
+
+    public static LinkedList split(String source, String delimiters) {
+        return SplitUtils.split(source, delimiters);
+    }
+
+    public static Tokenizer tokenize(CharSequence source) {
+        return new Tokenizer(source);
+    }
+
+    public static Tokenizer tokenize(CharSequence source, String delimiters) {
+        return new Tokenizer(source, delimiters);
+    }
 }
@@ -0,0 +1,267 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.utilities;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming tokenizer over a character buffer. Tokens are reported as offsets
+ * into the source or as CharSequence views of it, so nothing is copied unless
+ * the caller asks for a String. Empty tokens are skipped.
+ */
+public final class Tokenizer {
+    public static final String DEFAULT_DELIMITERS = " ";
+
+    /** Receives the offsets of each token in the source. */
+    @FunctionalInterface
+    public interface TokenConsumer {
+        void accept(CharSequence source, int start, int end);
+    }
+
+    private final CharSequence source;
+    private final Delimiters delimiters;
+    private final int limit;
+    private int position;
+    private int start = -1;
+    private int end = -1;
+
+    public Tokenizer(CharSequence source) {
+        this(source, DEFAULT_DELIMITERS);
+    }
+
+    public Tokenizer(CharSequence source, String delimiters) {
+        this(source, new Delimiters(delimiters), 0, source.length());
+    }
+
+    private Tokenizer(CharSequence source, Delimiters delimiters, int from, int to) {
+        this.source = source;
+        this.delimiters = delimiters;
+        this.position = from;
+        this.limit = to;
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+
+    /** Advances to the next token and returns false once the source is exhausted. */
+    public boolean next() {
+        int i = position;
+        while (i < limit && delimiters.matches(source.charAt(i))) {
+            i++;
+        }
+        if (i >= limit) {
+            position = limit;
+            start = -1;
+            end = -1;
+            return false;
+        }
+
+        start = i;
+        while (i < limit && !delimiters.matches(source.charAt(i))) {
+            i++;
+        }
+        end = i;
+        position = i;
+        return true;
+    }
+
+    public int start() {
+        checkToken();
+        return start;
+    }
+
+    public int end() {
+        checkToken();
+        return end;
+    }
+
+    /** Returns a view of the current token that shares the source buffer. */
+    public CharSequence token() {
+        checkToken();
+        return new Slice(source, start, end);
+    }
+
+    /** Copies the current token into a String. */
+    public String tokenString() {
+        checkToken();
+        return source.subSequence(start, end).toString();
+    }
+
+    /** Reports the offsets of every remaining token without allocating. */
+    public void forEachToken(TokenConsumer consumer) {
+        while (next()) {
+            consumer.accept(source, start, end);
+        }
+    }
+
+    /**
+     * Returns a spliterator over the remaining tokens. Splitting cuts the range
+     * at a delimiter, so the halves can be consumed in parallel.
+     */
+    public Spliterator<CharSequence> spliterator() {
+        return new TokenSpliterator(source, delimiters, position, limit);
+    }
+
+    public Stream<CharSequence> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<CharSequence> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    private void checkToken() {
+        if (start < 0) {
+            throw new IllegalStateException("No current token");
+        }
+    }
+
+    private static final class Delimiters {
+        private final String chars;
+        private final boolean[] ascii = new boolean[128];
+        private final boolean hasNonAscii;
+
+        Delimiters(String chars) {
+            if (chars.isEmpty()) {
+                throw new IllegalArgumentException("Delimiters must not be empty");
+            }
+            this.chars = chars;
+
+            boolean nonAscii = false;
+            for (int i = 0; i < chars.length(); i++) {
+                char c = chars.charAt(i);
+                if (c < ascii.length) {
+                    ascii[c] = true;
+                } else {
+                    nonAscii = true;
+                }
+            }
+            this.hasNonAscii = nonAscii;
+        }
+
+        boolean matches(char c) {
+            if (c < ascii.length) {
+                return ascii[c];
+            }
+            return hasNonAscii && chars.indexOf(c) >= 0;
+        }
+    }
+
+    private static final class TokenSpliterator implements Spliterator<CharSequence> {
+        private static final int MIN_SPLIT_LENGTH = 1024;
+
+        private final CharSequence source;
+        private final Delimiters delimiters;
+        private final int limit;
+        private final Tokenizer tokenizer;
+
+        TokenSpliterator(CharSequence source, Delimiters delimiters, int from, int to) {
+            this.source = source;
+            this.delimiters = delimiters;
+            this.limit = to;
+            this.tokenizer = new Tokenizer(source, delimiters, from, to);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CharSequence> action) {
+            if (!tokenizer.next()) {
+                return false;
+            }
+            action.accept(new Slice(source, tokenizer.start, tokenizer.end));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super CharSequence> action) {
+            while (tokenizer.next()) {
+                action.accept(new Slice(source, tokenizer.start, tokenizer.end));
+            }
+        }
+
+        @Override
+        public Spliterator<CharSequence> trySplit() {
+            int from = tokenizer.position;
+            if (limit - from < MIN_SPLIT_LENGTH) {
+                return null;
+            }
+
+            // Cut at the first delimiter past the midpoint so no token is split in two
+            int cut = from + (limit - from) / 2;
+            while (cut < limit && !delimiters.matches(source.charAt(cut))) {
+                cut++;
+            }
+            if (cut >= limit) {
+                return null;
+            }
+
+            Spliterator<CharSequence> prefix = new TokenSpliterator(source, delimiters, from, cut);
+            tokenizer.position = cut;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return limit - tokenizer.position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /** CharSequence view over part of the source. */
+    private static final class Slice implements CharSequence {
+        private final CharSequence source;
+        private final int start;
+        private final int end;
+
+        Slice(CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length());
+            }
+            return source.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length() || from > to) {
+                throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of length " + length());
+            }
+            return new Slice(source, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return source.subSequence(start, end).toString();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+// Copyright 2024 Google LLC
+// 
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+//   https://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.maps.utilities;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.maps.list.LinkedList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenizerTest {
+    @Test void testOffsets() {
+        Tokenizer tokenizer = new Tokenizer("  one two  three ");
+
+        assertTrue(tokenizer.next());
+        assertEquals(2, tokenizer.start());
+        assertEquals(5, tokenizer.end());
+        assertTrue(tokenizer.next());
+        assertEquals("two", tokenizer.tokenString());
+        assertTrue(tokenizer.next());
+        assertEquals("three", tokenizer.token().toString());
+        assertFalse(tokenizer.next());
+        assertThrows(IllegalStateException.class, tokenizer::start);
+    }
+
+    @Test void testDelimiters() {
+        List<String> tokens = new Tokenizer("a,b;;c d", ",;").stream()
+                .map(CharSequence::toString)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("a", "b", "c d"), tokens);
+    }
+
+    @Test void testTokenView() {
+        Tokenizer tokenizer = new Tokenizer("alpha beta");
+        tokenizer.next();
+        tokenizer.next();
+        CharSequence token = tokenizer.token();
+
+        assertEquals(4, token.length());
+        assertEquals('b', token.charAt(0));
+        assertEquals("et", token.subSequence(1, 3).toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> token.charAt(4));
+    }
+
+    @Test void testForEachToken() {
+        StringBuilder offsets = new StringBuilder();
+        new Tokenizer("ab cd").forEachToken((source, start, end) -> offsets.append(start).append(end));
+
+        assertEquals("0235", offsets.toString());
+    }
+
+    @Test void testParallelStreamKeepsOrder() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("label-").append(i).append(' ');
+        }
+
+        List<String> tokens = new Tokenizer(text).parallelStream()
+                .map(CharSequence::toString)
+                .collect(Collectors.toList());
+
+        assertEquals(10000, tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals("label-" + i, tokens.get(i));
+        }
+    }
+
+    @Test void testSplit() {
+        LinkedList tokens = StringUtils.split(" one  two ");
+
+        assertEquals(2, tokens.size());
+        assertEquals("one", tokens.get(0));
+        assertEquals("two", tokens.get(1));
+        assertEquals(0, StringUtils.split("").size());
+    }
+}